@@ -9,8 +9,12 @@ package se.kth.csc.nas;
 
 import java.io.PrintWriter;
 
+import se.kth.csc.nic.Computer;
+import se.kth.csc.nic.MachineProfile;
+
 /**
- * Writer of instructions and parameters.
+ * Writer of instructions and parameters as hexadecimal text for the
+ * targeted machine.
  */
 class BiWriter {
 
@@ -20,12 +24,61 @@ class BiWriter {
     protected final PrintWriter pw;
 
     /**
-     * Creates a printer for binary objects.
+     * Number of bits in a block.
+     */
+    protected final int BLOCKSIZE;
+
+    /**
+     * Format of a block.
+     */
+    protected final String blockFormat;
+
+    /**
+     * Format of a word.
+     */
+    protected final String wordFormat;
+
+    /**
+     * Format of an instruction.
+     */
+    protected final String codeFormat;
+
+    /**
+     * Number of bits in a word.
+     */
+    protected final int WORDSIZE;
+
+    /**
+     * Number of bits in an instruction.
+     */
+    protected final int INSTRUCTIONSIZE;
+
+    /**
+     * Creates a printer for binary objects for the original machine.
      *
      * @param pw Underlying printer.
      */
     BiWriter(final PrintWriter pw) {
+        this(pw, MachineProfile.NIC8);
+    }
+
+    /**
+     * Creates a printer for binary objects for the given machine.
+     *
+     * @param pw Underlying printer.
+     * @param target Machine targeted by the assembler.
+     */
+    BiWriter(final PrintWriter pw, final MachineProfile target) {
         this.pw = pw;
+        this.BLOCKSIZE = target.getBLOCKSIZE();
+        this.WORDSIZE = target.getWORDBLOCKS() * BLOCKSIZE;
+        this.INSTRUCTIONSIZE = target.getINSTRUCTIONBLOCKS() * BLOCKSIZE;
+
+        final int HEXSIZE = target.getHEXSIZE();
+        this.blockFormat = "%0" + HEXSIZE + "x";
+        this.wordFormat = "%0" + HEXSIZE * target.getWORDBLOCKS() + "x";
+        this.codeFormat =
+            "%0" + HEXSIZE * target.getINSTRUCTIONBLOCKS() + "x";
     }
 
     /**
@@ -35,13 +88,20 @@ class BiWriter {
         pw.println();
     }
 
+    /**
+     * Print the magical header that identifies an executable.
+     */
+    void printHeader() {
+        pw.print(Computer.MAGICAL_HEADER);
+    }
+
     /**
      * Print operator code of operator.
      *
      * @param operator Operator.
      */
     void printOperator(final Operator operator) {
-        pw.print(operator.code());
+        printByte(Integer.parseInt(operator.code(), 16));
     }
 
     /**
@@ -50,36 +110,36 @@ class BiWriter {
      * @param b Byte to be written.
      */
     void printByte(final int b) {
-        if (b < 0 || b > 15) {
+        if (b < 0 || b >= 1L << BLOCKSIZE) {
             throwError("byte", b);
         } else {
-            pw.printf("%x", b);
+            pw.printf(blockFormat, b);
         }
     }
 
     /**
      * Print integer value as a word.
      *
-     * @param w Byte to be written.
+     * @param w Word to be written.
      */
     void printWord(final int w) {
-        if (w < 0 || w > 0xff) {
+        if (w < 0 || w >= 1L << WORDSIZE) {
             throwError("word", w);
         } else {
-            pw.printf("%02x", w);
+            pw.printf(wordFormat, w);
         }
     }
 
     /**
-     * Print integer representation of an operator code verbatim.
+     * Print integer representation of an instruction verbatim.
      *
      * @param c Code as integer.
      */
     void printCode(final int c) {
-        if (c < 0 || c > 0xffff) {
+        if (c < 0 || c >= 1L << INSTRUCTIONSIZE) {
             throwError("code", c);
         } else {
-            pw.printf("%04x", c);
+            pw.printf(codeFormat, c);
         }
     }
 
@@ -102,9 +102,11 @@ class Instruction {
             biw.printWord(v + b);
             break;
         default:
+
+            // The last two registers are kept in the lowest blocks of
+            // the word.
             biw.printByte(r);
-            biw.printByte(s);
-            biw.printByte(t);
+            biw.printWord(s << biw.BLOCKSIZE | t);
         }
     }
 
@@ -10,6 +10,8 @@ package se.kth.csc.nas;
 import java.util.ArrayList;
 import java.util.List;
 
+import se.kth.csc.nic.MachineProfile;
+
 /**
  * Stores list of instructions.
  */
@@ -25,14 +27,21 @@ class InstructionList {
      */
     final ErrorLog errorLog;
 
+    /**
+     * Machine targeted by the assembler.
+     */
+    final MachineProfile target;
+
     /**
      * Creates an empty instruction list.
      *
      * @param errorLog Error log.
+     * @param target Machine targeted by the assembler.
      */
-    InstructionList(final ErrorLog errorLog) {
+    InstructionList(final ErrorLog errorLog, final MachineProfile target) {
         this.instructions = new ArrayList<Instruction>();
         this.errorLog = errorLog;
+        this.target = target;
     }
 
     /**
@@ -59,13 +68,13 @@ class InstructionList {
      *
      * @param instruction Instruction to relocate.
      * @param symbolTable Symbol table.
-     * @param align2 Indicates 2-alignment.
-     * @param align4 Indicates 4-alignment.
+     * @param alignWord Indicates alignment to a word.
+     * @param alignInstruction Indicates alignment to an instruction.
      */
     void relocateInstruction(final Instruction instruction,
                              final SymbolTable symbolTable,
-                             final boolean align2,
-                             final boolean align4) {
+                             final boolean alignWord,
+                             final boolean alignInstruction) {
 
         final String name = instruction.value.name;
 
@@ -78,23 +87,30 @@ class InstructionList {
         if (symbol == null) {
             errorLog.error(instruction.lineIndex, "Undefined name! (%s)", name);
         } else {
+            final int WORDBLOCKS = target.getWORDBLOCKS();
+            final int INSTRUCTIONBLOCKS = target.getINSTRUCTIONBLOCKS();
+            final int modulus = 1 << WORDBLOCKS * target.getBLOCKSIZE();
             final int res =
                 (instruction.value.constant
                  + symbol.address
-                 + instruction.value.offset) % 0x100;
+                 + instruction.value.offset) % modulus;
 
-            if (res < 0 || res > 0xff) {
-                final String an = align2 ? "Adress" : "Number";
+            if (res < 0 || res >= modulus) {
+                final String an =
+                    alignWord || alignInstruction ? "Adress" : "Number";
                 errorLog.error(instruction.lineIndex,
                                "%s is out of range! (%s)",
                                an, "" + instruction.value);
             }
 
-            if (align4 && res % 4 != 0 || align2 && res % 2 != 0) {
+            if (alignInstruction && res % INSTRUCTIONBLOCKS != 0
+                || alignWord && res % WORDBLOCKS != 0) {
                 final String format =
                     "Address is not aligned on %s-byte boundary! (%s)";
 
-                final String alignment = align4 ? "4" : "2";
+                final String alignment = "" + (alignInstruction
+                                               ? INSTRUCTIONBLOCKS
+                                               : WORDBLOCKS);
 
                 errorLog.error(instruction.lineIndex,
                                format,
@@ -118,25 +134,22 @@ class InstructionList {
 
         for (Instruction instruction: instructions) {
 
-            boolean align2 = false;
-            boolean align4 = false;
-
             switch (instruction.operator) {
             case JUMP:
             case JUMPE:
             case JUMPN:
             case JUMPL:
             case JUMPLE:
-                align4 = true;
-                // fall through
+                relocateInstruction(instruction, symbolTable, false, true);
+                break;
             case LOAD:
             case STORE:
-                align2 = true;
-                // fall through
+                relocateInstruction(instruction, symbolTable, true, false);
+                break;
             case LOADC:
             case ADDC:
-
-                relocateInstruction(instruction, symbolTable, align2, align4);
+                relocateInstruction(instruction, symbolTable, false, false);
+                break;
             }
         }
     }
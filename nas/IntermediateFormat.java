@@ -10,13 +10,24 @@ package se.kth.csc.nas;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
 
+import se.kth.csc.nic.BinaryExecutable;
+import se.kth.csc.nic.DebugMap;
+import se.kth.csc.nic.MachineProfile;
+import se.kth.csc.nic.NICException;
+
 /**
  * Container class for parsing results.
  */
 class IntermediateFormat {
 
+    /**
+     * Machine targeted by the assembler.
+     */
+    final MachineProfile target;
+
     /**
      * Lines of source code.
      */
@@ -44,15 +55,18 @@ class IntermediateFormat {
      * @param errorLog Error log.
      * @param symbolTable Table of symbols.
      * @param instructionList List of instructions.
+     * @param target Machine targeted by the assembler.
      */
     IntermediateFormat(final List<String> lines,
                        final ErrorLog errorLog,
                        final SymbolTable symbolTable,
-                       final InstructionList instructionList) {
+                       final InstructionList instructionList,
+                       final MachineProfile target) {
         this.lines = lines;
         this.errorLog = errorLog;
         this.symbolTable = symbolTable;
         this.instructionList = instructionList;
+        this.target = target;
     }
 
     /**
@@ -63,11 +77,11 @@ class IntermediateFormat {
     void generateBinary(final BiWriter biw) {
 
         // Magic words to recognize our executable files.
-        biw.printCode(0x1f1f);
-        biw.printCode(0x1f1f);
+        biw.printHeader();
 
         // Relocate words to the end of program + halt + jump to 0
-        symbolTable.relocate(4 * instructionList.size() + 8);
+        symbolTable.relocate(target.getINSTRUCTIONBLOCKS()
+                             * (instructionList.size() + 2));
 
         // Relocate symbolic values used in instructions using the
         // symbol table.
@@ -77,8 +91,12 @@ class IntermediateFormat {
         instructionList.printBinary(biw);
 
         // Halt and jump to address 0 at the end.
-        biw.printCode(0x0000);
-        biw.printCode(0xf000);
+        biw.printOperator(Operator.HALT);
+        biw.printByte(0);
+        biw.printWord(0);
+        biw.printOperator(Operator.JUMP);
+        biw.printByte(0);
+        biw.printWord(0);
 
         // Print symbol table at the end of the program.
         symbolTable.print(biw);
@@ -94,7 +112,7 @@ class IntermediateFormat {
      */
     void generateBinary(final Writer w) {
         final PrintWriter pw = new PrintWriter(w);
-        final BiWriter biw = new BiWriter(pw);
+        final BiWriter biw = new BiWriter(pw, target);
         generateBinary(biw);
     }
 
@@ -108,10 +126,12 @@ class IntermediateFormat {
         try {
             generateBinary(sw);
             final String executable = sw.toString();
-            if (executable.length() > 256) {
+            final long limit =
+                (long) target.getMEMORYCELLS() * target.getHEXSIZE();
+            if (executable.length() > limit) {
                 errorLog.error(String.format("Executable is too long! "
-                                             + "(%d > 256)",
-                                             executable.length()));
+                                             + "(%d > %d)",
+                                             executable.length(), limit));
                 return null;
             } else {
                 return executable;
@@ -121,6 +141,87 @@ class IntermediateFormat {
         }
     }
 
+    /**
+     * Generates binary code in packed binary form instead of
+     * hexadecimal text, see {@link BinaryExecutable}.
+     *
+     * @return Packed binary program.
+     */
+    byte[] generatePackedBinary() {
+        final String executable = generateBinary();
+        if (executable == null) {
+            return null;
+        }
+        try {
+            return BinaryExecutable.fromHex(executable,
+                                            target.getBLOCKSIZE(),
+                                            target.getWORDBLOCKS(),
+                                            target.getMEMORYCELLS())
+                .toBytes();
+        } catch (final NICException nice) {
+            throw new Error("Internal error: unable to pack executable!",
+                            nice);
+        }
+    }
+
+    /**
+     * Returns the source text of the given line without comments,
+     * leading label, and redundant whitespace.
+     *
+     * @param lineIndex Line number.
+     * @return Source text.
+     */
+    String sourceText(final int lineIndex) {
+        String line = lines.get(lineIndex - 1);
+        final int end = line.indexOf("//");
+        if (end >= 0) {
+            line = line.substring(0, end);
+        }
+        line = line.trim();
+        if (line.matches("\\S+:\\s.*")) {
+            line = line.substring(line.indexOf(':') + 1).trim();
+        }
+        return line.replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Generates a map from the addresses of the instructions to the
+     * source lines they were assembled from and the nearest preceding
+     * labels.
+     *
+     * @return Debug map.
+     */
+    DebugMap generateDebugMap() {
+        final int MEMORYCELLS = target.getMEMORYCELLS();
+        final DebugMap debugMap = new DebugMap(MEMORYCELLS);
+
+        // Labels are stored in the order they appear, which is also
+        // the order of their addresses.
+        final List<Symbol> labels = new ArrayList<Symbol>();
+        for (final Symbol symbol : symbolTable.symbols) {
+            if (symbol.type == SymbolType.LABEL) {
+                labels.add(symbol);
+            }
+        }
+
+        String label = null;
+        int j = 0;
+        for (int i = 0; i < instructionList.size(); i++) {
+            final int address = target.getINSTRUCTIONBLOCKS() * i;
+            while (j < labels.size() && labels.get(j).address <= address) {
+                label = labels.get(j).name;
+                j++;
+            }
+            if (address >= MEMORYCELLS) {
+                break;
+            }
+            final int lineIndex =
+                instructionList.instructions.get(i).lineIndex;
+            debugMap.put(address, lineIndex, label, sourceText(lineIndex));
+        }
+        return debugMap;
+    }
+
     /**
      * Returns the number of errors logged.
      *
@@ -122,8 +122,8 @@ class Lex {
 
     /**
      * Parses a signed integer in decimal notation expected to be in
-     * the interval [-B,B-1], where B = 2^(BLOCKSIZE * blocks - 1) and returns
-     * it modulo 256, i.e., as an integer in [0,2B-1].
+     * the interval [-B,B-1], where B = 2^(BLOCKSIZE * blocks - 1) and
+     * returns it modulo 2B, i.e., as an integer in [0,2B-1].
      *
      * @param s String representation of an integer in decimal
      * representation.
@@ -132,8 +132,8 @@ class Lex {
      */
     int parseDecBounded(final String s, final int blocks) {
         final int n = parseDec(s);
-        final int modulus = 1 << (BLOCKSIZE * blocks);
-        final int B = modulus / 2;
+        final long modulus = 1L << (BLOCKSIZE * blocks);
+        final long B = modulus / 2;
 
         if (n == NAS.INT_ERR) {
             return n;
@@ -142,7 +142,7 @@ class Lex {
                            + ") not in [" + (-B) + "," + (B - 1) + "])");
             return NAS.INT_ERR;
         } else {
-            return (modulus + n) % modulus;
+            return (int) ((modulus + n) % modulus);
         }
     }
 
@@ -180,7 +180,7 @@ class Lex {
      */
     int parseHexBounded(final String s, final int blocks) {
         final int n = parseHex(s);
-        final int B = 1 << BLOCKSIZE * blocks;
+        final long B = 1L << BLOCKSIZE * blocks;
 
         if (n == NAS.INT_ERR) {
             return n;
@@ -17,6 +17,11 @@ import java.nio.file.StandardOpenOption;
 
 import java.util.Arrays;
 
+import se.kth.csc.nic.BinaryExecutable;
+import se.kth.csc.nic.DebugMap;
+import se.kth.csc.nic.MachineProfile;
+import se.kth.csc.nic.NICException;
+
 /**
  * Assembler for NIC.
  */
@@ -70,8 +75,31 @@ public final class NAS {
                                   final int maxErrors,
                                   final PrintStream errorStream)
         throws IOException {
+        return assemble(label, program, maxErrors, errorStream,
+                        MachineProfile.NIC8);
+    }
+
+    /**
+     * Assembles the input assembly program to an executable for the
+     * given machine.
+     *
+     * @param label Program label, e.g., the filename.
+     * @param program Program to assemble.
+     * @param maxErrors Maximal number of errors logged before
+     * aborting.
+     * @param errorStream Destination of error log.
+     * @param target Machine targeted by the assembler.
+     * @return Assembled executable.
+     * @throws IOException If there was an IO problem.
+     */
+    public static String assemble(final String label,
+                                  final String program,
+                                  final int maxErrors,
+                                  final PrintStream errorStream,
+                                  final MachineProfile target)
+        throws IOException {
 
-        final Parser parser = new Parser(maxErrors);
+        final Parser parser = new Parser(maxErrors, target);
         final IntermediateFormat intermediateFormat = parser.parse(program);
 
         String executable;
@@ -87,6 +115,108 @@ public final class NAS {
         return executable;
     }
 
+    /**
+     * Assembles the input assembly program to an executable for NIC
+     * in packed binary form, see {@link BinaryExecutable}.
+     *
+     * @param label Program label, e.g., the filename.
+     * @param program Program to assemble.
+     * @param maxErrors Maximal number of errors logged before
+     * aborting.
+     * @param errorStream Destination of error log.
+     * @return Assembled executable.
+     * @throws IOException If there was an IO problem.
+     */
+    public static byte[] assemblePacked(final String label,
+                                        final String program,
+                                        final int maxErrors,
+                                        final PrintStream errorStream)
+        throws IOException {
+        return assemblePacked(label, program, maxErrors, errorStream,
+                              MachineProfile.NIC8);
+    }
+
+    /**
+     * Assembles the input assembly program to an executable for the
+     * given machine in packed binary form, see {@link
+     * BinaryExecutable}.
+     *
+     * @param label Program label, e.g., the filename.
+     * @param program Program to assemble.
+     * @param maxErrors Maximal number of errors logged before
+     * aborting.
+     * @param errorStream Destination of error log.
+     * @param target Machine targeted by the assembler.
+     * @return Assembled executable.
+     * @throws IOException If there was an IO problem.
+     */
+    public static byte[] assemblePacked(final String label,
+                                        final String program,
+                                        final int maxErrors,
+                                        final PrintStream errorStream,
+                                        final MachineProfile target)
+        throws IOException {
+
+        final Parser parser = new Parser(maxErrors, target);
+        final IntermediateFormat intermediateFormat = parser.parse(program);
+
+        byte[] executable;
+        if (intermediateFormat.errorLog.getNoErrors() == 0) {
+            executable = intermediateFormat.generatePackedBinary();
+        } else {
+            executable = null;
+        }
+
+        if (errorStream != null && intermediateFormat.getNoErrors() > 0) {
+            errorStream.print(intermediateFormat.generateErrors(label));
+        }
+        return executable;
+    }
+
+    /**
+     * Parses the input assembly program and returns a map from the
+     * addresses of its instructions to the source lines and labels,
+     * see {@link DebugMap}.
+     *
+     * @param program Program to parse.
+     * @param maxErrors Maximal number of errors logged before
+     * aborting.
+     * @return Debug map, or null if the program contains errors.
+     * @throws IOException If there was an IO problem.
+     */
+    public static DebugMap debugMap(final String program,
+                                    final int maxErrors)
+        throws IOException {
+        return debugMap(program, maxErrors, MachineProfile.NIC8);
+    }
+
+    /**
+     * Parses the input assembly program for the given machine and
+     * returns a map from the addresses of its instructions to the
+     * source lines and labels, see {@link DebugMap}.
+     *
+     * @param program Program to parse.
+     * @param maxErrors Maximal number of errors logged before
+     * aborting.
+     * @param target Machine targeted by the assembler.
+     * @return Debug map, or null if the program contains errors.
+     * @throws IOException If there was an IO problem.
+     */
+    public static DebugMap debugMap(final String program,
+                                    final int maxErrors,
+                                    final MachineProfile target)
+        throws IOException {
+
+        final Parser parser = new Parser(maxErrors, target);
+        final IntermediateFormat intermediateFormat = parser.parse(program);
+
+        if (intermediateFormat.getNoErrors() == 0) {
+            return intermediateFormat.generateDebugMap();
+        } else {
+            return null;
+        }
+    }
+
     /**
      * Assembles the input assembly program to an executable for NIC.
      *
@@ -94,28 +224,60 @@ public final class NAS {
      * @param maxErrors Maximal number of errors logged before
      * aborting.
      * @param errorStream Destination of error log.
-     * @return Assembled executable.
+     * @param packed Determines if the executable is written in packed
+     * binary form or as hexadecimal text.
+     * @param debug Determines if a debug map is written next to the
+     * executable.
+     * @param target Machine targeted by the assembler.
+     * @return True if the program was assembled and false otherwise.
      * @throws IOException If there was an IO problem.
      */
-    protected static String assemble(final String inputFilename,
-                                     final int maxErrors,
-                                     final PrintStream errorStream)
+    protected static boolean assemble(final String inputFilename,
+                                      final int maxErrors,
+                                      final PrintStream errorStream,
+                                      final boolean packed,
+                                      final boolean debug,
+                                      final MachineProfile target)
         throws IOException {
         final byte[] inputBytes = Files.readAllBytes(Paths.get(inputFilename));
         final String program = new String(inputBytes, StandardCharsets.UTF_8);
-        final String executable =
-            assemble(inputFilename, program, maxErrors, errorStream);
 
-        if (executable != null) {
-            final String outputFilename = outputFilename(inputFilename, ".bi");
-            final byte[] outputBytes =
-                executable.getBytes(StandardCharsets.UTF_8);
+        byte[] outputBytes;
+        String outputFilename;
+        if (packed) {
+            outputBytes = assemblePacked(inputFilename, program, maxErrors,
+                                         errorStream, target);
+            outputFilename =
+                outputFilename(inputFilename, BinaryExecutable.POSTFIX);
+        } else {
+            final String executable = assemble(inputFilename, program,
+                                               maxErrors, errorStream, target);
+            if (executable == null) {
+                outputBytes = null;
+            } else {
+                outputBytes = executable.getBytes(StandardCharsets.UTF_8);
+            }
+            outputFilename = outputFilename(inputFilename, ".bi");
+        }
+
+        if (outputBytes != null) {
             Files.write(Paths.get(outputFilename), outputBytes,
                         java.nio.file.StandardOpenOption.CREATE,
                         java.nio.file.StandardOpenOption.TRUNCATE_EXISTING,
                         java.nio.file.StandardOpenOption.WRITE);
+
+            if (debug) {
+                final String debugFilename =
+                    outputFilename(inputFilename, DebugMap.POSTFIX);
+                final byte[] debugBytes = debugMap(program, maxErrors, target)
+                    .toString().getBytes(StandardCharsets.UTF_8);
+                Files.write(Paths.get(debugFilename), debugBytes,
+                            java.nio.file.StandardOpenOption.CREATE,
+                            java.nio.file.StandardOpenOption.TRUNCATE_EXISTING,
+                            java.nio.file.StandardOpenOption.WRITE);
+            }
         }
-        return executable;
+        return outputBytes != null;
     }
 
     /**
@@ -174,9 +336,14 @@ public final class NAS {
      * Prints usage information.
      */
     protected static void printUsageInfo() {
-        printExit("nas [-v|-h|-kattis] [-maxerr <number>] [<source>]\n"
+        printExit("nas [-v|-h|-kattis] [-bin] [-g] [-target <name>] "
+                  + "[-maxerr <number>] [<source>]\n"
                   + "-v      Print version.\n"
                   + "-h      Print usage information.\n"
+                  + "-bin    Output a packed binary executable.\n"
+                  + "-g      Output a debug map used for profiling.\n"
+                  + "-target Targeted machine, i.e., one of "
+                  + MachineProfile.names() + ".\n"
                   // + "-kattis Output a Java file for use with Kattis.\n"
                   + "-maxerr Maximal number of errors.",
                   0);
@@ -215,6 +382,29 @@ public final class NAS {
             }
         }
 
+        // Handle requests for packed binary output, debug map, and
+        // targeted machine.
+        boolean packed = false;
+        boolean debug = false;
+        MachineProfile target = MachineProfile.NIC8;
+        while (len > 1 && (args[0].equals("-bin") || args[0].equals("-g")
+                           || len > 2 && args[0].equals("-target"))) {
+            if (args[0].equals("-bin")) {
+                packed = true;
+            } else if (args[0].equals("-g")) {
+                debug = true;
+            } else {
+                try {
+                    target = MachineProfile.forName(args[1]);
+                } catch (final NICException nice) {
+                    errorExit(nice.getMessage());
+                }
+                args = Arrays.copyOfRange(args, 1, args.length);
+            }
+            args = Arrays.copyOfRange(args, 1, args.length);
+            len = args.length;
+        }
+
         // Handle user provided bound on number of errors.
         int fileIndex = 0;
         int maxErrors = MAX_ERRORS;
@@ -256,7 +446,7 @@ public final class NAS {
         }
 
         try {
-            assemble(filepath, maxErrors, System.out);
+            assemble(filepath, maxErrors, System.out, packed, debug, target);
         } catch (IOException ioe) {
             throw new Error("Internal IO error!", ioe);
         }
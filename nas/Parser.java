@@ -14,15 +14,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import se.kth.csc.nic.MachineProfile;
+
 /**
  * Parser for assembler source files.
  */
 public class Parser {
 
     /**
-     * Number of bits in each block.
+     * Machine targeted by the assembler.
      */
-    final static int BLOCKSIZE = 4;
+    final MachineProfile target;
 
     /**
      * Lines of source code.
@@ -50,17 +52,31 @@ public class Parser {
     final Lex lex;
 
     /**
-     * Creates a parser with the given error log.
+     * Creates a parser with the given error log that targets the
+     * original machine.
      *
      * @param maxErrors Maximal number of errors logged before
      * aborting.
      */
     public Parser(final int maxErrors) {
+        this(maxErrors, MachineProfile.NIC8);
+    }
+
+    /**
+     * Creates a parser with the given error log that targets the
+     * given machine.
+     *
+     * @param maxErrors Maximal number of errors logged before
+     * aborting.
+     * @param target Machine targeted by the assembler.
+     */
+    public Parser(final int maxErrors, final MachineProfile target) {
+        this.target = target;
         this.lines = new ArrayList<String>();
         this.errorLog = new ErrorLog(lines, maxErrors);
-        this.symbolTable = new SymbolTable();
-        this.instructionList = new InstructionList(errorLog);
-        this.lex = new Lex(BLOCKSIZE, errorLog);
+        this.symbolTable = new SymbolTable(target);
+        this.instructionList = new InstructionList(errorLog, target);
+        this.lex = new Lex(target.getBLOCKSIZE(), errorLog);
     }
 
     /**
@@ -74,7 +90,8 @@ public class Parser {
 
             if (lex.isIdentifier(s)) {
                 final Symbol symbol = new Symbol(SymbolType.LABEL, s);
-                symbol.setAddress(4 * instructionList.size());
+                symbol.setAddress(target.getINSTRUCTIONBLOCKS()
+                                  * instructionList.size());
                 symbolTable.put(symbol);
             } else {
                 errorLog.error("Invalid name! (%s)", s);
@@ -141,7 +158,7 @@ public class Parser {
         // decimal digit.
         if (first == '-' || ('0' <= first && first <= '9')) {
 
-            n = lex.parseIntBounded(s, 2);
+            n = lex.parseIntBounded(s, target.getWORDBLOCKS());
 
         // Symbolic value, or symbolic value with offset.
         } else {
@@ -157,7 +174,7 @@ public class Parser {
                 } else {
                     oString = s.substring(middle + 1);
                 }
-                offset = lex.parseDecBounded(oString, 2);
+                offset = lex.parseDecBounded(oString, target.getWORDBLOCKS());
 
             } else {
                 name = s;
@@ -344,13 +361,24 @@ public class Parser {
         final int noValues = Math.max(tokens.length - 2, 1);
         final int[] values = new int[noValues];
 
+        // Values of the code directive are kept in integers, so they
+        // can only be given if an instruction fits in an integer.
+        final int INSTRUCTIONSIZE =
+            target.getINSTRUCTIONBLOCKS() * target.getBLOCKSIZE();
+        if (type == SymbolType.CODE && INSTRUCTIONSIZE >= Integer.SIZE) {
+            errorLog.error("Code directive is not supported by target! (%s)",
+                           target.getName());
+            return values;
+        }
+
         for (int i = 2; i < tokens.length; i++) {
 
             int n;
             if (type == SymbolType.WORD) {
-                n = lex.parseIntBounded(tokens[i], 2);
+                n = lex.parseIntBounded(tokens[i], target.getWORDBLOCKS());
             } else { // CODE
-                n = lex.parseIntBounded(tokens[i], 4);
+                n = lex.parseIntBounded(tokens[i],
+                                        target.getINSTRUCTIONBLOCKS());
             }
 
             values[i - 2] = (n != NAS.INT_ERR) ? n : 0;
@@ -460,7 +488,7 @@ public class Parser {
         }
 
         return new IntermediateFormat(lines, errorLog, symbolTable,
-                                      instructionList);
+                                      instructionList, target);
     }
 
     /**
@@ -12,6 +12,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import se.kth.csc.nic.MachineProfile;
+
 /**
  * Stores a mapping of strings to integers starting from zero.
  */
@@ -27,12 +29,38 @@ class SymbolTable {
      */
     final List<Symbol> symbols;
 
+    /**
+     * Number of blocks in a word of the targeted machine.
+     */
+    final int WORDBLOCKS;
+
+    /**
+     * Number of blocks in an instruction of the targeted machine.
+     */
+    final int INSTRUCTIONBLOCKS;
+
     /**
      * Creates an empty symbol index.
+     *
+     * @param target Machine targeted by the assembler.
      */
-    SymbolTable() {
+    SymbolTable(final MachineProfile target) {
         this.map = new HashMap<String, Integer>();
         this.symbols = new ArrayList<Symbol>();
+        this.WORDBLOCKS = target.getWORDBLOCKS();
+        this.INSTRUCTIONBLOCKS = target.getINSTRUCTIONBLOCKS();
+    }
+
+    /**
+     * Returns the number of blocks needed to align the given address
+     * to an instruction.
+     *
+     * @param address Address.
+     * @return Number of blocks of padding.
+     */
+    int padding(final int address) {
+        return (INSTRUCTIONBLOCKS - address % INSTRUCTIONBLOCKS)
+            % INSTRUCTIONBLOCKS;
     }
 
     /**
@@ -73,16 +101,14 @@ class SymbolTable {
             if (symbol.type == SymbolType.WORD) {
 
                 symbol.setAddress(address);
-                address += 2 * symbol.values.length;
+                address += WORDBLOCKS * symbol.values.length;
 
             } else if (symbol.type == SymbolType.CODE) {
 
-                // padding for 4 byte alignment if needed.
-                if (address % 4 != 0) {
-                    address += 2;
-                }
+                // padding for instruction alignment if needed.
+                address += padding(address);
                 symbol.setAddress(address);
-                address += 4 * symbol.values.length;
+                address += INSTRUCTIONBLOCKS * symbol.values.length;
             }
         }
     }
@@ -94,8 +120,8 @@ class SymbolTable {
      */
     void print(final BiWriter biw) {
 
-        // This must mirror the addressing traversal.
-        // Keep track of alignment.
+        // This must mirror the addressing traversal. Keep track of
+        // alignment, where the end of the program is aligned.
         int address = 0;
         for (final Symbol symbol : symbols) {
 
@@ -103,21 +129,21 @@ class SymbolTable {
             case WORD:
                 for (int n: symbol.values) {
                     biw.printWord(n);
-                    address += 2;
+                    address += WORDBLOCKS;
                 }
                 break;
 
             case CODE:
 
-                // padding for 4 byte alignment
-                if (address % 4 != 0) {
-                    biw.printWord(0x00);
-                    address += 2;
+                // padding for instruction alignment
+                for (int i = padding(address); i > 0; i--) {
+                    biw.printByte(0x0);
+                    address++;
                 }
 
                 for (int n: symbol.values) {
                     biw.printCode(n);
-                    address += 4;
+                    address += INSTRUCTIONBLOCKS;
                 }
                 break;
             }
@@ -0,0 +1,327 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Executable in packed binary form. This is an alternative to the
+ * hexadecimal text form, which is half the size and is loaded
+ * without parsing any text. The format consists of a header followed
+ * by the blocks of the program packed as nibbles, i.e., two
+ * hexadecimal digits per byte with the most significant digit first.
+ * All integers are big-endian.
+ *
+ * <pre>
+ * magic        4 bytes  "NICB"
+ * version      1 byte
+ * BLOCKSIZE    1 byte   bit-size of a block
+ * WORDBLOCKS   1 byte   number of blocks in a word
+ * reserved     1 byte   zero
+ * MEMORYCELLS  4 bytes  number of memory cells
+ * blocks       4 bytes  number of blocks of the program
+ * checksum     4 bytes  CRC32 of the packed blocks
+ * packed blocks
+ * </pre>
+ */
+public final class BinaryExecutable {
+
+    /**
+     * Magic number identifying executables in this format.
+     */
+    public final static int MAGIC = 0x4e494342;
+
+    /**
+     * Version of the format.
+     */
+    public final static int VERSION = 1;
+
+    /**
+     * Postfix of files containing executables in this format.
+     */
+    public final static String POSTFIX = ".bin";
+
+    /**
+     * Byte-size of the header.
+     */
+    final static int HEADERSIZE = 20;
+
+    /**
+     * Bit-size of a block.
+     */
+    final int BLOCKSIZE;
+
+    /**
+     * Number of blocks in a word.
+     */
+    final int WORDBLOCKS;
+
+    /**
+     * Number of memory cells.
+     */
+    final int MEMORYCELLS;
+
+    /**
+     * Blocks of the program.
+     */
+    final int[] program;
+
+    /**
+     * Creates an executable for a machine with the given parameters.
+     *
+     * @param BLOCKSIZE Bit-size of a block.
+     * @param WORDBLOCKS Number of blocks in a word.
+     * @param MEMORYCELLS Number of memory cells.
+     * @param program Blocks of the program.
+     * @throws NICException If the parameters can not be represented.
+     */
+    public BinaryExecutable(final int BLOCKSIZE, final int WORDBLOCKS,
+                            final int MEMORYCELLS, final int[] program)
+        throws NICException {
+        if (BLOCKSIZE <= 0 || BLOCKSIZE > 0xff || BLOCKSIZE % 4 != 0) {
+            throw new NICException("Invalid block size! (" + BLOCKSIZE + ")");
+        }
+        if (WORDBLOCKS <= 0 || WORDBLOCKS > 0xff) {
+            throw new NICException("Invalid word blocks! ("
+                                   + WORDBLOCKS + ")");
+        }
+        if (MEMORYCELLS <= 0 || program.length > MEMORYCELLS) {
+            throw new NICException("Invalid number of memory cells! ("
+                                   + MEMORYCELLS + ")");
+        }
+        this.BLOCKSIZE = BLOCKSIZE;
+        this.WORDBLOCKS = WORDBLOCKS;
+        this.MEMORYCELLS = MEMORYCELLS;
+        this.program = program.clone();
+    }
+
+    /**
+     * Creates an executable for a machine with the given parameters
+     * from an executable in hexadecimal text form.
+     *
+     * @param executable Executable in hexadecimal text form including
+     * the magical header.
+     * @param BLOCKSIZE Bit-size of a block.
+     * @param WORDBLOCKS Number of blocks in a word.
+     * @param MEMORYCELLS Number of memory cells.
+     * @return Executable in binary form.
+     * @throws NICException If the executable is malformed or too
+     * large.
+     */
+    public static BinaryExecutable fromHex(final String executable,
+                                           final int BLOCKSIZE,
+                                           final int WORDBLOCKS,
+                                           final int MEMORYCELLS)
+        throws NICException {
+        final String trimmed = executable.trim();
+        if (!trimmed.startsWith(Computer.MAGICAL_HEADER)) {
+            throw new NICException("Wrong program format!");
+        }
+        final String hex =
+            trimmed.substring(Computer.MAGICAL_HEADER.length());
+
+        final int HEXSIZE = BLOCKSIZE / 4;
+        if (HEXSIZE == 0 || hex.length() % HEXSIZE != 0) {
+            throw new NICException("Program is not a sequence of blocks!");
+        }
+        final int[] program = new int[hex.length() / HEXSIZE];
+        for (int i = 0; i < program.length; i++) {
+            program[i] = HexCodec.decodeBlock(hex, i * HEXSIZE, HEXSIZE);
+        }
+        return new BinaryExecutable(BLOCKSIZE, WORDBLOCKS, MEMORYCELLS,
+                                    program);
+    }
+
+    /**
+     * Returns the number of bytes needed to pack the blocks of the
+     * program.
+     *
+     * @param BLOCKSIZE Bit-size of a block.
+     * @param noBlocks Number of blocks.
+     * @return Number of bytes.
+     */
+    static int packedSize(final int BLOCKSIZE, final int noBlocks) {
+        return (int) (((long) noBlocks * (BLOCKSIZE / 4) + 1) / 2);
+    }
+
+    /**
+     * Returns the executable encoded in binary form.
+     *
+     * @return Encoded executable.
+     */
+    public byte[] toBytes() {
+        final int HEXSIZE = BLOCKSIZE / 4;
+        final byte[] packed = new byte[packedSize(BLOCKSIZE, program.length)];
+
+        // Pack the hexadecimal digits of the blocks.
+        int j = 0;
+        for (final int block : program) {
+            for (int l = HEXSIZE - 1; l >= 0; l--) {
+                final int nibble = (block >>> (4 * l)) & 0xf;
+                if (j % 2 == 0) {
+                    packed[j / 2] = (byte) (nibble << 4);
+                } else {
+                    packed[j / 2] |= nibble;
+                }
+                j++;
+            }
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(packed);
+
+        final ByteBuffer bb = ByteBuffer.allocate(HEADERSIZE + packed.length);
+        bb.putInt(MAGIC);
+        bb.put((byte) VERSION);
+        bb.put((byte) BLOCKSIZE);
+        bb.put((byte) WORDBLOCKS);
+        bb.put((byte) 0);
+        bb.putInt(MEMORYCELLS);
+        bb.putInt(program.length);
+        bb.putInt((int) crc.getValue());
+        bb.put(packed);
+        return bb.array();
+    }
+
+    /**
+     * Decodes an executable in binary form.
+     *
+     * @param bb Source of encoded executable.
+     * @return Executable.
+     * @throws NICException If the executable is malformed.
+     */
+    public static BinaryExecutable decode(final ByteBuffer bb)
+        throws NICException {
+        if (bb.remaining() < HEADERSIZE || bb.getInt() != MAGIC) {
+            throw new NICException("Wrong program format!");
+        }
+        final int version = bb.get() & 0xff;
+        if (version != VERSION) {
+            throw new NICException("Unsupported version of program format! ("
+                                   + version + ")");
+        }
+        final int BLOCKSIZE = bb.get() & 0xff;
+        final int WORDBLOCKS = bb.get() & 0xff;
+        bb.get();
+        final int MEMORYCELLS = bb.getInt();
+        final int noBlocks = bb.getInt();
+        final int checksum = bb.getInt();
+
+        if (BLOCKSIZE == 0 || BLOCKSIZE % 4 != 0
+            || noBlocks < 0 || noBlocks > MEMORYCELLS) {
+            throw new NICException("Malformed program header!");
+        }
+        final int size = packedSize(BLOCKSIZE, noBlocks);
+        if (bb.remaining() != size) {
+            throw new NICException("Program has wrong length! ("
+                                   + bb.remaining() + " != " + size + ")");
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(bb.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new NICException("Program has wrong checksum!");
+        }
+
+        // Unpack the hexadecimal digits of the blocks.
+        final int HEXSIZE = BLOCKSIZE / 4;
+        final int start = bb.position();
+        final int[] program = new int[noBlocks];
+        int j = 0;
+        for (int i = 0; i < noBlocks; i++) {
+            int block = 0;
+            for (int l = 0; l < HEXSIZE; l++) {
+                final int b = bb.get(start + j / 2);
+                block <<= 4;
+                block |= j % 2 == 0 ? (b >>> 4) & 0xf : b & 0xf;
+                j++;
+            }
+            program[i] = block;
+        }
+        return new BinaryExecutable(BLOCKSIZE, WORDBLOCKS, MEMORYCELLS,
+                                    program);
+    }
+
+    /**
+     * Reads an executable in binary form from the given file using a
+     * single read into a buffer.
+     *
+     * @param file Source file.
+     * @return Executable.
+     * @throws NICException If the file can not be read or the
+     * executable is malformed.
+     */
+    public static BinaryExecutable read(final File file)
+        throws NICException {
+        final String fname = file.getName();
+        try (FileChannel fc =
+             FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+            final long size = fc.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new NICException("Too large file! (" + fname + ")");
+            }
+            final ByteBuffer bb = ByteBuffer.allocate((int) size);
+            while (bb.hasRemaining() && fc.read(bb) >= 0) {
+
+                // The file is normally read by the first call.
+            }
+            bb.flip();
+            return decode(bb);
+
+        } catch (final IOException ioe) {
+            throw new NICException("Cannot read " + fname + "!", ioe);
+        }
+    }
+
+    /**
+     * Returns the bit-size of a block of the machine of this
+     * executable.
+     *
+     * @return Bit-size of a block.
+     */
+    public int getBLOCKSIZE() {
+        return BLOCKSIZE;
+    }
+
+    /**
+     * Returns the number of blocks in a word of the machine of this
+     * executable.
+     *
+     * @return Number of blocks in a word.
+     */
+    public int getWORDBLOCKS() {
+        return WORDBLOCKS;
+    }
+
+    /**
+     * Returns the number of memory cells of the machine of this
+     * executable.
+     *
+     * @return Number of memory cells.
+     */
+    public int getMEMORYCELLS() {
+        return MEMORYCELLS;
+    }
+
+    /**
+     * Returns the image of memory after a reset when this executable
+     * is loaded.
+     *
+     * @return Image of memory.
+     * @throws NICException If the program does not fit in memory.
+     */
+    public ProgramImage toImage() throws NICException {
+        return new ProgramImage(program, MEMORYCELLS, BLOCKSIZE);
+    }
+}
@@ -0,0 +1,192 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Governor of the number of instructions executed per second by a
+ * running computer. The governor uses deadlines measured with {@link
+ * System#nanoTime()} from the point in time when the frequency was
+ * set, so the rate does not drift with the time spent executing. If
+ * the rate is higher than the resolution of the scheduler, then all
+ * instructions that are due are executed in a burst before waiting
+ * for the next deadline. The governor does not wait itself, but
+ * tells its caller how long to wait, so it can be driven both by a
+ * dedicated thread, see {@link ClockedComputer}, and by a shared
+ * scheduler, see {@link ComputerHost}.
+ */
+final class ClockGovernor {
+
+    /**
+     * Number of nanoseconds in a second.
+     */
+    final static long NANOS = 1000000000L;
+
+    /**
+     * Maximal number of instructions executed in a burst, which
+     * bounds the time until a stop is noticed and between published
+     * snapshots.
+     */
+    final static long MAXBURST = 1 << 12;
+
+    /**
+     * Maximal time in nanoseconds the clock may lag behind its
+     * deadlines, e.g., after a pause of the host, before it gives up
+     * catching up and starts over from the current point in time.
+     */
+    final static long MAXLAG = 100000000L;
+
+    /**
+     * Length in nanoseconds of the window over which the achieved
+     * frequency is measured.
+     */
+    final static long WINDOW = 250000000L;
+
+    /**
+     * Governed computer.
+     */
+    final Computer comp;
+
+    /**
+     * Frequency of the current run of the clock, or -1 before the
+     * first tick.
+     */
+    private long frequency = -1;
+
+    /**
+     * Point in time when the current run of the clock started.
+     */
+    private long origin;
+
+    /**
+     * Number of instructions executed since the origin.
+     */
+    private long executed;
+
+    /**
+     * Indicates if a window of measurement has been started.
+     */
+    private boolean measuring;
+
+    /**
+     * Point in time when the current window of measurement started.
+     */
+    private long windowStart;
+
+    /**
+     * Number of instructions executed in the current window of
+     * measurement.
+     */
+    private long windowExecuted;
+
+    /**
+     * Creates a governor of the given computer.
+     *
+     * @param comp Governed computer.
+     */
+    ClockGovernor(final Computer comp) {
+        this.comp = comp;
+    }
+
+    /**
+     * Returns the point in time relative to the origin when the
+     * given instruction is due.
+     *
+     * @param instruction Index of instruction.
+     * @param frequency Number of instructions per second.
+     * @return Nanoseconds from the origin.
+     */
+    static long due(final long instruction, final long frequency) {
+        return (instruction / frequency) * NANOS
+            + (instruction % frequency) * NANOS / frequency;
+    }
+
+    /**
+     * Returns the number of instructions that are due at the given
+     * point in time relative to the origin.
+     *
+     * @param elapsed Nanoseconds from the origin.
+     * @param frequency Number of instructions per second.
+     * @return Number of instructions due.
+     */
+    static long dueInstructions(final long elapsed, final long frequency) {
+        return (elapsed / NANOS) * frequency
+            + (elapsed % NANOS) * frequency / NANOS + 1;
+    }
+
+    /**
+     * Executes the instructions of the computer that are due, if
+     * any, and publishes the resulting state. This must only be
+     * called while the status of the processor is successful.
+     *
+     * @return Nanoseconds to wait before the next tick, where zero
+     * means that the next tick may follow immediately.
+     */
+    long tick() {
+        long now = System.nanoTime();
+        final long f = comp.getFrequency();
+
+        // The clock starts over when the frequency changes or when it
+        // lags too far behind.
+        if (f != frequency) {
+            frequency = f;
+            origin = now;
+            executed = 0;
+            measuring = false;
+        } else if (f != Computer.UNTHROTTLED
+                   && now - origin - due(executed, f) > MAXLAG) {
+            origin = now;
+            executed = 0;
+        }
+
+        long burst = MAXBURST;
+        if (frequency != Computer.UNTHROTTLED) {
+            final long due =
+                dueInstructions(now - origin, frequency) - executed;
+            if (due <= 0) {
+                return origin + due(executed, frequency) - now;
+            }
+            burst = Math.min(burst, due);
+        }
+
+        // Execute the instructions that are due and publish the
+        // resulting state.
+        final long n = comp.burst(burst);
+        comp.publish();
+        executed += n;
+
+        // The achieved frequency is measured over windows that start
+        // right after a burst.
+        now = System.nanoTime();
+        if (!measuring) {
+            measuring = true;
+            windowStart = now;
+            windowExecuted = 0;
+        } else {
+            windowExecuted += n;
+            if (now - windowStart >= WINDOW) {
+                comp.achievedFrequency =
+                    (double) windowExecuted * NANOS / (now - windowStart);
+                windowStart = now;
+                windowExecuted = 0;
+            }
+        }
+
+        if (frequency == Computer.UNTHROTTLED) {
+            return 0;
+        } else {
+            return Math.max(0, origin + due(executed, frequency) - now);
+        }
+    }
+
+    /**
+     * Records that the computer is no longer running.
+     */
+    void stopped() {
+        comp.achievedFrequency = 0;
+    }
+}
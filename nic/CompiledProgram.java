@@ -0,0 +1,37 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Program translated to JVM bytecode by {@link CompilingEngine}. The
+ * translated class is generated for a particular program and extends
+ * this class.
+ */
+abstract class CompiledProgram {
+
+    /**
+     * Indicates for each address if a word stored at the address
+     * overwrites any block of a translated instruction.
+     */
+    protected boolean[] touches;
+
+    /**
+     * Runs the processor from its current state until it halts,
+     * encounters an error, has executed the given number of
+     * instructions, jumps to an instruction that has not been
+     * translated, or overwrites a translated instruction. The
+     * registers of the processor are updated before returning.
+     *
+     * @param cpu Processor with the program counter pointing to a
+     * translated instruction that is to be fetched.
+     * @param max Maximal number of instructions to execute.
+     * @return Number of instructions executed, or its bitwise
+     * complement if a translated instruction was overwritten.
+     */
+    abstract long run(final Processor cpu, final long max);
+}
@@ -0,0 +1,633 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Engine that translates the program to JVM bytecode, which is then
+ * optimized by the JVM like any other code. This is only worthwhile
+ * for programs that are executed for a long time or on many inputs,
+ * since the translation takes a significant amount of time. The
+ * program is translated as soon as it is set, which requires the
+ * compiler of a JDK at run time, see {@link InMemoryCompiler}, and
+ * a program that can not be translated is rejected.
+ *
+ * <p>
+ *
+ * All jumps of the computer have constant addresses, so the
+ * instructions reachable from address zero can be determined before
+ * execution. These instructions are translated to a single method
+ * with a switch on the program counter, where consecutive
+ * instructions fall through to each other and jumps dispatch through
+ * the switch. The registers are kept in local variables while the
+ * translated code runs.
+ *
+ * <p>
+ *
+ * The translated code exits and the processor interprets the rest of
+ * the program if it jumps to an instruction that has not been
+ * translated or overwrites a translated instruction. It is only
+ * entered again once the translated instructions are known to be
+ * unchanged in memory.
+ */
+class CompilingEngine implements Engine {
+
+    /**
+     * Fully qualified name of translated programs. Hidden classes may
+     * share names.
+     */
+    final static String CLASSNAME = "se.kth.csc.nic.TranslatedProgram";
+
+    /**
+     * Executed processor.
+     */
+    protected final Processor processor;
+
+    /**
+     * Blocks of the image of memory after a reset, which are never
+     * modified, or null if no program has been set.
+     */
+    protected int[] image;
+
+    /**
+     * Number of blocks of the program.
+     */
+    protected int programBlocks;
+
+    /**
+     * Indicates for each address if the block at the address is part
+     * of a translated instruction.
+     */
+    protected boolean[] code;
+
+    /**
+     * Translated program, or null if no program has been set.
+     */
+    protected CompiledProgram compiled;
+
+    /**
+     * Indicates that the translated instructions are known to be
+     * unchanged in memory.
+     */
+    protected boolean trusted;
+
+    /**
+     * Creates an engine for the given processor.
+     *
+     * @param processor Executed processor.
+     */
+    CompilingEngine(final Processor processor) {
+        this.processor = processor;
+    }
+
+    @Override
+    public void setProgram(final ProgramImage image) throws NICException {
+        this.image = image.blocks;
+        this.programBlocks = image.programBlocks;
+        this.code = null;
+        this.compiled = null;
+        this.trusted = false;
+
+        // This fails if no compiler is available.
+        this.compiled = translate();
+    }
+
+    @Override
+    public void reset() {
+        trusted = true;
+    }
+
+    @Override
+    public long run(final long maxInstructions) {
+        // The translated code does not record instructions, so a
+        // traced processor is interpreted.
+        if (compiled == null
+            || processor.tracer != null
+            || processor.nr.get() != Processor.FETCH
+            || processor.sr.get() != Processor.SUCCESS) {
+            return processor.run(maxInstructions);
+        }
+
+        if (!trusted) {
+            trusted = unchanged();
+            if (!trusted) {
+                return processor.run(maxInstructions);
+            }
+        }
+
+        long n = compiled.run(processor, maxInstructions);
+
+        // The translated code overwrote a translated instruction.
+        if (n < 0) {
+            n = ~n;
+            trusted = false;
+        }
+
+        // The translated code exited without completing, so we
+        // interpret the rest and can no longer trust the memory.
+        if (n < maxInstructions && processor.sr.get() == Processor.SUCCESS) {
+            trusted = false;
+            n += processor.run(maxInstructions - n);
+        }
+        return n;
+    }
+
+    @Override
+    public Engine duplicate(final Processor processor) {
+        // The translated program only refers to the processor given
+        // to it when it is run, so it is shared.
+        final CompilingEngine engine = new CompilingEngine(processor);
+        engine.image = image;
+        engine.programBlocks = programBlocks;
+        engine.code = code;
+        engine.compiled = compiled;
+        return engine;
+    }
+
+    /**
+     * Returns true if all translated instructions are unchanged in
+     * memory.
+     *
+     * @return True if the translated instructions are unchanged.
+     */
+    protected boolean unchanged() {
+        final Memory mem = processor.mem;
+        for (int p = 0; p < programBlocks; p++) {
+            if (code[p] && mem.get(p) != image[p]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads an instruction from the image in the same way as the
+     * processor reads it from memory.
+     *
+     * @param p Address of instruction.
+     * @return Instruction.
+     */
+    protected long readImage(final int p) {
+        final int BLOCKSIZE = processor.BLOCKSIZE;
+        long res = 0;
+        for (int i = 0; i < processor.INSTRUCTIONBLOCKS; i++) {
+            res = (res << BLOCKSIZE) | image[(p + i) % image.length];
+        }
+        return res;
+    }
+
+    /**
+     * Returns true if the instruction at the given address can be
+     * translated, i.e., if it is aligned and contained in the
+     * program.
+     *
+     * @param p Address of instruction.
+     * @return True or false depending on if the instruction can be
+     * translated.
+     */
+    protected boolean translatable(final int p) {
+        return p % processor.INSTRUCTIONBLOCKS == 0
+            && p + processor.INSTRUCTIONBLOCKS <= programBlocks;
+    }
+
+    /**
+     * Returns true if the instruction is a jump that is always taken.
+     *
+     * @param d Decoded instruction.
+     * @return True or false depending on if the jump is always taken.
+     */
+    protected static boolean alwaysJumps(final DecodedInstruction d) {
+        return d.field1 == 0 && (d.condition == 0 || d.condition == 3);
+    }
+
+    /**
+     * Returns true if the instruction is a jump that is never taken.
+     *
+     * @param d Decoded instruction.
+     * @return True or false depending on if the jump is never taken.
+     */
+    protected static boolean neverJumps(final DecodedInstruction d) {
+        return d.condition > 3
+            || d.field1 == 0 && (d.condition == 1 || d.condition == 2);
+    }
+
+    /**
+     * Returns true if the instruction always stops the processor.
+     *
+     * @param d Decoded instruction.
+     * @return True or false depending on if the instruction stops.
+     */
+    protected boolean stops(final DecodedInstruction d) {
+        switch (d.opCode) {
+        case Processor.opHalt:
+            return true;
+        case Processor.opLoadMem:
+        case Processor.opStore:
+            return d.constant % processor.WORDBLOCKS != 0;
+        default:
+            return d.opCode > Processor.opJump;
+        }
+    }
+
+    /**
+     * Returns the address of the instruction following the
+     * instruction at the given address.
+     *
+     * @param p Address of instruction.
+     * @return Address of next instruction.
+     */
+    protected int next(final int p) {
+        return ((p + processor.INSTRUCTIONBLOCKS) % image.length)
+            & processor.WORDMASK;
+    }
+
+    /**
+     * Determines the instructions reachable from address zero.
+     *
+     * @return Array indicating for each address if an instruction
+     * at the address is reachable.
+     */
+    protected boolean[] reachable() {
+        final boolean[] reachable = new boolean[image.length];
+        final Deque<Integer> work = new ArrayDeque<Integer>();
+
+        if (translatable(0)) {
+            reachable[0] = true;
+            work.push(0);
+        }
+
+        while (!work.isEmpty()) {
+            final int p = work.pop();
+            final DecodedInstruction d = processor.decode(readImage(p));
+
+            int target = -1;
+            int next = -1;
+
+            if (d.opCode == Processor.opJump) {
+                if (!neverJumps(d)) {
+                    target = d.target & processor.WORDMASK;
+                }
+                if (!alwaysJumps(d)) {
+                    next = next(p);
+                }
+            } else if (!stops(d)) {
+                next = next(p);
+            }
+
+            for (final int q : new int[] {target, next}) {
+                if (q >= 0 && q < image.length
+                    && translatable(q) && !reachable[q]) {
+                    reachable[q] = true;
+                    work.push(q);
+                }
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Translates the program to a class and instantiates it.
+     *
+     * @return Translated program.
+     * @throws NICException If the program can not be translated.
+     */
+    protected CompiledProgram translate() throws NICException {
+        final int INSTRUCTIONBLOCKS = processor.INSTRUCTIONBLOCKS;
+        final int WORDBLOCKS = processor.WORDBLOCKS;
+        final int MEMORYCELLS = image.length;
+
+        final boolean[] reachable = reachable();
+
+        // Blocks of translated instructions.
+        code = new boolean[MEMORYCELLS];
+        for (int p = 0; p < MEMORYCELLS; p++) {
+            if (reachable[p]) {
+                for (int i = 0; i < INSTRUCTIONBLOCKS; i++) {
+                    code[p + i] = true;
+                }
+            }
+        }
+
+        // Addresses where a stored word overwrites translated
+        // instructions.
+        final boolean[] touches = new boolean[MEMORYCELLS];
+        for (int p = 0; p < MEMORYCELLS; p++) {
+            for (int i = 0; i < WORDBLOCKS; i++) {
+                touches[p] |= code[(p + i) % MEMORYCELLS];
+            }
+        }
+
+        final String source = generate(reachable, touches);
+
+        // The compiler API is missing altogether on a JRE without the
+        // module java.compiler.
+        final byte[] bytes;
+        try {
+            bytes = InMemoryCompiler.compile(CLASSNAME, source);
+        } catch (final LinkageError le) {
+            throw new NICException("No Java compiler is available!", le);
+        }
+
+        try {
+            final MethodHandles.Lookup lookup =
+                MethodHandles.lookup().defineHiddenClass(bytes, true);
+            final MethodType mt = MethodType.methodType(void.class);
+            final CompiledProgram cp = (CompiledProgram)
+                lookup.findConstructor(lookup.lookupClass(), mt).invoke();
+            cp.touches = touches;
+            return cp;
+        } catch (final Throwable t) {
+            throw new NICException("Unable to define translated program!", t);
+        }
+    }
+
+    /**
+     * Returns the name of the local variable holding the given
+     * register.
+     *
+     * @param i Index of register.
+     * @return Name of local variable.
+     * @throws NICException If the register does not exist.
+     */
+    protected String r(final int i) throws NICException {
+        if (i < processor.NOREGISTERS) {
+            return "r" + i;
+        } else {
+            throw new NICException("Register does not exist! (" + i + ")");
+        }
+    }
+
+    /**
+     * Generates the source of the translated program.
+     *
+     * @param reachable Reachable instructions.
+     * @param touches Addresses where a stored word overwrites
+     * translated instructions.
+     * @return Source of translated program.
+     * @throws NICException If the program can not be translated.
+     */
+    protected String generate(final boolean[] reachable,
+                              final boolean[] touches)
+        throws NICException {
+        final int NOREGISTERS = processor.NOREGISTERS;
+        final int MEMORYCELLS = image.length;
+
+        final StringBuilder sb = new StringBuilder();
+
+        sb.append("package se.kth.csc.nic;\n\n");
+        sb.append("final class TranslatedProgram extends CompiledProgram {\n");
+        sb.append("long run(final Processor cpu, final long max) {\n");
+        sb.append("final Register[] reg = cpu.reg;\n");
+        sb.append("final boolean[] touches = this.touches;\n");
+        for (int i = 0; i < NOREGISTERS; i++) {
+            sb.append(String.format("int r%d = (int) reg[%d].get();\n",
+                                    i, i));
+        }
+        sb.append("int pc = (int) cpu.pc.get();\n");
+        sb.append("long ir = cpu.ir.get();\n");
+        sb.append("int status = " + Processor.SUCCESS + ";\n");
+        sb.append("long n = 0;\n");
+        sb.append("boolean overwritten = false;\n");
+        sb.append("loop:\n");
+        sb.append("while (true) {\n");
+        sb.append("switch (pc) {\n");
+
+        for (int p = 0; p < MEMORYCELLS; p++) {
+            if (reachable[p]) {
+                generateInstruction(sb, p, reachable, touches);
+            }
+        }
+
+        sb.append("default:\n");
+        sb.append("break loop;\n");
+        sb.append("}\n");
+        sb.append("}\n");
+
+        for (int i = 0; i < NOREGISTERS; i++) {
+            sb.append(String.format("reg[%d].set(r%d);\n", i, i));
+        }
+        sb.append("cpu.pc.set(pc);\n");
+        sb.append("cpu.ir.set(ir);\n");
+        sb.append("cpu.nr.set(" + Processor.FETCH + ");\n");
+        sb.append("cpu.sr.set(status);\n");
+        sb.append("return overwritten ? ~n : n;\n");
+        sb.append("}\n");
+        sb.append("}\n");
+
+        return sb.toString();
+    }
+
+    /**
+     * Generates the source of a single instruction. This is a case
+     * of the switch on the program counter.
+     *
+     * @param sb Destination of source.
+     * @param p Address of instruction.
+     * @param reachable Reachable instructions.
+     * @param touches Addresses where a stored word overwrites
+     * translated instructions.
+     * @throws NICException If the instruction can not be translated.
+     */
+    protected void generateInstruction(final StringBuilder sb,
+                                       final int p,
+                                       final boolean[] reachable,
+                                       final boolean[] touches)
+        throws NICException {
+        final int WORDBLOCKS = processor.WORDBLOCKS;
+        final int WORDMASK = processor.WORDMASK;
+        final int MEMORYCELLS = image.length;
+
+        final DecodedInstruction d = processor.decode(readImage(p));
+        final int next = next(p);
+        final int c = d.constant;
+
+        // Exits that leave the program counter at the next
+        // instruction with the given status.
+        final String halt =
+            String.format("pc = 0x%x; status = %d; break loop;\n",
+                          next, Processor.HALT);
+        final String badAlignment =
+            String.format("pc = 0x%x; status = %d; break loop;\n",
+                          next, Processor.BAD_ALIGNMENT);
+        final String badInstruction =
+            String.format("pc = 0x%x; status = %d; break loop;\n",
+                          next, Processor.BAD_INSTRUCTION);
+        final String overwritten =
+            String.format("pc = 0x%x; overwritten = true; break loop;\n",
+                          next);
+
+        // Check the budget before fetching.
+        sb.append(String.format("case 0x%x:\n", p));
+        sb.append(String.format("if (n == max) { pc = 0x%x; break loop; }\n",
+                                p));
+        sb.append("n++;\n");
+        sb.append(String.format("ir = 0x%xL;\n", d.ir));
+
+        // Indicates that the instruction may fall through to the
+        // next instruction.
+        boolean falls = true;
+
+        switch (d.opCode) {
+        case Processor.opHalt:
+            sb.append(halt);
+            falls = false;
+            break;
+        case Processor.opLoadMem:
+            if (c % WORDBLOCKS != 0) {
+                sb.append(badAlignment);
+                falls = false;
+            } else {
+                sb.append(String.format("%s = cpu.readInt(0x%x, %d) & 0x%x;\n",
+                                        r(d.field1), c, WORDBLOCKS,
+                                        WORDMASK));
+            }
+            break;
+        case Processor.opLoadConst:
+            sb.append(String.format("%s = 0x%x;\n", r(d.field1),
+                                    c & WORDMASK));
+            break;
+        case Processor.opLoadReg:
+            sb.append(String.format("if (%s %% %d != 0) { %s}\n",
+                                    r(d.field3), WORDBLOCKS, badAlignment));
+            sb.append(String.format("%s = cpu.readInt(%s, %d) & 0x%x;\n",
+                                    r(d.field2), r(d.field3), WORDBLOCKS,
+                                    WORDMASK));
+            break;
+        case Processor.opStore:
+            if (c % WORDBLOCKS != 0) {
+                sb.append(badAlignment);
+                falls = false;
+            } else {
+                sb.append(String.format("cpu.writeInt(0x%x, %s, %d);\n",
+                                        c, r(d.field1), WORDBLOCKS));
+                if (touches[c % MEMORYCELLS]) {
+                    sb.append(overwritten);
+                    falls = false;
+                }
+            }
+            break;
+        case Processor.opStoreReg:
+            sb.append(String.format("if (%s %% %d != 0) { %s}\n",
+                                    r(d.field3), WORDBLOCKS, badAlignment));
+            sb.append(String.format("cpu.writeInt(%s, %s, %d);\n",
+                                    r(d.field3), r(d.field2), WORDBLOCKS));
+            sb.append(String.format("if (touches[%s %% %d]) { %s}\n",
+                                    r(d.field3), MEMORYCELLS, overwritten));
+            break;
+        case Processor.opMove:
+            sb.append(String.format("%s = %s;\n", r(d.field3), r(d.field2)));
+            break;
+        case Processor.opAddInt:
+            sb.append(String.format("%s = (%s + %s) & 0x%x;\n",
+                                    r(d.field1), r(d.field2), r(d.field3),
+                                    WORDMASK));
+            break;
+        case Processor.opAddConst:
+            sb.append(String.format("%s = (%s + 0x%x) & 0x%x;\n",
+                                    r(d.field1), r(d.field1), c, WORDMASK));
+            break;
+        case Processor.opMulInt:
+            sb.append(String.format("%s = (%s * %s) & 0x%x;\n",
+                                    r(d.field1), r(d.field2), r(d.field3),
+                                    WORDMASK));
+            break;
+        case Processor.opSubInt:
+            sb.append(String.format("%s = (%s - %s) & 0x%x;\n",
+                                    r(d.field1), r(d.field2), r(d.field3),
+                                    WORDMASK));
+            break;
+        case Processor.opRShift:
+            sb.append(String.format("%s = cpu.shifted(%s, %s);\n",
+                                    r(d.field1), r(d.field2), r(d.field3)));
+            break;
+        case Processor.opAND:
+            sb.append(String.format("%s = %s & %s;\n", r(d.field1),
+                                    r(d.field2), r(d.field3)));
+            break;
+        case Processor.opOR:
+            sb.append(String.format("%s = %s | %s;\n", r(d.field1),
+                                    r(d.field2), r(d.field3)));
+            break;
+        case Processor.opXOR:
+            sb.append(String.format("%s = %s ^ %s;\n", r(d.field1),
+                                    r(d.field2), r(d.field3)));
+            break;
+        case Processor.opJump:
+            falls = generateJump(sb, d);
+            break;
+        default:
+            sb.append(badInstruction);
+            falls = false;
+        }
+
+        // Fall through to the next case if it is the next
+        // instruction and otherwise dispatch through the switch.
+        if (falls) {
+            final int following = p + processor.INSTRUCTIONBLOCKS;
+            if (following != next || !reachable[following]) {
+                sb.append(String.format("pc = 0x%x; continue loop;\n", next));
+            }
+        }
+    }
+
+    /**
+     * Generates the source of a jump instruction.
+     *
+     * @param sb Destination of source.
+     * @param d Decoded jump instruction.
+     * @return True if the jump may fall through to the next
+     * instruction and false otherwise.
+     * @throws NICException If the instruction can not be translated.
+     */
+    protected boolean generateJump(final StringBuilder sb,
+                                   final DecodedInstruction d)
+        throws NICException {
+        final int WORDTOP = processor.WORDTOP;
+
+        final String jump = String.format("pc = 0x%x; continue loop;",
+                                          d.target & processor.WORDMASK);
+        if (alwaysJumps(d)) {
+            sb.append(jump).append("\n");
+            return false;
+        } else if (neverJumps(d)) {
+            return true;
+        }
+
+        // Words are sign extended before they are compared, which
+        // only matters for the strict and non-strict inequalities.
+        final String rx = r(d.field1);
+        final String r0 = r(0);
+        final String sx = String.format("((%s ^ 0x%x) - 0x%x)",
+                                        rx, WORDTOP, WORDTOP);
+        final String s0 = String.format("((%s ^ 0x%x) - 0x%x)",
+                                        r0, WORDTOP, WORDTOP);
+        String condition;
+        switch (d.condition) {
+        case 0:
+            condition = rx + " == " + r0;
+            break;
+        case 1:
+            condition = rx + " != " + r0;
+            break;
+        case 2:
+            condition = sx + " < " + s0;
+            break;
+        case 3:
+            condition = sx + " <= " + s0;
+            break;
+        default:
+            throw new Error("Untranslated condition of a jump!");
+        }
+        sb.append(String.format("if (%s) { %s }\n", condition, jump));
+        return true;
+    }
+}
@@ -10,7 +10,10 @@ package se.kth.csc.nic;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A computer consisting of a {@link Processor} and a {@link Memory}.
@@ -21,7 +24,7 @@ public class Computer {
      * Magical header used for programs to be able to perform a basic
      * sanity check that a file contains an executable program.
      */
-    final static String MAGICAL_HEADER = "1f1f1f1f";
+    public final static String MAGICAL_HEADER = "1f1f1f1f";
 
     /**
      * Processor of this computer.
@@ -34,10 +37,28 @@ public class Computer {
     protected Memory mem;
 
     /**
-     * Delay between an execution and a fectch. This simulates the
-     * clock tick in a real computer.
+     * Frequency representing that the clock does not throttle the
+     * computer, i.e., that it executes as fast as possible.
      */
-    protected int clockTick = 125;
+    public final static long UNTHROTTLED = 0;
+
+    /**
+     * Maximal frequency of the clock.
+     */
+    public final static long MAXFREQUENCY = 1000000000L;
+
+    /**
+     * Number of instructions per second executed by the clock, or
+     * {@link #UNTHROTTLED}. This simulates the clock in a real
+     * computer.
+     */
+    protected volatile long frequency = 8;
+
+    /**
+     * Number of instructions per second most recently achieved by
+     * the clock, or zero if the computer is not running.
+     */
+    protected volatile double achievedFrequency;
 
     /**
      * Determines if this computer is running non-interactively or
@@ -51,9 +72,68 @@ public class Computer {
     protected ClockedComputer clockedComputer;
 
     /**
-     * Program stored by this computer.
+     * Host running this computer when it is started, or null if it
+     * is run by a thread of its own.
+     */
+    protected ComputerHost host;
+
+    /**
+     * This computer in hosted form.
      */
-    protected String program;
+    protected HostedComputer hostedComputer;
+
+    /**
+     * Image of the memory after a reset, i.e., the decoded program
+     * followed by zeros, or null if no program has been set.
+     */
+    protected ProgramImage image;
+
+    /**
+     * Engine used to run the program when the computer is not
+     * observed, or null if the processor interprets the program.
+     */
+    protected Engine engine;
+
+    /**
+     * Number of instructions executed between checks of the time
+     * limit when the computer is run non-interactively.
+     */
+    protected final static long BATCHSIZE = 1 << 14;
+
+    /**
+     * Maximal number of instructions executed after a reset before
+     * the processor is interrupted, or zero if there is no limit.
+     */
+    protected long instructionLimit;
+
+    /**
+     * Maximal time in milliseconds spent executing after a reset
+     * before the processor is interrupted, or zero if there is no
+     * limit.
+     */
+    protected long timeLimit;
+
+    /**
+     * Number of instructions executed since the most recent reset.
+     */
+    protected long cycles;
+
+    /**
+     * Cache of results of executing the program on inputs, or null
+     * if results are not cached.
+     */
+    protected ResultCache resultCache;
+
+    /**
+     * Snapshot of the state published at the most recent safe point.
+     */
+    protected volatile ComputerSnapshot snapshot;
+
+    /**
+     * Timeline of the execution since the most recent reset, or null
+     * if no timeline is kept.
+     */
+    protected Timeline timeline;
 
     /**
      * Create an uninitialized instance. This is useful in subclasses.
@@ -62,7 +142,9 @@ public class Computer {
     }
 
     /**
-     * Creates an observable computer with the given parameters.
+     * Creates a computer with the given parameters. The memory is
+     * packed into a primitive array and is not synchronized, i.e.,
+     * the computer should only be used by one thread at a time.
      *
      * @param MEMORYCELLS Size of memory in blocks.
      * @param BLOCKSIZE Blocksize of memory.
@@ -73,9 +155,70 @@ public class Computer {
      */
     public Computer(final int MEMORYCELLS, final int BLOCKSIZE,
                     final int WORDBLOCKS, final int NOREGISTERS) {
-        this.mem = new Memory(MEMORYCELLS, BLOCKSIZE);
-        this.processor = new Processor(this.mem, WORDBLOCKS, NOREGISTERS);
+        this(MEMORYCELLS, BLOCKSIZE, WORDBLOCKS, NOREGISTERS, false);
+    }
+
+    /**
+     * Creates a computer with the given parameters, which is
+     * optionally confined to a single owning thread at a time. A
+     * confined computer keeps the state of its processor in plain
+     * fields without any monitors. Other threads should then only
+     * read its state through {@link #getSnapshot()}, which is
+     * published at safe points. Ownership may be handed over between
+     * threads, e.g., by {@link #start()} and {@link #stop()}.
+     *
+     * @param MEMORYCELLS Size of memory in blocks.
+     * @param BLOCKSIZE Blocksize of memory.
+     * @param WORDBLOCKS Number of blocks in a word stored in general
+     * purpose registers.
+     * @param NOREGISTERS Number of registers. This must be
+     * addressable by a block.
+     * @param confined Determines if the computer is confined to a
+     * single thread at a time.
+     */
+    public Computer(final int MEMORYCELLS, final int BLOCKSIZE,
+                    final int WORDBLOCKS, final int NOREGISTERS,
+                    final boolean confined) {
+        this(new PackedMemory(MEMORYCELLS, BLOCKSIZE), WORDBLOCKS,
+             NOREGISTERS, confined);
+    }
+
+    /**
+     * Creates a computer with the given memory, e.g., a {@link
+     * MappedMemory}, which is optionally confined to a single owning
+     * thread at a time, see {@link #Computer(int, int, int, int,
+     * boolean)}.
+     *
+     * @param mem Memory of computer.
+     * @param WORDBLOCKS Number of blocks in a word stored in general
+     * purpose registers.
+     * @param NOREGISTERS Number of registers. This must be
+     * addressable by a block.
+     * @param confined Determines if the computer is confined to a
+     * single thread at a time.
+     */
+    public Computer(final Memory mem, final int WORDBLOCKS,
+                    final int NOREGISTERS, final boolean confined) {
+        this.mem = mem;
+        this.processor =
+            new Processor(this.mem, WORDBLOCKS, NOREGISTERS, confined);
         this.running = new GenericRunning(false);
+        this.engine = EngineType.INTERPRETER.create(processor);
+        publish();
+    }
+
+    /**
+     * Creates a computer with the given profile, which is optionally
+     * confined to a single owning thread at a time, see {@link
+     * #Computer(int, int, int, int, boolean)}.
+     *
+     * @param profile Profile of the machine.
+     * @param confined Determines if the computer is confined to a
+     * single thread at a time.
+     */
+    public Computer(final MachineProfile profile, final boolean confined) {
+        this(profile.getMEMORYCELLS(), profile.getBLOCKSIZE(),
+             profile.getWORDBLOCKS(), profile.getNOREGISTERS(), confined);
     }
 
     /**
@@ -119,11 +262,14 @@ public class Computer {
      * Set the given program.
      *
      * @param programWithHeader Program as hexadecimal string.
+     * @throws NICException If the program is too large or can not be
+     * prepared for the engine.
      */
     public void setProgram(final String programWithHeader) throws NICException {
         final String program = stripHeader(programWithHeader);
         if (program.length() <= getMAXPROGRAMLENGTH()) {
-            this.program = program;
+            setProgram(new ProgramImage(program, mem.getMEMORYCELLS(),
+                                        mem.getBLOCKSIZE()));
         } else {
             throw new NICException("Too large program! ("
                                    + program.length() + " > "
@@ -131,13 +277,105 @@ public class Computer {
         }
     }
 
+    /**
+     * Set the program of the given executable in binary form.
+     *
+     * @param executable Executable in binary form.
+     * @throws NICException If the executable is made for a different
+     * machine.
+     */
+    public void setProgram(final BinaryExecutable executable)
+        throws NICException {
+        if (executable.getBLOCKSIZE() != mem.getBLOCKSIZE()
+            || executable.getWORDBLOCKS() != processor.WORDBLOCKS
+            || executable.getMEMORYCELLS() != mem.getMEMORYCELLS()) {
+            throw new NICException("Program is made for a different machine!");
+        }
+        setProgram(executable.toImage());
+    }
+
+    /**
+     * Set the program of the given image of memory.
+     *
+     * @param image Image of memory after a reset.
+     * @throws NICException If the image does not match the memory or
+     * if the program can not be prepared for the engine.
+     */
+    public void setProgram(final ProgramImage image) throws NICException {
+        if (image.getMEMORYCELLS() != mem.getMEMORYCELLS()
+            || image.getBLOCKSIZE() != mem.getBLOCKSIZE()) {
+            throw new NICException("Image does not match memory!");
+        }
+        this.image = image;
+        if (engine != null) {
+            engine.setProgram(image);
+        }
+    }
+
+    /**
+     * Selects the engine used to run the program when the computer is
+     * not observed.
+     *
+     * @param engineType Type of engine.
+     * @throws NICException If the current program can not be prepared
+     * for the engine, e.g., if no compiler is available for {@link
+     * EngineType#COMPILER}, in which case the engine is not changed.
+     */
+    public void setEngine(final EngineType engineType) throws NICException {
+        final Engine engine = engineType.create(processor);
+        if (image != null) {
+            engine.setProgram(image);
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * Returns a new computer with the same parameters, program,
+     * engine, and limits as this computer. If counting, profiling, or
+     * tracing of instructions is enabled, then the new computer
+     * counts, profiles, or traces instructions on its own. The new
+     * computer is never observable and shares no state with this
+     * computer that is modified during execution, so it may be used
+     * by another thread. It is confined to one thread at a time, see
+     * {@link #Computer(int, int, int, int, boolean)}.
+     *
+     * @return Duplicate of this computer.
+     */
+    public Computer duplicate() {
+        final Computer computer =
+            new Computer(mem.getMEMORYCELLS(), mem.getBLOCKSIZE(),
+                         processor.WORDBLOCKS, processor.getNOREGISTERS(),
+                         true);
+        computer.image = image;
+        if (engine != null) {
+            computer.engine = engine.duplicate(computer.processor);
+        }
+        computer.setInstructionLimit(getInstructionLimit());
+        computer.setTimeLimit(getTimeLimit());
+        computer.resultCache = resultCache;
+        if (processor.getCounters() != null) {
+            computer.processor.setCounters(new InstructionCounters());
+        }
+        if (processor.getProfiler() != null) {
+            computer.processor.setProfiler(new Profiler(mem.getMEMORYCELLS()));
+        }
+        if (processor.getTracer() != null) {
+            computer.setTracing(processor.getTracer().getCapacity());
+        }
+        return computer;
+    }
+
     /**
      * Returns the current program.
      *
      * @return Program currently stored in this computer.
      */
     public String getProgram() {
-        return program;
+        if (image == null) {
+            return null;
+        } else {
+            return image.getProgram();
+        }
     }
 
     /**
@@ -147,7 +385,12 @@ public class Computer {
      */
     public String getDescription() {
         final StringBuilder sb = new StringBuilder();
-        sb.append("Frequency: " + (1000 / getClockTick()) + "Hz\n");
+        final long frequency = getFrequency();
+        if (frequency == UNTHROTTLED) {
+            sb.append("Frequency: unthrottled\n");
+        } else {
+            sb.append("Frequency: " + frequency + "Hz\n");
+        }
         sb.append("Memory: " + mem.getMEMORYCELLS() + " blocks\n");
         sb.append("Block: " + mem.getBLOCKSIZE() + " bits\n");
         sb.append("Word: " + processor.getWORDSIZE() + " bits\n");
@@ -157,27 +400,416 @@ public class Computer {
     }
 
     /**
-     * Set the clock tick of this computer.
+     * Set the clock tick of this computer, i.e., the frequency is set
+     * to the number of ticks per second, or to {@link #UNTHROTTLED}
+     * if the tick is not positive.
      *
-     * @param clockTick Clock tick between steps.
+     * @param clockTick Clock tick between steps in milliseconds.
      */
     public void setClockTick(final int clockTick) {
-        synchronized (this) {
-            this.clockTick = clockTick;
+        if (clockTick > 0) {
+            setFrequency(Math.max(1, 1000 / clockTick));
+        } else {
+            setFrequency(UNTHROTTLED);
         }
     }
 
     /**
-     * Returns the clock tick of this computer.
+     * Returns the clock tick of this computer rounded down to whole
+     * milliseconds.
      *
-     * @return Clock tick of this computer.
+     * @return Clock tick of this computer in milliseconds.
      */
     public int getClockTick() {
+        final long frequency = getFrequency();
+        if (frequency == UNTHROTTLED) {
+            return 0;
+        } else {
+            return (int) (1000 / frequency);
+        }
+    }
+
+    /**
+     * Sets the number of instructions per second executed when the
+     * computer is started. The clock keeps this rate exactly on
+     * average, by executing instructions in bursts if the rate is
+     * higher than the resolution of the scheduler.
+     *
+     * @param frequency Number of instructions per second, or {@link
+     * #UNTHROTTLED}.
+     */
+    public void setFrequency(final long frequency) {
+        if (frequency < 0 || frequency > MAXFREQUENCY) {
+            throw new Error("Invalid frequency! (" + frequency + ")");
+        }
+        this.frequency = frequency;
+    }
+
+    /**
+     * Returns the number of instructions per second executed when the
+     * computer is started.
+     *
+     * @return Number of instructions per second, or {@link
+     * #UNTHROTTLED}.
+     */
+    public long getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Returns the number of instructions per second most recently
+     * achieved when the computer is running, which is lower than the
+     * frequency if the host can not keep up.
+     *
+     * @return Number of instructions per second, or zero if the
+     * computer is not running.
+     */
+    public double getAchievedFrequency() {
+        return achievedFrequency;
+    }
+
+    /**
+     * Sets the maximal number of instructions executed after a reset
+     * when the computer is stepped or run through, before the
+     * processor is interrupted.
+     *
+     * @param instructionLimit Maximal number of instructions, or zero
+     * if there is no limit.
+     */
+    public void setInstructionLimit(final long instructionLimit) {
+        synchronized (this) {
+            this.instructionLimit = instructionLimit;
+        }
+    }
+
+    /**
+     * Returns the maximal number of instructions executed after a
+     * reset.
+     *
+     * @return Maximal number of instructions, or zero if there is no
+     * limit.
+     */
+    public long getInstructionLimit() {
+        synchronized (this) {
+            return instructionLimit;
+        }
+    }
+
+    /**
+     * Sets the maximal time spent executing after a reset when the
+     * computer is stepped or run through, before the processor is
+     * interrupted. The time is only checked after every {@link
+     * #BATCHSIZE} instructions, so the limit may be exceeded
+     * slightly.
+     *
+     * @param timeLimit Maximal time in milliseconds, or zero if there
+     * is no limit.
+     */
+    public void setTimeLimit(final long timeLimit) {
+        synchronized (this) {
+            this.timeLimit = timeLimit;
+        }
+    }
+
+    /**
+     * Returns the maximal time spent executing after a reset.
+     *
+     * @return Maximal time in milliseconds, or zero if there is no
+     * limit.
+     */
+    public long getTimeLimit() {
+        synchronized (this) {
+            return timeLimit;
+        }
+    }
+
+    /**
+     * Returns the number of instructions executed since the most
+     * recent reset.
+     *
+     * @return Number of executed instructions.
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Sets the cache of results used by {@link #execute(String)}. The
+     * cache may be shared with other computers.
+     *
+     * @param resultCache Cache of results, or null if results are not
+     * cached.
+     */
+    public void setResultCache(final ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Returns the cache of results used by {@link #execute(String)}.
+     *
+     * @return Cache of results, or null if results are not cached.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Enables or disables counting of fetched and executed
+     * instructions. While counting is enabled, the program is
+     * interpreted by the processor on an instrumented path instead of
+     * being run by the engine. Nothing is counted for results taken
+     * from the cache of results. Enabling counting resets the
+     * counters.
+     *
+     * @param enabled Determines if instructions are counted.
+     */
+    public void setCountersEnabled(final boolean enabled) {
+        synchronized (this) {
+            if (enabled) {
+                processor.setCounters(new InstructionCounters());
+            } else {
+                processor.setCounters(null);
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the counters of fetched and executed
+     * instructions. This should be called when the computer is not
+     * running.
+     *
+     * @return Snapshot of counters, or null if counting is disabled.
+     */
+    public InstructionCounters getCounters() {
+        synchronized (this) {
+            final InstructionCounters counters = processor.getCounters();
+            if (counters == null) {
+                return null;
+            } else {
+                return counters.snapshot();
+            }
+        }
+    }
+
+    /**
+     * Sets the counters of fetched and executed instructions to zero
+     * if counting is enabled. The counters are not affected by
+     * {@link #reset()}, so they accumulate over executions.
+     */
+    public void resetCounters() {
+        synchronized (this) {
+            final InstructionCounters counters = processor.getCounters();
+            if (counters != null) {
+                counters.clear();
+            }
+        }
+    }
+
+    /**
+     * Enables or disables profiling of the cycles spent at each
+     * address. Like counting, see {@link
+     * #setCountersEnabled(boolean)}, this makes the processor
+     * interpret the program on an instrumented path. Enabling
+     * profiling resets the profile.
+     *
+     * @param enabled Determines if instructions are profiled.
+     */
+    public void setProfilingEnabled(final boolean enabled) {
+        synchronized (this) {
+            if (enabled) {
+                processor.setProfiler(new Profiler(mem.getMEMORYCELLS()));
+            } else {
+                processor.setProfiler(null);
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the profile of the cycles spent at each
+     * address. This should be called when the computer is not
+     * running.
+     *
+     * @return Snapshot of profile, or null if profiling is disabled.
+     */
+    public Profiler getProfile() {
+        synchronized (this) {
+            final Profiler profiler = processor.getProfiler();
+            if (profiler == null) {
+                return null;
+            } else {
+                return profiler.snapshot();
+            }
+        }
+    }
+
+    /**
+     * Sets the profile of the cycles spent at each address to zero
+     * if profiling is enabled. The profile is not affected by {@link
+     * #reset()}, so it accumulates over executions.
+     */
+    public void resetProfile() {
+        synchronized (this) {
+            final Profiler profiler = processor.getProfiler();
+            if (profiler != null) {
+                profiler.clear();
+            }
+        }
+    }
+
+    /**
+     * Enables tracing of the given number of most recently executed
+     * instructions, or disables tracing if the number is zero. The
+     * instructions are recorded by the fast loops of the interpreter
+     * and the threaded engine, whereas a compiled program is
+     * interpreted while tracing. The trace is cleared whenever the
+     * computer is reset, so it covers the current execution. Nothing
+     * is traced for results taken from the cache of results.
+     *
+     * @param capacity Number of instructions kept in the trace, or
+     * zero.
+     */
+    public void setTracing(final int capacity) {
+        synchronized (this) {
+            if (capacity > 0) {
+                processor.setTracer(new TraceRecorder(capacity));
+            } else {
+                processor.setTracer(null);
+            }
+        }
+    }
+
+    /**
+     * Returns a trace of the most recently executed instructions
+     * together with the current state, which can be replayed to any
+     * traced step, see {@link TraceReplayer}. This should be called
+     * when the computer is not running.
+     *
+     * @return Trace, or null if tracing is disabled.
+     */
+    public Trace getTrace() {
+        synchronized (this) {
+            final TraceRecorder tracer = processor.getTracer();
+            if (tracer == null) {
+                return null;
+            } else {
+                return tracer.snapshot(processor);
+            }
+        }
+    }
+
+    /**
+     * Enables or disables the timeline of the execution, which lets
+     * the computer move back to earlier steps, see {@link
+     * #seek(long)}. The timeline starts at the current state and is
+     * recorded while the computer is stepped, including when it is
+     * started, since the processor is then stepped when the computer
+     * is observed.
+     *
+     * @param enabled Determines if a timeline is kept.
+     */
+    public void setTimelineEnabled(final boolean enabled) {
+        stop();
         synchronized (this) {
-            return clockTick;
+            if (enabled) {
+                timeline = new Timeline(this);
+            } else {
+                timeline = null;
+            }
         }
     }
 
+    /**
+     * Returns the timeline of the execution.
+     *
+     * @return Timeline, or null if no timeline is kept.
+     */
+    public Timeline getTimeline() {
+        synchronized (this) {
+            return timeline;
+        }
+    }
+
+    /**
+     * Returns the number of steps since the most recent reset, i.e.,
+     * the number of fetches and executes, which is the position of
+     * this computer in its timeline.
+     *
+     * @return Position of this computer.
+     */
+    public long getPosition() {
+        if (processor.getNext() == Processor.EXEC) {
+            return 2 * cycles + 1;
+        } else {
+            return 2 * cycles;
+        }
+    }
+
+    /**
+     * Stops the computer and moves it to the given step of its
+     * timeline, or to the step where the processor stops if it stops
+     * before. Earlier steps are restored from a checkpoint and
+     * replayed, and later steps are executed.
+     *
+     * @param position Number of steps since the most recent reset.
+     * @throws NICException If no timeline is kept.
+     */
+    public void seek(final long position) throws NICException {
+        stop();
+        synchronized (this) {
+            if (timeline == null) {
+                throw new NICException("No timeline is kept!");
+            }
+            timeline.seek(this, Math.max(0, position));
+            publish();
+        }
+    }
+
+    /**
+     * Stops the computer and moves it one step back in its timeline,
+     * i.e., undoes the most recent fetch or execute.
+     *
+     * @return True if the computer moved back and false if it is at
+     * the first step.
+     * @throws NICException If no timeline is kept.
+     */
+    public boolean stepBack() throws NICException {
+        stop();
+        synchronized (this) {
+            final long position = getPosition();
+            if (position == 0) {
+                return false;
+            }
+            seek(position - 1);
+            return true;
+        }
+    }
+
+    /**
+     * Publishes a snapshot of the current state. This must be called
+     * by the thread executing the computer at a safe point, i.e.,
+     * between instructions.
+     */
+    protected void publish() {
+        snapshot = new ComputerSnapshot(processor, cycles, mem.getVersion());
+    }
+
+    /**
+     * Returns the snapshot of the state published at the most recent
+     * safe point. Snapshots are published after a reset, when the
+     * computer stops stepping or running through, between batches of
+     * instructions when running through with a time limit, and
+     * after each step of a started computer, but not by the methods
+     * that execute inputs without allocating, e.g., {@link
+     * #execute(byte[], int, int, ByteBuffer)}. This may be called by
+     * any thread and always gives a coherent state, but not
+     * necessarily the current state while the computer executes.
+     *
+     * @return Snapshot of the state.
+     */
+    public ComputerSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     /**
      * Returns true or false depending on if this computer is running
      * or not.
@@ -194,18 +826,190 @@ public class Computer {
      * is already executing in a thread.
      */
     public void step() {
+        if (timeline == null) {
+            move();
+        } else {
+            if (!running.get()) {
+                timeline.resumed(this);
+            }
+            move();
+            timeline.moved(this);
+        }
+    }
+
+    /**
+     * Executes one step of the computer without recording it in the
+     * timeline.
+     */
+    void move() {
+        if (processor.getNext() == Processor.EXEC) {
+            cycles++;
+        }
         processor.step();
     }
 
+    /**
+     * Returns the point in time given by {@link System#nanoTime()}
+     * when the time limit expires.
+     *
+     * @param start Point in time when execution started.
+     * @return Point in time when the time limit expires.
+     */
+    protected long deadline(final long start) {
+        return start + getTimeLimit() * 1000000L;
+    }
+
+    /**
+     * Interrupts the processor if the instruction limit has been
+     * reached or the deadline has passed.
+     *
+     * @param limit Maximal number of instructions.
+     * @param timed Indicates if there is a time limit.
+     * @param deadline Point in time when the time limit expires.
+     * @return True if the processor was interrupted and false
+     * otherwise.
+     */
+    protected boolean interrupts(final long limit, final boolean timed,
+                                 final long deadline) {
+        if (cycles >= limit
+            || timed && System.nanoTime() - deadline >= 0) {
+            processor.interrupt();
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the instruction limit, where no limit is represented
+     * by the maximal number of instructions.
+     *
+     * @return Maximal number of instructions.
+     */
+    protected long limit() {
+        final long instructionLimit = getInstructionLimit();
+        if (instructionLimit > 0) {
+            return instructionLimit;
+        } else {
+            return Long.MAX_VALUE;
+        }
+    }
+
     /**
      * Repeatedly steps the computer until a step is no longer
-     * successful. Do nothing if the computer is executing in a
-     * thread.
+     * successful, or until the instruction limit or time limit is
+     * reached, in which case the processor is interrupted. Do
+     * nothing if the computer is executing in a thread.
      */
     public void stepThrough() {
+        final long limit = limit();
+        final boolean timed = getTimeLimit() > 0;
+        final long deadline = deadline(System.nanoTime());
+
         while (getStatus() == Processor.SUCCESS) {
+
+            // The time is only checked once per batch.
+            if (nextIsFetch()
+                && (cycles >= limit || cycles % BATCHSIZE == 0)
+                && interrupts(limit, timed, deadline)) {
+                break;
+            }
             step();
         }
+        publish();
+    }
+
+    /**
+     * Runs the computer until the processor is no longer
+     * successful. This gives the same result as {@link
+     * #stepThrough()}, but the state of the processor is only
+     * updated when it stops, so this is only used when the computer
+     * is not observed. If there is a time limit, then the processor
+     * is run in batches of {@link #BATCHSIZE} instructions, with the
+     * time checked in between.
+     */
+    public void runThrough() {
+        runThrough(true);
+    }
+
+    /**
+     * Runs the computer like {@link #runThrough()}, but optionally
+     * without publishing any snapshot, in which case nothing is
+     * allocated.
+     *
+     * @param publishing Determines if snapshots are published.
+     */
+    private void runThrough(final boolean publishing) {
+        final long limit = limit();
+        final boolean timed = getTimeLimit() > 0;
+        final long deadline = deadline(System.nanoTime());
+
+        while (getStatus() == Processor.SUCCESS
+               && !interrupts(limit, timed, deadline)) {
+            long batch = limit - cycles;
+            if (timed) {
+                batch = Math.min(batch, BATCHSIZE);
+            }
+            cycles += run(batch);
+            if (timed && publishing) {
+                publish();
+            }
+        }
+        if (publishing) {
+            publish();
+        }
+    }
+
+    /**
+     * Runs the processor for at most the given number of
+     * instructions, using the engine unless the processor is
+     * instrumented. The number of cycles is not updated.
+     *
+     * @param batch Maximal number of instructions.
+     * @return Number of executed instructions.
+     */
+    private long run(final long batch) {
+        if (engine == null || processor.isInstrumented()) {
+            return processor.run(batch);
+        } else {
+            return engine.run(batch);
+        }
+    }
+
+    /**
+     * Executes at most the given number of instructions, or fewer if
+     * the processor stops. If the computer is observed, then the
+     * processor is stepped through its fetches and executes and
+     * otherwise it is run. This is used by the clock.
+     *
+     * @param n Maximal number of instructions.
+     * @return Number of executed instructions.
+     */
+    long burst(final long n) {
+        final long start = cycles;
+        if (hasObservers()) {
+            while (cycles - start < n
+                   && getStatus() == Processor.SUCCESS) {
+                step();
+            }
+        } else {
+            cycles += run(n);
+            if (timeline != null) {
+                timeline.moved(this);
+            }
+        }
+        return cycles - start;
+    }
+
+    /**
+     * Returns true if somebody may observe the state of this computer
+     * during execution, in which case the processor must be stepped
+     * through its fetches and executes.
+     *
+     * @return True if the computer is observed and false otherwise.
+     */
+    protected boolean hasObservers() {
+        return false;
     }
 
     /**
@@ -216,22 +1020,98 @@ public class Computer {
      * @param input Input given in hexadecimal.
      */
     public void loadInput(final String input) throws NICException {
-        if (program == null) {
+        if (image == null) {
             throw new NICException("No program has been loaded!");
+        } else if (input.length() % mem.HEXSIZE != 0) {
+            throw new NICException("Input is not a whole number of blocks! ("
+                                   + input.length() + " digits)");
         } else {
-            final int len = program.length() + input.length() + 2;
+            final int WORDBLOCKS = processor.WORDBLOCKS;
+            final int len = (image.getProgramBlocks() + WORDBLOCKS)
+                * mem.HEXSIZE + input.length();
             if (len > getMAXPROGRAMLENGTH()) {
                 final String e =
                     String.format("Input is too big! "
                                   + "(program + input is %s bytes)", len);
                 throw new NICException(e);
             } else {
-                final int address = mem.getMEMORYCELLS() - input.length() - 2;
-                mem.load(address, input + String.format("%02x", address));
+                final int end = mem.getMEMORYCELLS() - WORDBLOCKS;
+                final int address = end - input.length() / mem.HEXSIZE;
+                mem.load(address, input);
+                processor.writeInt(end, address, WORDBLOCKS);
             }
         }
     }
 
+    /**
+     * Load an input given as packed nibbles into the memory, see
+     * {@link Memory#load(int, byte[], int, int)}. The layout is the
+     * same as for {@link #loadInput(String)}, but no hexadecimal text
+     * is decoded and nothing is allocated.
+     *
+     * @param in Source of input.
+     * @param off Offset of first byte of input.
+     * @param len Number of bytes of input.
+     * @throws NICException If no program has been loaded, or if the
+     * input is not a whole number of blocks or is too big.
+     */
+    public void loadInput(final byte[] in, final int off, final int len)
+        throws NICException {
+        final int address = inputAddress(2 * len);
+        mem.load(address, in, off, len);
+        processor.writeInt(mem.getMEMORYCELLS() - processor.WORDBLOCKS,
+                           address, processor.WORDBLOCKS);
+    }
+
+    /**
+     * Load an input given in hexadecimal as ASCII bytes into the
+     * memory, see {@link Memory#loadHex(int, byte[], int, int)}. The
+     * layout is the same as for {@link #loadInput(String)}, but
+     * nothing is allocated.
+     *
+     * @param in Source of input.
+     * @param off Offset of first digit of input.
+     * @param len Number of digits of input.
+     * @throws NICException If no program has been loaded, or if the
+     * input is not a whole number of blocks, is too big, or is not
+     * hexadecimal.
+     */
+    public void loadInputHex(final byte[] in, final int off, final int len)
+        throws NICException {
+        final int address = inputAddress(len);
+        mem.loadHex(address, in, off, len);
+        processor.writeInt(mem.getMEMORYCELLS() - processor.WORDBLOCKS,
+                           address, processor.WORDBLOCKS);
+    }
+
+    /**
+     * Returns the address of an input with the given number of
+     * hexadecimal digits, which is located as far up in memory as
+     * possible, right before the last word.
+     *
+     * @param digits Number of hexadecimal digits of input.
+     * @return Address of input.
+     * @throws NICException If no program has been loaded, or if the
+     * input is not a whole number of blocks or is too big.
+     */
+    private int inputAddress(final int digits) throws NICException {
+        if (image == null) {
+            throw new NICException("No program has been loaded!");
+        } else if (digits % mem.HEXSIZE != 0) {
+            throw new NICException("Input is not a whole number of blocks! ("
+                                   + digits + " digits)");
+        }
+        final int WORDBLOCKS = processor.WORDBLOCKS;
+        final int noBlocks = digits / mem.HEXSIZE;
+        final long blocks =
+            (long) image.getProgramBlocks() + WORDBLOCKS + noBlocks;
+        if (blocks > mem.getMEMORYCELLS()) {
+            throw new NICException("Input is too big! (program + input "
+                                   + "is " + blocks + " blocks)");
+        }
+        return mem.getMEMORYCELLS() - WORDBLOCKS - noBlocks;
+    }
+
     /**
      * Read an output from the memory. The last word in the memory
      * points to the start of the input which is located as far up in
@@ -240,24 +1120,229 @@ public class Computer {
      * @return Output given in hexadecimal.
      */
     public String readOutput() {
-        final int len = mem.getMEMORYCELLS();
-        final int p =
-            Math.min((mem.get(len - 2) << 4) | mem.get(len - 1), len - 2);
-        return mem.read(p, len - 2);
+        final int WORDBLOCKS = processor.WORDBLOCKS;
+        final int end = mem.getMEMORYCELLS() - WORDBLOCKS;
+        final int p = Math.min(processor.readInt(end, WORDBLOCKS), end);
+        return mem.read(p, end);
+    }
+
+    /**
+     * Read an output from the memory as packed nibbles into the given
+     * buffer, see {@link Memory#read(int, int, ByteBuffer)}. The
+     * layout is the same as for {@link #readOutput()}, but no
+     * hexadecimal text is encoded and nothing is allocated.
+     *
+     * @param out Destination of output.
+     * @return Number of bytes written.
+     * @throws NICException If the output does not fit in the
+     * remaining space of the buffer.
+     */
+    public int readOutput(final ByteBuffer out) throws NICException {
+        final int WORDBLOCKS = processor.WORDBLOCKS;
+        final int end = mem.getMEMORYCELLS() - WORDBLOCKS;
+        final int p = Math.min(processor.readInt(end, WORDBLOCKS), end);
+        final int size = mem.packedSize(end - p);
+        if (size > out.remaining()) {
+            throw new NICException("Output does not fit in buffer! ("
+                                   + size + " > " + out.remaining() + ")");
+        }
+        return mem.read(p, end, out);
     }
 
     /**
      * Executes the program on the given input.
      *
+     * <p>
+     *
+     * If there is a cache of results and the computer is not
+     * observed, then a cached output is returned without executing
+     * the program, unless it took more instructions to compute than
+     * the instruction limit allows. In that case the state of the
+     * computer is left as it is, except that the number of cycles is
+     * set to the number of instructions executed to compute the
+     * cached output, see {@link #getCycles()}.
+     *
      * @param input Input to program.
      * @return Output of the program when executed on the input.
+     * @throws NICException If the input can not be loaded, or if the
+     * processor is interrupted due to the instruction limit or the
+     * time limit, in which case the status is {@link
+     * Processor#INTERRUPTED}.
      */
     public String execute(final String input)
         throws NICException {
+
+        ResultCache.Key key = null;
+        if (resultCache != null && image != null && !hasObservers()) {
+            key = new ResultCache.Key(image, processor.WORDBLOCKS,
+                                      processor.getNOREGISTERS(), input);
+            final ResultCache.Result result = resultCache.get(key);
+            final long instructionLimit = getInstructionLimit();
+            if (result != null
+                && (instructionLimit <= 0
+                    || result.cycles <= instructionLimit)) {
+                cycles = result.cycles;
+                return result.output;
+            }
+        }
+
         reset();
         loadInput(input);
-        stepThrough();
-        return readOutput();
+        if (hasObservers()) {
+            stepThrough();
+        } else {
+            runThrough();
+        }
+        if (getStatus() == Processor.INTERRUPTED) {
+            throw new NICException("Execution interrupted after "
+                                   + cycles + " cycles!");
+        }
+        final String output = readOutput();
+
+        if (key != null) {
+            resultCache.put(key, new ResultCache.Result(output, cycles));
+        }
+        return output;
+    }
+
+    /**
+     * Executes the program on the given input given as packed nibbles
+     * and writes the output as packed nibbles to the given buffer,
+     * see {@link #loadInput(byte[], int, int)} and {@link
+     * #readOutput(ByteBuffer)}. This gives the same result as {@link
+     * #execute(String)}, but the cache of results is not used and
+     * nothing is allocated unless the computer is observed. Thus, no
+     * snapshot is published, see {@link #getSnapshot()}.
+     *
+     * @param in Source of input.
+     * @param off Offset of first byte of input.
+     * @param len Number of bytes of input.
+     * @param out Destination of output.
+     * @return Number of bytes of output.
+     * @throws NICException If the input can not be loaded, if the
+     * output does not fit in the buffer, or if the processor is
+     * interrupted due to the instruction limit or the time limit.
+     */
+    public int execute(final byte[] in, final int off, final int len,
+                       final ByteBuffer out)
+        throws NICException {
+        stop();
+        synchronized (this) {
+            resetState();
+        }
+        loadInput(in, off, len);
+        if (hasObservers()) {
+            stepThrough();
+        } else {
+            runThrough(false);
+        }
+        if (getStatus() == Processor.INTERRUPTED) {
+            throw new NICException("Execution interrupted after "
+                                   + cycles + " cycles!");
+        }
+        return readOutput(out);
+    }
+
+    /**
+     * Returns the maximal number of hexadecimal digits of an output.
+     *
+     * @return Maximal length of output.
+     */
+    int getMAXOUTPUTLENGTH() {
+        return (mem.getMEMORYCELLS() - processor.WORDBLOCKS) * mem.HEXSIZE;
+    }
+
+    /**
+     * Executes the program on the given input in hexadecimal as ASCII
+     * bytes and writes the output in hexadecimal as ASCII bytes into
+     * the given array. This gives the same result as {@link
+     * #execute(String)} and uses the cache of results in the same
+     * way, but if there is no cache, then nothing is allocated unless
+     * the computer is observed. Thus, no snapshot is published then,
+     * see {@link #getSnapshot()}.
+     *
+     * @param in Source of input.
+     * @param off Offset of first digit of input.
+     * @param len Number of digits of input.
+     * @param out Destination of output with room for {@link
+     * #getMAXOUTPUTLENGTH()} digits.
+     * @param outOff Offset of first digit of output.
+     * @return Number of digits of output.
+     * @throws NICException If the input can not be loaded, or if the
+     * processor is interrupted due to the instruction limit or the
+     * time limit.
+     */
+    int executeHex(final byte[] in, final int off, final int len,
+                   final byte[] out, final int outOff)
+        throws NICException {
+        if (resultCache != null) {
+            final String input =
+                new String(in, off, len, StandardCharsets.US_ASCII);
+            final String output = execute(input);
+            for (int i = 0; i < output.length(); i++) {
+                out[outOff + i] = (byte) output.charAt(i);
+            }
+            return output.length();
+        }
+
+        stop();
+        synchronized (this) {
+            resetState();
+        }
+        loadInputHex(in, off, len);
+        if (hasObservers()) {
+            stepThrough();
+        } else {
+            runThrough(false);
+        }
+        if (getStatus() == Processor.INTERRUPTED) {
+            throw new NICException("Execution interrupted after "
+                                   + cycles + " cycles!");
+        }
+        final int WORDBLOCKS = processor.WORDBLOCKS;
+        final int end = mem.getMEMORYCELLS() - WORDBLOCKS;
+        final int p = Math.min(processor.readInt(end, WORDBLOCKS), end);
+        return mem.readHex(p, end, out, outOff);
+    }
+
+    /**
+     * Executes the program on the input that is already in memory,
+     * e.g., a dataset in the file of a {@link MappedMemory}. The input
+     * must be laid out as by {@link #loadInput(String)}, i.e., it ends
+     * right before the last word of memory, which holds the address
+     * of the input. The processor is reset and the program is written
+     * to memory, but the rest of memory is left as it is, and the
+     * output is left in memory where {@link #readOutput()} finds it.
+     *
+     * @throws NICException If no program has been loaded, or if the
+     * processor is interrupted due to the instruction limit or the
+     * time limit.
+     */
+    public void executeInPlace() throws NICException {
+        if (image == null) {
+            throw new NICException("No program has been loaded!");
+        }
+        stop();
+        synchronized (this) {
+            processor.reset();
+            cycles = 0;
+            for (int i = 0; i < image.getProgramBlocks(); i++) {
+                mem.set(i, image.blocks[i]);
+            }
+            if (engine != null) {
+                engine.reset();
+            }
+            publish();
+        }
+        if (hasObservers()) {
+            stepThrough();
+        } else {
+            runThrough();
+        }
+        if (getStatus() == Processor.INTERRUPTED) {
+            throw new NICException("Execution interrupted after "
+                                   + cycles + " cycles!");
+        }
     }
 
     /**
@@ -268,14 +1353,65 @@ public class Computer {
      * @param is Source of inputs.
      * @param ps Destination of outputs.
      *
-     * @throws NICException Issues encountered in NIC itself.
+     * @throws NICException Issues encountered in NIC itself, e.g.,
+     * if the execution on an input is interrupted.
      * @throws IOException Issues with reading or writing data.
      */
     public void executeStream(final InputStream is, final PrintStream ps)
         throws NICException, IOException {
-        final Scanner sc = new Scanner(is);
-        while (sc.hasNextLine()) {
-            ps.println(execute(sc.nextLine()));
+        new StreamPipeline(this, Channels.newChannel(is),
+                           Channels.newChannel(ps)).run();
+        ps.flush();
+    }
+
+    /**
+     * Executes the program on each line of input from the input
+     * stream using the given number of worker threads, and writes the
+     * results as lines on the destination stream in the order of the
+     * inputs. Each worker executes batches of lines on its own
+     * duplicate of this computer, see {@link #duplicate()}, so this
+     * computer is not modified, except that the instructions counted
+     * and profiled by the duplicates are added to the counters and
+     * the profile of this computer. The lines are read and the
+     * outputs are written in batches as by {@link
+     * #executeStream(InputStream, PrintStream)}.
+     *
+     * @param is Source of inputs.
+     * @param ps Destination of outputs.
+     * @param workers Number of worker threads.
+     *
+     * @throws NICException Issues encountered in NIC itself, e.g.,
+     * if the execution on an input is interrupted.
+     * @throws IOException Issues with reading or writing data.
+     */
+    public void executeStream(final InputStream is, final PrintStream ps,
+                              final int workers)
+        throws NICException, IOException {
+
+        if (workers <= 1) {
+            executeStream(is, ps);
+            return;
+        }
+
+        final Computer[] computers = new Computer[workers];
+        for (int i = 0; i < workers; i++) {
+            computers[i] = duplicate();
+        }
+        new StreamPipeline(computers, Channels.newChannel(is),
+                           Channels.newChannel(ps)).run();
+        ps.flush();
+
+        // All workers are done, so their counters and profiles can be
+        // read.
+        final InstructionCounters counters = processor.getCounters();
+        final Profiler profiler = processor.getProfiler();
+        for (final Computer computer : computers) {
+            if (counters != null) {
+                counters.add(computer.processor.getCounters());
+            }
+            if (profiler != null) {
+                profiler.add(computer.processor.getProfiler());
+            }
         }
     }
 
@@ -287,13 +1423,40 @@ public class Computer {
      * @param is Source of inputs.
      * @param ps Destination of outputs.
      *
-     * @throws NICException Issues encountered in NIC itself.
+     * @throws NICException Issues encountered in NIC itself, e.g.,
+     * if the execution on an input is interrupted.
      * @throws IOException Issues with reading or writing data.
      */
     public void executeStream() throws NICException, IOException {
         executeStream(System.in, System.out);
     }
 
+    /**
+     * Sets the host that runs this computer when it is started, or
+     * null if it is run by a thread of its own. The computer is
+     * stopped first.
+     *
+     * @param host Host of this computer, or null.
+     */
+    public void setHost(final ComputerHost host) {
+        stop();
+        synchronized (this) {
+            this.host = host;
+        }
+    }
+
+    /**
+     * Returns the host that runs this computer when it is started.
+     *
+     * @return Host of this computer, or null if it is run by a thread
+     * of its own.
+     */
+    public ComputerHost getHost() {
+        synchronized (this) {
+            return host;
+        }
+    }
+
     /**
      * Start the computer and execute from the current state. Do
      * nothing if the computer is already executing.
@@ -301,9 +1464,18 @@ public class Computer {
     public void start() {
         synchronized (this) {
             if (!running.get()) {
+                if (timeline != null) {
+                    timeline.resumed(this);
+                }
                 running.set(true);
-                clockedComputer = new ClockedComputer(this, running);
-                clockedComputer.start();
+                if (host == null) {
+                    hostedComputer = null;
+                    clockedComputer = new ClockedComputer(this, running);
+                    clockedComputer.start();
+                } else {
+                    clockedComputer = null;
+                    hostedComputer = host.start(this, running);
+                }
             }
         }
     }
@@ -314,11 +1486,16 @@ public class Computer {
     public void stop() {
         synchronized (this) {
             if (running.get()) {
-                try {
-                    running.set(false);
-                    clockedComputer.join();
-                    clockedComputer = null;
-                } catch (InterruptedException ignored) {
+                running.set(false);
+                if (hostedComputer != null) {
+                    hostedComputer.cancel();
+                    hostedComputer = null;
+                } else {
+                    try {
+                        clockedComputer.join();
+                        clockedComputer = null;
+                    } catch (InterruptedException ignored) {
+                    }
                 }
             }
         }
@@ -356,29 +1533,53 @@ public class Computer {
     }
 
     /**
-     * Stop and reset the processor, clear memory, and load the
-     * program.
+     * Stop and reset the processor, and restore the memory to the
+     * image of the program, or clear it if there is no program.
      */
     public void reset() {
         stop();
         synchronized (this) {
-            processor.reset();
+            resetState();
+            publish();
+        }
+    }
+
+    /**
+     * Resets the processor and the engine, and restores the memory
+     * without publishing a snapshot. This must be called by the
+     * thread holding the monitor of this computer when it is not
+     * running.
+     */
+    private void resetState() {
+        processor.reset();
+        cycles = 0;
+        if (image == null) {
             mem.clear();
-            try {
-                mem.load(0, program);
-            } catch (final NICException nice) {
-                throw new Error("Program could not be reloaded!", nice);
-            }
+        } else {
+            mem.restore(image);
+        }
+        if (engine != null) {
+            engine.reset();
+        }
+        if (timeline != null) {
+            timeline.clear(this);
         }
     }
 }
 
 /**
  * Creates a clocked computer. This simulates the "clock circuit"
- * that wraps a physical computer.
+ * that wraps a physical computer, using a dedicated thread to drive
+ * a {@link ClockGovernor}.
  */
 class ClockedComputer extends Thread {
 
+    /**
+     * Maximal time in nanoseconds to wait before checking if the
+     * computer has been stopped or if its frequency has changed.
+     */
+    final static long MAXWAIT = 10000000L;
+
     /**
      * Executed computer.
      */
@@ -401,23 +1602,19 @@ class ClockedComputer extends Thread {
 
     @Override
     public void run() {
+        final ClockGovernor governor = new ClockGovernor(comp);
         try {
 
             // We execute until somebody stops the computer or until
             // the processor halts on its own.
             while (running.get() && comp.getStatus() == Processor.SUCCESS) {
-
-                // Take one step.
-                comp.step();
-
-                // Wait for one "clock cycle" before fetching and
-                // executing again.
-                if (comp.nextIsFetch()) {
-                    sleep(comp.getClockTick());
+                final long wait = governor.tick();
+                if (wait > 0) {
+                    LockSupport.parkNanos(Math.min(wait, MAXWAIT));
                 }
             }
-        } catch (InterruptedException e) {
         } finally {
+            governor.stopped();
             running.set(false);
         }
     }
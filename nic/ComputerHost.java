@@ -0,0 +1,106 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Host of many computers that are run by a shared pool of threads
+ * instead of one thread per computer. A computer is attached to a
+ * host by {@link Computer#setHost(ComputerHost)}, after which {@link
+ * Computer#start()}, {@link Computer#stop()}, and {@link
+ * Computer#reset()} work as usual, and each computer keeps its own
+ * frequency. A running computer is a task that executes the
+ * instructions that are due and schedules itself at its next
+ * deadline, so a computer that is not running costs no thread and no
+ * memory beyond the computer itself.
+ */
+public class ComputerHost {
+
+    /**
+     * Number of hosts created, used to name their threads.
+     */
+    private final static AtomicInteger hosts = new AtomicInteger();
+
+    /**
+     * Scheduler of the running computers.
+     */
+    protected final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * Number of running computers.
+     */
+    protected final AtomicInteger active;
+
+    /**
+     * Creates a host with one thread per available processor.
+     */
+    public ComputerHost() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a host with the given number of threads.
+     *
+     * @param threads Number of threads.
+     */
+    public ComputerHost(final int threads) {
+        final String name = "ComputerHost-" + hosts.incrementAndGet() + "-";
+        final AtomicInteger counter = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(threads, r -> {
+                final Thread thread =
+                    new Thread(r, name + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.executor.setRemoveOnCancelPolicy(true);
+        this.active = new AtomicInteger();
+    }
+
+    /**
+     * Starts running the given computer on this host.
+     *
+     * @param comp Computer to run.
+     * @param running Signals if the computer should run or not.
+     * @return Task running the computer.
+     */
+    HostedComputer start(final Computer comp, final Running running) {
+        final HostedComputer hosted = new HostedComputer(this, comp, running);
+        active.incrementAndGet();
+        hosted.schedule(0);
+        return hosted;
+    }
+
+    /**
+     * Returns the number of computers currently running on this host.
+     *
+     * @return Number of running computers.
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Returns the number of threads of this host.
+     *
+     * @return Number of threads.
+     */
+    public int getThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Stops the threads of this host. Computers that are still running
+     * are abandoned without being stopped, so they should be stopped
+     * before.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,166 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Immutable snapshot of the state of a computer taken at a safe
+ * point, i.e., between instructions when the computer is not
+ * running or between batches of instructions. Snapshots are
+ * published by the thread executing the computer and may be read by
+ * any thread without locking, see {@link Computer#getSnapshot()}.
+ */
+public final class ComputerSnapshot {
+
+    /**
+     * Values of the general purpose registers.
+     */
+    private final int[] registers;
+
+    /**
+     * Value of the program counter.
+     */
+    private final int pc;
+
+    /**
+     * Value of the instruction register.
+     */
+    private final long ir;
+
+    /**
+     * Next move of the processor.
+     */
+    private final int next;
+
+    /**
+     * Status of the processor.
+     */
+    private final int status;
+
+    /**
+     * Number of instructions executed since the most recent reset.
+     */
+    private final long cycles;
+
+    /**
+     * Version of memory, see {@link Memory#getVersion()}.
+     */
+    private final long memoryVersion;
+
+    /**
+     * Takes a snapshot of the given processor. This must be called by
+     * the thread executing the processor.
+     *
+     * @param processor Processor.
+     * @param cycles Number of instructions executed since the most
+     * recent reset.
+     * @param memoryVersion Version of memory.
+     */
+    ComputerSnapshot(final Processor processor, final long cycles,
+                     final long memoryVersion) {
+        this.registers = new int[processor.NOREGISTERS];
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (int) processor.reg[i].get();
+        }
+        this.pc = (int) processor.pc.get();
+        this.ir = processor.ir.get();
+        this.next = processor.getNext();
+        this.status = processor.getStatus();
+        this.cycles = cycles;
+        this.memoryVersion = memoryVersion;
+    }
+
+    /**
+     * Returns the number of general purpose registers.
+     *
+     * @return Number of registers.
+     */
+    public int getNOREGISTERS() {
+        return registers.length;
+    }
+
+    /**
+     * Returns the value of the given general purpose register.
+     *
+     * @param i Index of register.
+     * @return Value of register.
+     */
+    public int getRegister(final int i) {
+        return registers[i];
+    }
+
+    /**
+     * Returns the value of the program counter.
+     *
+     * @return Value of program counter.
+     */
+    public int getPC() {
+        return pc;
+    }
+
+    /**
+     * Returns the value of the instruction register.
+     *
+     * @return Value of instruction register.
+     */
+    public long getIR() {
+        return ir;
+    }
+
+    /**
+     * Returns the next move of the processor.
+     *
+     * @return Next move of the processor.
+     */
+    public int getNext() {
+        return next;
+    }
+
+    /**
+     * Returns the status of the processor.
+     *
+     * @return Status of the processor.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the number of instructions executed since the most
+     * recent reset.
+     *
+     * @return Number of executed instructions.
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Returns the number of steps, i.e., fetches and executes, since
+     * the most recent reset, which is the position of the computer in
+     * its timeline, see {@link Computer#seek(long)}.
+     *
+     * @return Number of steps.
+     */
+    public long getPosition() {
+        if (next == Processor.EXEC) {
+            return 2 * cycles + 1;
+        } else {
+            return 2 * cycles;
+        }
+    }
+
+    /**
+     * Returns the version of memory, which differs between two
+     * snapshots if memory was written in between.
+     *
+     * @return Version of memory.
+     */
+    public long getMemoryVersion() {
+        return memoryVersion;
+    }
+}
@@ -0,0 +1,206 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Map from addresses of instructions to the source lines they were
+ * assembled from, the nearest preceding labels, and the source text
+ * of the instructions. The assembler writes the map next to the
+ * executable in a text format with one instruction per line:
+ *
+ * <pre>
+ * # address line label text
+ * 0x00 1 - loadc r0 0
+ * 0x0c 4 loop add r1 r1 r2
+ * </pre>
+ *
+ * where a label is replaced by "-" if there is none.
+ */
+public final class DebugMap {
+
+    /**
+     * Postfix of files containing debug maps.
+     */
+    public final static String POSTFIX = ".dbg";
+
+    /**
+     * Placeholder for a missing label.
+     */
+    final static String NOLABEL = "-";
+
+    /**
+     * Source line of the instruction at each address, or zero if
+     * there is none.
+     */
+    final int[] lines;
+
+    /**
+     * Label preceding the instruction at each address, or null if
+     * there is none.
+     */
+    final String[] labels;
+
+    /**
+     * Source text of the instruction at each address, or null if
+     * there is none.
+     */
+    final String[] texts;
+
+    /**
+     * Creates an empty map for a memory with the given number of
+     * cells.
+     *
+     * @param MEMORYCELLS Number of memory cells.
+     */
+    public DebugMap(final int MEMORYCELLS) {
+        this.lines = new int[MEMORYCELLS];
+        this.labels = new String[MEMORYCELLS];
+        this.texts = new String[MEMORYCELLS];
+    }
+
+    /**
+     * Maps the given address.
+     *
+     * @param address Address of instruction.
+     * @param line Source line of instruction.
+     * @param label Nearest preceding label, or null if there is
+     * none.
+     * @param text Source text of instruction.
+     */
+    public void put(final int address, final int line, final String label,
+                    final String text) {
+        if (address < 0 || address >= lines.length || line <= 0) {
+            throw new Error("Invalid entry! (" + address + ", " + line + ")");
+        }
+        lines[address] = line;
+        labels[address] = label;
+        texts[address] = text;
+    }
+
+    /**
+     * Returns the source line of the instruction at the given
+     * address.
+     *
+     * @param address Address of instruction.
+     * @return Source line, or zero if the address is not mapped.
+     */
+    public int getLine(final int address) {
+        return lines[address];
+    }
+
+    /**
+     * Returns the label preceding the instruction at the given
+     * address.
+     *
+     * @param address Address of instruction.
+     * @return Label, or null if there is none.
+     */
+    public String getLabel(final int address) {
+        return labels[address];
+    }
+
+    /**
+     * Returns the source text of the instruction at the given
+     * address.
+     *
+     * @param address Address of instruction.
+     * @return Source text, or null if the address is not mapped.
+     */
+    public String getText(final int address) {
+        return texts[address];
+    }
+
+    /**
+     * Returns the number of memory cells of the memory of this map.
+     *
+     * @return Number of memory cells.
+     */
+    public int getMEMORYCELLS() {
+        return lines.length;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("# address line label text\n");
+        for (int address = 0; address < lines.length; address++) {
+            if (lines[address] > 0) {
+                final String label = labels[address];
+                sb.append(String.format("0x%02x %d %s %s\n", address,
+                                        lines[address],
+                                        label == null ? NOLABEL : label,
+                                        texts[address]));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a map in text form.
+     *
+     * @param text Map in text form.
+     * @param MEMORYCELLS Number of memory cells.
+     * @return Map.
+     * @throws NICException If the map is malformed.
+     */
+    public static DebugMap parse(final String text, final int MEMORYCELLS)
+        throws NICException {
+        final DebugMap debugMap = new DebugMap(MEMORYCELLS);
+        for (final String line : text.split("\n")) {
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] fields = line.trim().split(" ", 4);
+            try {
+                if (fields.length < 3 || !fields[0].startsWith("0x")) {
+                    throw new NumberFormatException();
+                }
+                final int address = Integer.parseInt(fields[0].substring(2),
+                                                     16);
+                final int sourceLine = Integer.parseInt(fields[1]);
+                if (address < 0 || address >= MEMORYCELLS
+                    || sourceLine <= 0) {
+                    throw new NumberFormatException();
+                }
+                final String label =
+                    fields[2].equals(NOLABEL) ? null : fields[2];
+                debugMap.put(address, sourceLine, label,
+                             fields.length > 3 ? fields[3] : "");
+            } catch (final NumberFormatException nfe) {
+                throw new NICException("Malformed debug map! (" + line + ")");
+            }
+        }
+        return debugMap;
+    }
+
+    /**
+     * Reads a map in text form from the given file.
+     *
+     * @param file Source file.
+     * @param MEMORYCELLS Number of memory cells.
+     * @return Map.
+     * @throws NICException If the file can not be read or the map is
+     * malformed.
+     */
+    public static DebugMap read(final File file, final int MEMORYCELLS)
+        throws NICException {
+        try {
+            final byte[] bytes = Files.readAllBytes(file.toPath());
+            return parse(new String(bytes, StandardCharsets.UTF_8),
+                         MEMORYCELLS);
+        } catch (final IOException ioe) {
+            throw new NICException("Cannot read " + file.getName() + "!",
+                                   ioe);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Instruction that has been split into its operation code and
+ * operands once and for all, so that it can be executed repeatedly
+ * without decoding the bit pattern again.
+ */
+class DecodedInstruction {
+
+    /**
+     * Bit pattern of the instruction as stored in the instruction
+     * register.
+     */
+    final long ir;
+
+    /**
+     * Operation code, or {@link Processor#opInvalid} if the
+     * instruction refers to a register that does not exist.
+     */
+    final int opCode;
+
+    /**
+     * First field, i.e., the block following the operation code.
+     */
+    final int field1;
+
+    /**
+     * Second field, i.e., the next to last block.
+     */
+    final int field2;
+
+    /**
+     * Third field, i.e., the last block.
+     */
+    final int field3;
+
+    /**
+     * Constant formed by the blocks following the first field. This
+     * is used as a constant word or as an address.
+     */
+    final int constant;
+
+    /**
+     * Target address of a jump, i.e., the constant rounded down to a
+     * multiple of the number of blocks of an instruction.
+     */
+    final int target;
+
+    /**
+     * Condition of a jump encoded as the remainder of the constant
+     * modulo the number of blocks of an instruction, where 0, 1, 2,
+     * and 3 denote eq, neq, le, and leq. An instruction has at least
+     * four blocks, so all conditions can be encoded, but with words
+     * of three blocks an instruction has five blocks and the
+     * remainder may also be 4. Such a jump is never taken, which
+     * every way of executing it must respect.
+     */
+    final int condition;
+
+    /**
+     * Decodes the given instruction, which consists of an operation
+     * code, the first field, and a word. If the word has more than
+     * two blocks, then the second and third fields are its two last
+     * blocks.
+     *
+     * <p>
+     *
+     * A field of a block of more than four bits may hold the index of
+     * a register that does not exist. Such an instruction is given
+     * the operation code {@link Processor#opInvalid}, so every way of
+     * executing it treats it as a bad instruction.
+     *
+     * @param ir Bit pattern of the instruction.
+     * @param BLOCKSIZE Bit-size of a block.
+     * @param WORDBLOCKS Number of blocks in a word.
+     * @param OPMASK Operation code bitmask.
+     * @param WORDMASK Word where all bits equal one.
+     * @param NOREGISTERS Number of registers.
+     */
+    DecodedInstruction(final long ir, final int BLOCKSIZE,
+                       final int WORDBLOCKS, final int OPMASK,
+                       final int WORDMASK, final int NOREGISTERS) {
+        this.ir = ir;
+
+        final int BLOCKMASK = (int) ((1L << BLOCKSIZE) - 1);
+        final int WORDSIZE = WORDBLOCKS * BLOCKSIZE;
+
+        this.field3 = (int) ir & BLOCKMASK;
+        this.field2 = (int) (ir >>> BLOCKSIZE) & BLOCKMASK;
+        this.constant = (int) ir & WORDMASK;
+
+        long instruction = ir >>> WORDSIZE;
+
+        this.field1 = (int) instruction & BLOCKMASK;
+        instruction >>>= BLOCKSIZE;
+
+        final int op = (int) instruction & OPMASK;
+        if (usesMissingRegister(op, NOREGISTERS)) {
+            this.opCode = Processor.opInvalid;
+        } else {
+            this.opCode = op;
+        }
+
+        final int INSTRUCTIONBLOCKS = WORDBLOCKS + 2;
+        this.condition = constant % INSTRUCTIONBLOCKS;
+        this.target = constant - condition;
+    }
+
+    /**
+     * Returns true if an instruction with the given operation code
+     * and the fields of this instruction refers to a register that
+     * does not exist.
+     *
+     * @param op Operation code.
+     * @param NOREGISTERS Number of registers.
+     * @return True or false depending on if a register is missing.
+     */
+    private boolean usesMissingRegister(final int op,
+                                        final int NOREGISTERS) {
+        switch (op) {
+        case Processor.opLoadMem:
+        case Processor.opLoadConst:
+        case Processor.opStore:
+        case Processor.opAddConst:
+        case Processor.opJump:
+            return field1 >= NOREGISTERS;
+        case Processor.opLoadReg:
+        case Processor.opStoreReg:
+        case Processor.opMove:
+            return field2 >= NOREGISTERS || field3 >= NOREGISTERS;
+        case Processor.opAddInt:
+        case Processor.opMulInt:
+        case Processor.opSubInt:
+        case Processor.opRShift:
+        case Processor.opAND:
+        case Processor.opOR:
+        case Processor.opXOR:
+            return field1 >= NOREGISTERS || field2 >= NOREGISTERS
+                || field3 >= NOREGISTERS;
+        default:
+            return false;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Execution engine that runs the program of a computer
+ * non-interactively on its {@link Processor}. All engines give
+ * exactly the same result as stepping the processor, but they differ
+ * in how much work they do when a program is set compared to how
+ * fast they execute it.
+ */
+public interface Engine {
+
+    /**
+     * Prepares the engine for executing the program of the given
+     * image, which is restored each time the computer is reset.
+     *
+     * @param image Image of memory after a reset.
+     * @throws NICException If the program can not be prepared.
+     */
+    void setProgram(final ProgramImage image) throws NICException;
+
+    /**
+     * Informs the engine that the memory has been reset to contain
+     * the program and the registers have been set to zero.
+     */
+    void reset();
+
+    /**
+     * Runs the processor until it halts, encounters an error, or has
+     * executed the given number of instructions.
+     *
+     * @param maxInstructions Maximal number of instructions to
+     * execute.
+     * @return Number of instructions executed.
+     */
+    long run(final long maxInstructions);
+
+    /**
+     * Returns an engine of the same type for the given processor,
+     * which is prepared for the same program. Any preparation of the
+     * program that does not depend on the processor is shared with
+     * this engine, so the two engines may be used by different
+     * threads.
+     *
+     * @param processor Processor with the same parameters as the
+     * processor of this engine.
+     * @return Engine for the given processor.
+     */
+    Engine duplicate(final Processor processor);
+}
@@ -0,0 +1,56 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Types of execution engines that can be selected for a computer.
+ */
+public enum EngineType {
+
+    /**
+     * Interprets one instruction at a time, see {@link
+     * Processor#run(long)}.
+     */
+    INTERPRETER {
+        Engine create(final Processor processor) {
+            return new InterpretingEngine(processor);
+        }
+    },
+
+    /**
+     * Executes the program as threaded code, see {@link
+     * ThreadedEngine}.
+     */
+    THREADED {
+        Engine create(final Processor processor) {
+            return new ThreadedEngine(processor);
+        }
+    },
+
+    /**
+     * Translates the program to JVM bytecode, see {@link
+     * CompilingEngine}. The program is translated to Java source
+     * which is compiled when the program is set, so this requires a
+     * JDK with the module jdk.compiler at run time and not merely a
+     * JRE. Otherwise, selecting this engine or setting a program
+     * for it fails.
+     */
+    COMPILER {
+        Engine create(final Processor processor) {
+            return new CompilingEngine(processor);
+        }
+    };
+
+    /**
+     * Creates an engine of this type for the given processor.
+     *
+     * @param processor Processor executed by the engine.
+     * @return Engine.
+     */
+    abstract Engine create(final Processor processor);
+}
@@ -17,12 +17,12 @@ public class GenericRegister implements Register {
     /**
      * Mask for this register.
      */
-    protected int REGMASK;
+    protected long REGMASK;
 
     /**
      * Value of this register.
      */
-    protected int value;
+    protected long value;
 
     /**
      * Creates a register with the given bitsize initialized to zero.
@@ -30,18 +30,18 @@ public class GenericRegister implements Register {
      * @param REGSIZE Bit size of contents of this register.
      */
     public GenericRegister(final int REGSIZE) {
-        this.REGMASK = (1 << REGSIZE) - 1;
+        this.REGMASK = REGSIZE >= 64 ? -1L : (1L << REGSIZE) - 1;
     }
 
     @Override
-    public synchronized void set(final int value) {
+    public void set(final long value) {
         synchronized (this) {
             this.value = value & REGMASK;
         }
     }
 
     @Override
-    public synchronized int get() {
+    public long get() {
         synchronized (this) {
             return value;
         }
@@ -0,0 +1,174 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.io.IOException;
+
+/**
+ * Table-driven codec between blocks and hexadecimal text. Blocks are
+ * decoded directly from a character sequence or from ASCII bytes and
+ * encoded directly into a character array or an appendable, so
+ * nothing is allocated and each digit is validated in the same pass
+ * as it is decoded. Digits are encoded in lower case, but decoded in
+ * both lower and upper case.
+ */
+public final class HexCodec {
+
+    /**
+     * Hexadecimal digits indexed by their values.
+     */
+    private final static char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Values of ASCII characters, where non-digits have value -1.
+     */
+    private final static byte[] VALUES = new byte[128];
+
+    static {
+        for (int c = 0; c < VALUES.length; c++) {
+            VALUES[c] = (byte) Character.digit(c, 16);
+        }
+    }
+
+    /**
+     * Prevents instantiation.
+     */
+    private HexCodec() {
+    }
+
+    /**
+     * Returns the value of the given hexadecimal digit, or -1 if it
+     * is not a hexadecimal digit.
+     *
+     * @param c Character.
+     * @return Value of digit or -1.
+     */
+    public static int digit(final int c) {
+        return 0 <= c && c < VALUES.length ? VALUES[c] : -1;
+    }
+
+    /**
+     * Throws an exception for a character that is not a hexadecimal
+     * digit.
+     *
+     * @param c Character.
+     * @param j Index of character.
+     * @throws NICException Always.
+     */
+    private static void notDigit(final int c, final int j)
+        throws NICException {
+        throw new NICException("The character is not a hexadecimal digit! ("
+                               + (char) c + " at " + j + ")");
+    }
+
+    /**
+     * Decodes a block from the given number of digits starting at the
+     * given index of a character sequence.
+     *
+     * @param s Hexadecimal text.
+     * @param j Index of first digit.
+     * @param HEXSIZE Number of digits of a block.
+     * @return Block.
+     * @throws NICException If a character is not a hexadecimal digit.
+     */
+    public static int decodeBlock(final CharSequence s, final int j,
+                                  final int HEXSIZE)
+        throws NICException {
+        int block = 0;
+        for (int l = j; l < j + HEXSIZE; l++) {
+            final char c = s.charAt(l);
+            final int d = c < VALUES.length ? VALUES[c] : -1;
+            if (d < 0) {
+                notDigit(c, l);
+            }
+            block = block << 4 | d;
+        }
+        return block;
+    }
+
+    /**
+     * Decodes a block from the given number of digits starting at the
+     * given index of a line of ASCII bytes. The index is relative to
+     * the start of the line, which is also how a bad digit is
+     * reported.
+     *
+     * @param s Hexadecimal text as ASCII bytes.
+     * @param off Offset of the line.
+     * @param j Index of first digit within the line.
+     * @param HEXSIZE Number of digits of a block.
+     * @return Block.
+     * @throws NICException If a byte is not a hexadecimal digit.
+     */
+    public static int decodeBlock(final byte[] s, final int off,
+                                  final int j, final int HEXSIZE)
+        throws NICException {
+        int block = 0;
+        for (int l = j; l < j + HEXSIZE; l++) {
+            final int c = s[off + l];
+            final int d = c >= 0 ? VALUES[c] : -1;
+            if (d < 0) {
+                notDigit(c & 0xff, l);
+            }
+            block = block << 4 | d;
+        }
+        return block;
+    }
+
+    /**
+     * Encodes a block as the given number of digits into a character
+     * array starting at the given index.
+     *
+     * @param buf Destination of digits.
+     * @param j Index of first digit.
+     * @param block Block.
+     * @param HEXSIZE Number of digits of a block.
+     * @return Index following the last digit.
+     */
+    public static int encodeBlock(final char[] buf, final int j,
+                                  final int block, final int HEXSIZE) {
+        for (int l = HEXSIZE - 1; l >= 0; l--) {
+            buf[j + HEXSIZE - 1 - l] = DIGITS[(block >>> 4 * l) & 0xf];
+        }
+        return j + HEXSIZE;
+    }
+
+    /**
+     * Encodes a block as the given number of digits into an array of
+     * ASCII bytes starting at the given index.
+     *
+     * @param buf Destination of digits as ASCII bytes.
+     * @param j Index of first digit.
+     * @param block Block.
+     * @param HEXSIZE Number of digits of a block.
+     * @return Index following the last digit.
+     */
+    public static int encodeBlock(final byte[] buf, final int j,
+                                  final int block, final int HEXSIZE) {
+        for (int l = HEXSIZE - 1; l >= 0; l--) {
+            buf[j + HEXSIZE - 1 - l] =
+                (byte) DIGITS[(block >>> 4 * l) & 0xf];
+        }
+        return j + HEXSIZE;
+    }
+
+    /**
+     * Appends a block as the given number of digits.
+     *
+     * @param a Destination of digits.
+     * @param block Block.
+     * @param HEXSIZE Number of digits of a block.
+     * @throws IOException If the digits can not be appended.
+     */
+    public static void appendBlock(final Appendable a, final int block,
+                                   final int HEXSIZE)
+        throws IOException {
+        for (int l = HEXSIZE - 1; l >= 0; l--) {
+            a.append(DIGITS[(block >>> 4 * l) & 0xf]);
+        }
+    }
+}
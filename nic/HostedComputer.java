@@ -0,0 +1,117 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Task that runs a computer on a host by driving a {@link
+ * ClockGovernor} for one tick at a time.
+ */
+class HostedComputer implements Runnable {
+
+    /**
+     * Host running this task.
+     */
+    final ComputerHost host;
+
+    /**
+     * Executed computer.
+     */
+    final Computer comp;
+
+    /**
+     * Signals if the computer should run or not.
+     */
+    final Running running;
+
+    /**
+     * Governor of the computer.
+     */
+    final ClockGovernor governor;
+
+    /**
+     * Next scheduled tick.
+     */
+    private ScheduledFuture<?> future;
+
+    /**
+     * Indicates if this task has finished.
+     */
+    private boolean finished;
+
+    /**
+     * Creates a task that runs the given computer on the given host.
+     *
+     * @param host Host running the task.
+     * @param comp Executed computer.
+     * @param running Signals if the computer should run or not.
+     */
+    HostedComputer(final ComputerHost host, final Computer comp,
+                   final Running running) {
+        this.host = host;
+        this.comp = comp;
+        this.running = running;
+        this.governor = new ClockGovernor(comp);
+    }
+
+    /**
+     * Schedules the next tick. This must be called by the thread
+     * holding the monitor of this task or before the task is
+     * published.
+     *
+     * @param wait Nanoseconds to wait.
+     */
+    void schedule(final long wait) {
+        future = host.executor.schedule(this, wait, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Finishes this task. This must be called by the thread holding
+     * the monitor of this task.
+     */
+    private void finish() {
+        if (!finished) {
+            finished = true;
+            governor.stopped();
+            host.active.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            if (running.get() && comp.getStatus() == Processor.SUCCESS) {
+                final long wait = governor.tick();
+                if (comp.getStatus() == Processor.SUCCESS) {
+                    schedule(wait);
+                    return;
+                }
+            }
+            finish();
+        }
+        running.set(false);
+    }
+
+    /**
+     * Cancels this task and waits until a tick in progress has
+     * completed.
+     */
+    void cancel() {
+        synchronized (this) {
+            if (future != null) {
+                future.cancel(false);
+            }
+            finish();
+        }
+    }
+}
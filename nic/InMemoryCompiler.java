@@ -0,0 +1,172 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles a single Java source file in memory using the compiler of
+ * the JDK and returns the resulting class file. This is only
+ * available if NIC is executed by a JDK and not merely a JRE.
+ */
+class InMemoryCompiler {
+
+    /**
+     * Source file held in memory.
+     */
+    static class Source extends SimpleJavaFileObject {
+
+        /**
+         * Contents of the source file.
+         */
+        final String code;
+
+        /**
+         * Creates a source file.
+         *
+         * @param className Fully qualified name of the class.
+         * @param code Contents of the source file.
+         */
+        Source(final String className, final String code) {
+            super(URI.create("string:///" + className.replace('.', '/')
+                             + Kind.SOURCE.extension),
+                  Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(final boolean ignoreErrors) {
+            return code;
+        }
+    }
+
+    /**
+     * Class file held in memory.
+     */
+    static class ClassFile extends SimpleJavaFileObject {
+
+        /**
+         * Contents of the class file.
+         */
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        /**
+         * Creates a class file.
+         *
+         * @param className Fully qualified name of the class.
+         */
+        ClassFile(final String className) {
+            super(URI.create("bytes:///" + className.replace('.', '/')
+                             + Kind.CLASS.extension),
+                  Kind.CLASS);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return bytes;
+        }
+    }
+
+    /**
+     * Returns the class path needed to compile classes that refer to
+     * the classes of NIC.
+     *
+     * @return Class path.
+     */
+    static String classPath() {
+        final String systemClassPath = System.getProperty("java.class.path");
+        try {
+            final CodeSource cs =
+                Processor.class.getProtectionDomain().getCodeSource();
+            if (cs != null && cs.getLocation() != null) {
+                final String own = new File(cs.getLocation().toURI()).getPath();
+                return own + File.pathSeparator + systemClassPath;
+            }
+        } catch (final Exception e) {
+
+            // We fall back on the class path of the JVM below.
+        }
+        return systemClassPath;
+    }
+
+    /**
+     * Compiles the given source and returns the class file of the
+     * given class.
+     *
+     * @param className Fully qualified name of the class.
+     * @param code Source of the class.
+     * @return Contents of the class file.
+     * @throws NICException If no compiler is available or if the
+     * source can not be compiled.
+     */
+    static byte[] compile(final String className, final String code)
+        throws NICException {
+
+        final JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            throw new NICException("No Java compiler is available!");
+        }
+
+        final StandardJavaFileManager standard =
+            javac.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+        final ClassFile classFile = new ClassFile(className);
+
+        final JavaFileManager fileManager =
+            new ForwardingJavaFileManager<JavaFileManager>(standard) {
+                @Override
+                public JavaFileObject
+                    getJavaFileForOutput(final Location location,
+                                         final String name,
+                                         final JavaFileObject.Kind kind,
+                                         final FileObject sibling) {
+                    return classFile;
+                }
+            };
+
+        final List<String> options =
+            Arrays.asList("-classpath", classPath(),
+                          "-proc:none", "-g:none", "-nowarn");
+        final List<Source> units =
+            Arrays.asList(new Source(className, code));
+        final StringWriter diagnostics = new StringWriter();
+
+        try {
+            final boolean success = javac.getTask(diagnostics, fileManager,
+                                                  null, options, null,
+                                                  units).call();
+            if (!success) {
+                throw new NICException("Unable to compile program! ("
+                                       + diagnostics + ")");
+            }
+        } finally {
+            try {
+                fileManager.close();
+            } catch (final IOException ioe) {
+                throw new NICException("Unable to close compiler!", ioe);
+            }
+        }
+        return classFile.bytes.toByteArray();
+    }
+}
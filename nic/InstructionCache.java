@@ -0,0 +1,106 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.util.Arrays;
+
+/**
+ * Cache of decoded instructions indexed by the address of the
+ * instruction in memory. The memory invalidates an entry whenever
+ * any of the blocks of the instruction is written, so self-modifying
+ * programs are executed correctly.
+ */
+class InstructionCache {
+
+    /**
+     * Decoded instructions indexed by address divided by the number
+     * of blocks of an instruction. An entry is null if the
+     * instruction has not been decoded since it was last written.
+     */
+    protected final DecodedInstruction[] slots;
+
+    /**
+     * Number of memory cells of the underlying memory.
+     */
+    protected final int MEMORYCELLS;
+
+    /**
+     * Block-size of a complete instruction.
+     */
+    protected final int INSTRUCTIONBLOCKS;
+
+    /**
+     * Indicates that the last slot wraps around the end of memory,
+     * i.e., that the number of memory cells is not a multiple of the
+     * size of an instruction.
+     */
+    protected final boolean wraps;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param MEMORYCELLS Number of memory cells of the memory.
+     * @param INSTRUCTIONBLOCKS Block-size of a complete instruction.
+     */
+    InstructionCache(final int MEMORYCELLS, final int INSTRUCTIONBLOCKS) {
+        this.MEMORYCELLS = MEMORYCELLS;
+        this.INSTRUCTIONBLOCKS = INSTRUCTIONBLOCKS;
+        final int noSlots =
+            (MEMORYCELLS + INSTRUCTIONBLOCKS - 1) / INSTRUCTIONBLOCKS;
+        this.slots = new DecodedInstruction[noSlots];
+        this.wraps = MEMORYCELLS % INSTRUCTIONBLOCKS != 0;
+    }
+
+    /**
+     * Returns the decoded instruction at the given aligned address,
+     * or null if there is none.
+     *
+     * @param p Aligned address of instruction.
+     * @return Decoded instruction or null.
+     */
+    DecodedInstruction get(final int p) {
+        if (p < MEMORYCELLS) {
+            return slots[p / INSTRUCTIONBLOCKS];
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the decoded instruction at the given aligned address.
+     *
+     * @param p Aligned address of instruction.
+     * @param decoded Decoded instruction.
+     */
+    void put(final int p, final DecodedInstruction decoded) {
+        if (p < MEMORYCELLS) {
+            slots[p / INSTRUCTIONBLOCKS] = decoded;
+        }
+    }
+
+    /**
+     * Invalidates the instruction containing the block at the given
+     * reduced address.
+     *
+     * @param p Address in memory reduced modulo the number of memory
+     * cells.
+     */
+    void invalidate(final int p) {
+        slots[p / INSTRUCTIONBLOCKS] = null;
+        if (wraps && p < INSTRUCTIONBLOCKS) {
+            slots[slots.length - 1] = null;
+        }
+    }
+
+    /**
+     * Invalidates all instructions.
+     */
+    void invalidateAll() {
+        Arrays.fill(slots, null);
+    }
+}
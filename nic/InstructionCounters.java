@@ -0,0 +1,240 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.util.Arrays;
+
+/**
+ * Counters of the instructions fetched and executed by a processor,
+ * with executions counted per operation code and jumps also counted
+ * per condition code. The counters are updated without
+ * synchronization by the thread running the processor, so they
+ * should only be read through a snapshot when the processor is not
+ * running, see {@link Computer#getCounters()}.
+ */
+public final class InstructionCounters {
+
+    /**
+     * Names of the operation codes.
+     */
+    final static String[] OPNAMES = {
+        "halt", "load", "loadc", "loadr", "store", "storer", "move", "add",
+        "addc", "mul", "sub", "shift", "and", "or", "xor", "jump"
+    };
+
+    /**
+     * Names of the condition codes of jumps.
+     */
+    final static String[] JUMPNAMES = {
+        "jumpe", "jumpn", "jumpl", "jumple"
+    };
+
+    /**
+     * Number of executions of each operation code.
+     */
+    final long[] executions = new long[OPNAMES.length];
+
+    /**
+     * Number of executions of jumps with each condition code.
+     */
+    final long[] jumps = new long[JUMPNAMES.length];
+
+    /**
+     * Number of fetches.
+     */
+    long fetches;
+
+    /**
+     * Number of fetches and executes that failed due to bad
+     * alignment.
+     */
+    long badAlignments;
+
+    /**
+     * Number of executes that failed due to a bad instruction.
+     */
+    long badInstructions;
+
+    /**
+     * Records a fetch.
+     *
+     * @param status Status of the processor after the fetch.
+     */
+    void fetched(final int status) {
+        fetches++;
+        if (status == Processor.BAD_ALIGNMENT) {
+            badAlignments++;
+        }
+    }
+
+    /**
+     * Records an execute.
+     *
+     * @param d Executed instruction.
+     * @param status Status of the processor after the execute.
+     */
+    void executed(final DecodedInstruction d, final int status) {
+        if (d.opCode < executions.length) {
+            executions[d.opCode]++;
+        }
+        if (d.opCode == Processor.opJump && d.condition < jumps.length) {
+            jumps[d.condition]++;
+        }
+        if (status == Processor.BAD_ALIGNMENT) {
+            badAlignments++;
+        } else if (status == Processor.BAD_INSTRUCTION) {
+            badInstructions++;
+        }
+    }
+
+    /**
+     * Adds the given counters to these counters.
+     *
+     * @param counters Counters to be added.
+     */
+    void add(final InstructionCounters counters) {
+        for (int i = 0; i < executions.length; i++) {
+            executions[i] += counters.executions[i];
+        }
+        for (int i = 0; i < jumps.length; i++) {
+            jumps[i] += counters.jumps[i];
+        }
+        fetches += counters.fetches;
+        badAlignments += counters.badAlignments;
+        badInstructions += counters.badInstructions;
+    }
+
+    /**
+     * Sets all counters to zero.
+     */
+    void clear() {
+        Arrays.fill(executions, 0);
+        Arrays.fill(jumps, 0);
+        fetches = 0;
+        badAlignments = 0;
+        badInstructions = 0;
+    }
+
+    /**
+     * Returns a copy of these counters.
+     *
+     * @return Snapshot of these counters.
+     */
+    InstructionCounters snapshot() {
+        final InstructionCounters counters = new InstructionCounters();
+        counters.add(this);
+        return counters;
+    }
+
+    /**
+     * Returns the number of executions of the given operation code.
+     *
+     * @param opCode Operation code.
+     * @return Number of executions.
+     */
+    public long getExecutions(final int opCode) {
+        return executions[opCode];
+    }
+
+    /**
+     * Returns the number of executions of jumps with the given
+     * condition code, i.e., 0 for jumpe (which includes unconditional
+     * jumps), 1 for jumpn, 2 for jumpl, and 3 for jumple.
+     *
+     * @param condition Condition code.
+     * @return Number of executions.
+     */
+    public long getJumps(final int condition) {
+        return jumps[condition];
+    }
+
+    /**
+     * Returns the total number of executions of all operation codes.
+     *
+     * @return Number of executions.
+     */
+    public long getExecutions() {
+        long total = 0;
+        for (final long n : executions) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of fetches.
+     *
+     * @return Number of fetches.
+     */
+    public long getFetches() {
+        return fetches;
+    }
+
+    /**
+     * Returns the number of fetches and executes that failed due to
+     * bad alignment.
+     *
+     * @return Number of alignment faults.
+     */
+    public long getBadAlignments() {
+        return badAlignments;
+    }
+
+    /**
+     * Returns the number of executes that failed due to a bad
+     * instruction.
+     *
+     * @return Number of bad instructions.
+     */
+    public long getBadInstructions() {
+        return badInstructions;
+    }
+
+    /**
+     * Appends a line of the histogram.
+     *
+     * @param sb Destination of line.
+     * @param name Name of counter.
+     * @param n Value of counter.
+     * @param total Value corresponding to the full width.
+     */
+    private static void line(final StringBuilder sb, final String name,
+                             final long n, final long total) {
+        final double fraction = total == 0 ? 0.0 : (double) n / total;
+        final StringBuilder bar = new StringBuilder();
+        for (int i = 0; i < Math.round(40 * fraction); i++) {
+            bar.append('#');
+        }
+        sb.append(String.format("%-8s %12d %6.2f%% %s%n",
+                                name, n, 100 * fraction, bar));
+    }
+
+    /**
+     * Returns the instruction mix as a histogram with one line per
+     * operation code and per condition code of jumps, followed by the
+     * number of fetches and faults.
+     *
+     * @return Histogram of executions.
+     */
+    @Override
+    public String toString() {
+        final long total = getExecutions();
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < OPNAMES.length; i++) {
+            line(sb, OPNAMES[i], executions[i], total);
+        }
+        for (int i = 0; i < JUMPNAMES.length; i++) {
+            line(sb, " " + JUMPNAMES[i], jumps[i], total);
+        }
+        sb.append(String.format("%-8s %12d%n", "total", total));
+        sb.append(String.format("%-8s %12d%n", "fetches", fetches));
+        sb.append(String.format("%-8s %12d%n", "badalign", badAlignments));
+        sb.append(String.format("%-8s %12d%n", "badinstr", badInstructions));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,47 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Engine that simply lets the processor interpret one instruction at
+ * a time. This requires no preparation of programs.
+ */
+class InterpretingEngine implements Engine {
+
+    /**
+     * Executed processor.
+     */
+    protected final Processor processor;
+
+    /**
+     * Creates an engine for the given processor.
+     *
+     * @param processor Executed processor.
+     */
+    InterpretingEngine(final Processor processor) {
+        this.processor = processor;
+    }
+
+    @Override
+    public void setProgram(final ProgramImage image) {
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public long run(final long maxInstructions) {
+        return processor.run(maxInstructions);
+    }
+
+    @Override
+    public Engine duplicate(final Processor processor) {
+        return new InterpretingEngine(processor);
+    }
+}
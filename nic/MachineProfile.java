@@ -0,0 +1,298 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Validated parameters of a machine, i.e., the size of blocks and
+ * words, the number of memory cells, and the number of registers. A
+ * profile is used to create computers, see {@link
+ * Computer#Computer(MachineProfile, boolean)}, and as the target of
+ * the assembler.
+ *
+ * <p>
+ *
+ * Words are kept in integers and instructions in longs, so a word
+ * has at most {@link #MAXWORDSIZE} bits and an instruction, i.e., an
+ * operation code, a register, and a word, has at most {@link
+ * #MAXINSTRUCTIONSIZE} bits. A word has at least two blocks, since
+ * instructions with three registers keep the last two in the word.
+ */
+public final class MachineProfile {
+
+    /**
+     * Maximal bit-size of a word.
+     */
+    public final static int MAXWORDSIZE = 31;
+
+    /**
+     * Maximal bit-size of an instruction.
+     */
+    public final static int MAXINSTRUCTIONSIZE = 63;
+
+    /**
+     * Maximal number of memory cells.
+     */
+    public final static int MAXMEMORYCELLS = 1 << 24;
+
+    /**
+     * Original machine with 4-bit blocks, 2-block words, 256 memory
+     * cells, and 16 registers.
+     */
+    public final static MachineProfile NIC8 = create("nic8", 4, 2, 256, 16);
+
+    /**
+     * Machine with 8-bit blocks, 2-block words, 64K memory cells, and
+     * 16 registers.
+     */
+    public final static MachineProfile NIC16 =
+        create("nic16", 8, 2, 1 << 16, 16);
+
+    /**
+     * Machine with 8-bit blocks, 3-block words, 960K memory cells, and
+     * 16 registers. The number of memory cells is a multiple of both
+     * the word size and the instruction size.
+     */
+    public final static MachineProfile NIC24 =
+        create("nic24", 8, 3, 15 << 16, 16);
+
+    /**
+     * Predefined profiles.
+     */
+    final static MachineProfile[] PROFILES = { NIC8, NIC16, NIC24 };
+
+    /**
+     * Name of this profile.
+     */
+    private final String name;
+
+    /**
+     * Bit-size of a block.
+     */
+    private final int BLOCKSIZE;
+
+    /**
+     * Number of blocks in a word.
+     */
+    private final int WORDBLOCKS;
+
+    /**
+     * Number of memory cells.
+     */
+    private final int MEMORYCELLS;
+
+    /**
+     * Number of general purpose registers.
+     */
+    private final int NOREGISTERS;
+
+    /**
+     * Creates a profile without validating it.
+     *
+     * @param name Name of profile.
+     * @param BLOCKSIZE Bit-size of a block.
+     * @param WORDBLOCKS Number of blocks in a word.
+     * @param MEMORYCELLS Number of memory cells.
+     * @param NOREGISTERS Number of general purpose registers.
+     */
+    private MachineProfile(final String name, final int BLOCKSIZE,
+                           final int WORDBLOCKS, final int MEMORYCELLS,
+                           final int NOREGISTERS) {
+        this.name = name;
+        this.BLOCKSIZE = BLOCKSIZE;
+        this.WORDBLOCKS = WORDBLOCKS;
+        this.MEMORYCELLS = MEMORYCELLS;
+        this.NOREGISTERS = NOREGISTERS;
+    }
+
+    /**
+     * Creates a predefined profile, which is assumed to be valid.
+     *
+     * @param name Name of profile.
+     * @param BLOCKSIZE Bit-size of a block.
+     * @param WORDBLOCKS Number of blocks in a word.
+     * @param MEMORYCELLS Number of memory cells.
+     * @param NOREGISTERS Number of general purpose registers.
+     * @return Profile.
+     */
+    private static MachineProfile create(final String name,
+                                         final int BLOCKSIZE,
+                                         final int WORDBLOCKS,
+                                         final int MEMORYCELLS,
+                                         final int NOREGISTERS) {
+        try {
+            return valueOf(name, BLOCKSIZE, WORDBLOCKS, MEMORYCELLS,
+                           NOREGISTERS);
+        } catch (final NICException nice) {
+            throw new Error("Invalid predefined profile!", nice);
+        }
+    }
+
+    /**
+     * Returns a validated profile with the given parameters.
+     *
+     * @param name Name of profile.
+     * @param BLOCKSIZE Bit-size of a block.
+     * @param WORDBLOCKS Number of blocks in a word.
+     * @param MEMORYCELLS Number of memory cells.
+     * @param NOREGISTERS Number of general purpose registers.
+     * @return Profile.
+     * @throws NICException If the parameters do not describe a
+     * machine that can be emulated.
+     */
+    public static MachineProfile valueOf(final String name,
+                                         final int BLOCKSIZE,
+                                         final int WORDBLOCKS,
+                                         final int MEMORYCELLS,
+                                         final int NOREGISTERS)
+        throws NICException {
+        if (BLOCKSIZE <= 0 || BLOCKSIZE % 4 != 0) {
+            throw new NICException("Block size is not a positive multiple "
+                                   + "of four! (" + BLOCKSIZE + ")");
+        }
+        if (WORDBLOCKS < 2) {
+            throw new NICException("A word has less than two blocks! ("
+                                   + WORDBLOCKS + ")");
+        }
+        final long WORDSIZE = (long) BLOCKSIZE * WORDBLOCKS;
+        if (WORDSIZE > MAXWORDSIZE) {
+            throw new NICException("Word size is too large! (" + WORDSIZE
+                                   + " > " + MAXWORDSIZE + ")");
+        }
+        final long INSTRUCTIONSIZE = (long) BLOCKSIZE * (WORDBLOCKS + 2);
+        if (INSTRUCTIONSIZE > MAXINSTRUCTIONSIZE) {
+            throw new NICException("Instruction size is too large! ("
+                                   + INSTRUCTIONSIZE + " > "
+                                   + MAXINSTRUCTIONSIZE + ")");
+        }
+        if (MEMORYCELLS <= 0 || MEMORYCELLS > MAXMEMORYCELLS
+            || MEMORYCELLS > 1L << WORDSIZE) {
+            throw new NICException("Invalid number of memory cells! ("
+                                   + MEMORYCELLS + ")");
+        }
+        if (MEMORYCELLS % WORDBLOCKS != 0
+            || MEMORYCELLS % (WORDBLOCKS + 2) != 0) {
+            throw new NICException("Memory does not consist of whole words "
+                                   + "and instructions! (" + MEMORYCELLS
+                                   + ")");
+        }
+        if (MEMORYCELLS < 2 * (WORDBLOCKS + 2)) {
+            throw new NICException("Memory can not hold a program! ("
+                                   + MEMORYCELLS + ")");
+        }
+        if (NOREGISTERS <= 0 || NOREGISTERS > 1L << BLOCKSIZE) {
+            throw new NICException("Invalid number of registers! ("
+                                   + NOREGISTERS + ")");
+        }
+        return new MachineProfile(name, BLOCKSIZE, WORDBLOCKS, MEMORYCELLS,
+                                  NOREGISTERS);
+    }
+
+    /**
+     * Returns the predefined profile with the given name.
+     *
+     * @param name Name of profile.
+     * @return Profile.
+     * @throws NICException If there is no profile with the given name.
+     */
+    public static MachineProfile forName(final String name)
+        throws NICException {
+        for (final MachineProfile profile : PROFILES) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        throw new NICException("Unknown machine profile! (" + name + ")");
+    }
+
+    /**
+     * Returns the names of the predefined profiles.
+     *
+     * @return Names of profiles separated by commas.
+     */
+    public static String names() {
+        final StringBuilder sb = new StringBuilder();
+        for (final MachineProfile profile : PROFILES) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(profile.name);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the name of this profile.
+     *
+     * @return Name of this profile.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the bit-size of a block.
+     *
+     * @return Bit-size of a block.
+     */
+    public int getBLOCKSIZE() {
+        return BLOCKSIZE;
+    }
+
+    /**
+     * Returns the number of blocks in a word.
+     *
+     * @return Number of blocks in a word.
+     */
+    public int getWORDBLOCKS() {
+        return WORDBLOCKS;
+    }
+
+    /**
+     * Returns the number of memory cells.
+     *
+     * @return Number of memory cells.
+     */
+    public int getMEMORYCELLS() {
+        return MEMORYCELLS;
+    }
+
+    /**
+     * Returns the number of general purpose registers.
+     *
+     * @return Number of registers.
+     */
+    public int getNOREGISTERS() {
+        return NOREGISTERS;
+    }
+
+    /**
+     * Returns the number of blocks in an instruction, i.e., an
+     * operation code, a register, and a word.
+     *
+     * @return Number of blocks in an instruction.
+     */
+    public int getINSTRUCTIONBLOCKS() {
+        return WORDBLOCKS + 2;
+    }
+
+    /**
+     * Returns the number of hexadecimal digits of a block.
+     *
+     * @return Number of hexadecimal digits.
+     */
+    public int getHEXSIZE() {
+        return BLOCKSIZE / 4;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d-bit blocks, %d-block words, "
+                             + "%d cells, %d registers)", name, BLOCKSIZE,
+                             WORDBLOCKS, MEMORYCELLS, NOREGISTERS);
+    }
+}
@@ -0,0 +1,231 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access memory backed by a file that is mapped into the
+ * address space of the emulator. The blocks are packed as nibbles in
+ * the same way as the program of a {@link BinaryExecutable}, i.e.,
+ * two hexadecimal digits per byte with the most significant digit
+ * first, so the file is the memory in hexadecimal form written in
+ * binary.
+ *
+ * <p>
+ *
+ * Reads and writes go straight to the mapped file, so a dataset that
+ * is already in the file is seen by the program without being loaded,
+ * see {@link Computer#executeInPlace()}, and the final state of
+ * memory remains in the file for inspection. Like {@link
+ * PackedMemory}, this is meant for non-interactive execution and no
+ * locking is done on individual accesses.
+ */
+public class MappedMemory extends Memory {
+
+    /**
+     * Number of memory cells.
+     */
+    protected final int MEMORYCELLS;
+
+    /**
+     * Mapped contents of the file.
+     */
+    protected final MappedByteBuffer buffer;
+
+    /**
+     * Bitmask used to reduce addresses if the number of memory cells
+     * is a power of two, and -1 otherwise.
+     */
+    protected final int ADDRESSMASK;
+
+    /**
+     * Block where all bits equal one.
+     */
+    protected final int BLOCKMASK;
+
+    /**
+     * Creates a memory with the given number of memory cells backed
+     * by the given file. The file is created if it does not exist and
+     * is extended with zeros if it is too short, but its contents are
+     * otherwise kept.
+     *
+     * @param file Backing file.
+     * @param MEMORYCELLS Number of memory cells.
+     * @param BLOCKSIZE Bit-size of a block.
+     * @throws IOException If the file can not be mapped.
+     */
+    public MappedMemory(final File file, final int MEMORYCELLS,
+                        final int BLOCKSIZE) throws IOException {
+        super(BLOCKSIZE);
+        if (MEMORYCELLS <= 0 || MEMORYCELLS > MachineProfile.MAXMEMORYCELLS) {
+            throw new Error("Invalid number of memory cells! ("
+                            + MEMORYCELLS + ")");
+        }
+        this.MEMORYCELLS = MEMORYCELLS;
+        this.BLOCKMASK = (int) ((1L << BLOCKSIZE) - 1);
+        if ((MEMORYCELLS & (MEMORYCELLS - 1)) == 0) {
+            this.ADDRESSMASK = MEMORYCELLS - 1;
+        } else {
+            this.ADDRESSMASK = -1;
+        }
+
+        // The mapping stays valid after the channel is closed.
+        try (FileChannel channel =
+             FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                              StandardOpenOption.READ,
+                              StandardOpenOption.WRITE)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                                      fileSize(MEMORYCELLS, BLOCKSIZE));
+        }
+    }
+
+    /**
+     * Returns the number of bytes of a file backing a memory with the
+     * given parameters.
+     *
+     * @param MEMORYCELLS Number of memory cells.
+     * @param BLOCKSIZE Bit-size of a block.
+     * @return Number of bytes.
+     */
+    public static int fileSize(final int MEMORYCELLS, final int BLOCKSIZE) {
+        return BinaryExecutable.packedSize(BLOCKSIZE, MEMORYCELLS);
+    }
+
+    /**
+     * Reduces an address modulo the number of memory cells.
+     *
+     * @param p Address in memory.
+     * @return Index of the memory cell.
+     */
+    protected int index(final int p) {
+        if (ADDRESSMASK >= 0) {
+            return p & ADDRESSMASK;
+        } else {
+            return p % MEMORYCELLS;
+        }
+    }
+
+    /**
+     * Reads the block of the memory cell with the given index.
+     *
+     * @param i Index of memory cell.
+     * @return Block.
+     */
+    protected int read(final int i) {
+        if (HEXSIZE == 1) {
+            final int b = buffer.get(i >>> 1);
+            return (i & 1) == 0 ? (b >>> 4) & 0xf : b & 0xf;
+        } else if (HEXSIZE % 2 == 0) {
+
+            // Blocks are aligned with bytes.
+            final int bytes = HEXSIZE / 2;
+            final int j = i * bytes;
+            int block = 0;
+            for (int l = 0; l < bytes; l++) {
+                block = block << 8 | buffer.get(j + l) & 0xff;
+            }
+            return block;
+        } else {
+            final int j = i * HEXSIZE;
+            int block = 0;
+            for (int l = 0; l < HEXSIZE; l++) {
+                final int b = buffer.get((j + l) >>> 1);
+                block <<= 4;
+                block |= ((j + l) & 1) == 0 ? (b >>> 4) & 0xf : b & 0xf;
+            }
+            return block;
+        }
+    }
+
+    /**
+     * Writes a nibble, i.e., a hexadecimal digit, at the given index
+     * counted in nibbles.
+     *
+     * @param j Index of nibble.
+     * @param nibble Nibble to write.
+     */
+    private void writeNibble(final int j, final int nibble) {
+        final int b = buffer.get(j >>> 1);
+        if ((j & 1) == 0) {
+            buffer.put(j >>> 1, (byte) ((b & 0x0f) | nibble << 4));
+        } else {
+            buffer.put(j >>> 1, (byte) ((b & 0xf0) | nibble));
+        }
+    }
+
+    /**
+     * Writes the block of the memory cell with the given index
+     * without invalidating anything.
+     *
+     * @param i Index of memory cell.
+     * @param block Block to write.
+     */
+    protected void write(final int i, final int block) {
+        if (HEXSIZE == 1) {
+            writeNibble(i, block);
+        } else if (HEXSIZE % 2 == 0) {
+            final int bytes = HEXSIZE / 2;
+            final int j = i * bytes;
+            for (int l = 0; l < bytes; l++) {
+                buffer.put(j + l, (byte) (block >>> 8 * (bytes - 1 - l)));
+            }
+        } else {
+            final int j = i * HEXSIZE;
+            for (int l = 0; l < HEXSIZE; l++) {
+                writeNibble(j + l, (block >>> 4 * (HEXSIZE - 1 - l)) & 0xf);
+            }
+        }
+    }
+
+    @Override
+    public void set(final int p, final int block) {
+        final int i = index(p);
+        write(i, block & BLOCKMASK);
+        invalidate(i);
+    }
+
+    @Override
+    public int get(final int p) {
+        return read(index(p));
+    }
+
+    @Override
+    public int getMEMORYCELLS() {
+        return MEMORYCELLS;
+    }
+
+    @Override
+    public void clear() {
+        final int size = fileSize(MEMORYCELLS, BLOCKSIZE);
+        for (int j = 0; j < size; j++) {
+            buffer.put(j, (byte) 0);
+        }
+        invalidateAll();
+    }
+
+    @Override
+    protected void restoreAll(final ProgramImage image) {
+        for (int i = 0; i < MEMORYCELLS; i++) {
+            write(i, image.blocks[i]);
+        }
+        invalidateAll();
+    }
+
+    /**
+     * Writes any changes of the memory to the backing file, e.g., to
+     * make the final state of memory durable.
+     */
+    public void force() {
+        buffer.force();
+    }
+}
@@ -7,6 +7,9 @@
 
 package se.kth.csc.nic;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
 /**
  * A random access memory, consisting of individual memory cells. This
  * simulates the internal memory of a physical computer formed as a
@@ -33,6 +36,54 @@ public class Memory {
      */
     protected int HEXSIZE;
 
+    /**
+     * Cache of decoded instructions that is invalidated when the
+     * memory is written, or null if there is no such cache.
+     */
+    protected InstructionCache instructionCache;
+
+    /**
+     * Number of writes to this memory. This is used to tell if
+     * memory has changed between two snapshots of a computer.
+     */
+    protected long version;
+
+    /**
+     * Divisor of the number of memory cells that gives the maximal
+     * number of dirty memory cells that are tracked. If more cells
+     * are written, then copying the whole image is cheaper anyway.
+     */
+    final static int DIRTYFRACTION = 4;
+
+    /**
+     * Indicates if writes are tracked, so that memory can be restored
+     * incrementally. A subclass that lets its memory cells be written
+     * without invalidating them must turn this off.
+     */
+    protected boolean tracking = true;
+
+    /**
+     * Image that this memory equals except at the dirty memory cells,
+     * or null if no such image is known.
+     */
+    protected ProgramImage restored;
+
+    /**
+     * Indices of the memory cells written since the image was
+     * restored, each listed once.
+     */
+    private int[] dirty;
+
+    /**
+     * Number of indices of dirty memory cells.
+     */
+    private int noDirty;
+
+    /**
+     * Bitmap of the dirty memory cells.
+     */
+    private long[] marks;
+
     /**
      * Creates a partially uninitialized instance. This may be used in
      * subclasses.
@@ -76,10 +127,105 @@ public class Memory {
      */
     public void set(final int p, final int block) {
         synchronized (this) {
-            cells[p % this.cells.length].set(block);
+            final int i = p % this.cells.length;
+            cells[i].set(block);
+            invalidate(i);
         }
     }
 
+    /**
+     * Sets the cache of decoded instructions that must be
+     * invalidated when this memory is written.
+     *
+     * @param instructionCache Cache of decoded instructions.
+     */
+    void setInstructionCache(final InstructionCache instructionCache) {
+        this.instructionCache = instructionCache;
+    }
+
+    /**
+     * Invalidates any decoded instruction containing the block at the
+     * given address.
+     *
+     * @param i Address in memory reduced modulo the number of memory
+     * cells.
+     */
+    protected void invalidate(final int i) {
+        version++;
+        if (restored != null) {
+            markDirty(i);
+        }
+        if (instructionCache != null) {
+            instructionCache.invalidate(i);
+        }
+    }
+
+    /**
+     * Invalidates all decoded instructions.
+     */
+    protected void invalidateAll() {
+        version++;
+        restored = null;
+        if (instructionCache != null) {
+            instructionCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Marks the memory cell with the given index as dirty. If there
+     * are too many dirty memory cells, then the image is forgotten
+     * and the next restore copies the whole image.
+     *
+     * @param i Index of memory cell.
+     */
+    private void markDirty(final int i) {
+        final long bit = 1L << (i & 0x3f);
+        if ((marks[i >>> 6] & bit) == 0) {
+            if (noDirty == dirty.length) {
+                restored = null;
+            } else {
+                marks[i >>> 6] |= bit;
+                dirty[noDirty++] = i;
+            }
+        }
+    }
+
+    /**
+     * Starts to track the memory cells written after the given image
+     * has been restored.
+     *
+     * @param image Restored image.
+     */
+    private void track(final ProgramImage image) {
+        if (!tracking) {
+            return;
+        }
+        if (marks == null) {
+            final int MEMORYCELLS = getMEMORYCELLS();
+            dirty = new int[Math.max(1, MEMORYCELLS / DIRTYFRACTION)];
+            marks = new long[(MEMORYCELLS + 63) >>> 6];
+        }
+
+        // Every marked memory cell is listed.
+        for (int k = 0; k < noDirty; k++) {
+            marks[dirty[k] >>> 6] = 0;
+        }
+        noDirty = 0;
+        restored = image;
+    }
+
+    /**
+     * Returns the version of this memory, i.e., a counter that is
+     * incremented whenever the memory is written. This is not
+     * synchronized and should only be read by the thread executing
+     * the computer.
+     *
+     * @return Version of this memory.
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * Returns the block stored at the given address in the
      * memory. Addresses are reduced modulo the number of memory
@@ -122,86 +268,262 @@ public class Memory {
     }
 
     /**
-     * Converts a hexadecimal character to an integer.
+     * Sets the contents of this memory to the given image. If the
+     * image was the most recently restored image, then only the
+     * memory cells written since then are restored, so the cost is
+     * proportional to the number of writes and not to the size of
+     * memory.
      *
-     * @param h Hexadecimal character.
-     * @return Integer value.
+     * @param image Image of memory with the same number of memory
+     * cells as this memory.
+     */
+    public void restore(final ProgramImage image) {
+        if (image.blocks.length != getMEMORYCELLS()) {
+            throw new Error("Image does not match memory! ("
+                            + image.blocks.length + " != "
+                            + getMEMORYCELLS() + ")");
+        }
+        synchronized (this) {
+            if (image == restored) {
+                for (int k = 0; k < noDirty; k++) {
+                    final int i = dirty[k];
+                    set(i, image.blocks[i]);
+                }
+            } else {
+                restoreAll(image);
+            }
+            track(image);
+        }
+    }
+
+    /**
+     * Sets every memory cell of this memory to the block of the
+     * given image.
+     *
+     * @param image Image of memory with the same number of memory
+     * cells as this memory.
+     */
+    protected void restoreAll(final ProgramImage image) {
+        for (int i = 0; i < image.blocks.length; i++) {
+            set(i, image.blocks[i]);
+        }
+    }
+
+    /**
+     * Loads the input represented in hexadecimal form into memory
+     * starting at the given destination address. The input is decoded
+     * by {@link HexCodec} and validated in the same pass, so if a
+     * character is not a hexadecimal digit, then the preceding blocks
+     * have already been written.
+     *
+     * @param p Destination address.
+     * @param hexString Hexadecimal string.
      * @throws NICException If the input is not a hexadecimal string.
      */
-    private int hexToInt(final char h) throws NICException {
+    public void load(final int p, final CharSequence hexString)
+        throws NICException {
 
-        // Here we exploit that in Java a character can be viewed as
-        // an integer, so what we get from '0' is the ASCII code as an
-        // integer and ASCII encodes digits and letters in sequence.
-        if ('0' <= h && h <= '9') {
-            return h - '0';
-        } else if ('a' <= h && h <= 'f') {
-            return 10 + h - 'a';
-        } else if ('A' <= h && h <= 'F') {
-            return 10 + h - 'A';
-        } else {
+        // Verify that we can get complete blocks.
+        if (hexString.length() % HEXSIZE != 0) {
 
             // This will never happen if this function is used
             // properly.
-            throw new NICException("The character is not a hexadecimal digit!");
+            throw new Error("Hex string is not an even multiple of blocks!");
+        }
+        final int noBlocks = hexString.length() / HEXSIZE;
+        synchronized (this) {
+            for (int i = 0; i < noBlocks; i++) {
+                set(p + i, HexCodec.decodeBlock(hexString, i * HEXSIZE,
+                                                HEXSIZE));
+            }
         }
     }
 
     /**
-     * Converts a hexadecimal string to an array of corresponding
-     * integers.
+     * Loads the input represented in hexadecimal form as ASCII bytes
+     * into memory starting at the given destination address, see
+     * {@link #load(int, CharSequence)}.
      *
-     * @param hexString Hexadecimal string.
-     * @return Array of integer values.
+     * @param p Destination address.
+     * @param hex Source of hexadecimal digits as ASCII bytes.
+     * @param off Offset of first digit.
+     * @param len Number of digits.
      * @throws NICException If the input is not a hexadecimal string.
      */
-    private int[] hexToIntArray(final String hexString) throws NICException {
-        int[] res = new int[hexString.length()];
-        for (int i = 0; i < hexString.length(); i++) {
-            res[i] = hexToInt(hexString.charAt(i));
+    public void loadHex(final int p, final byte[] hex, final int off,
+                        final int len) throws NICException {
+        if (len % HEXSIZE != 0) {
+
+            // This will never happen if this function is used
+            // properly.
+            throw new Error("Hex string is not an even multiple of blocks!");
+        }
+        final int noBlocks = len / HEXSIZE;
+        synchronized (this) {
+            for (int i = 0; i < noBlocks; i++) {
+                set(p + i, HexCodec.decodeBlock(hex, off, i * HEXSIZE,
+                                                HEXSIZE));
+            }
         }
-        return res;
     }
 
     /**
-     * Loads the input represented in hexadecimal form into memory
-     * starting at the given destination address.
+     * Loads the input given as packed nibbles into memory starting at
+     * the given destination address. The input is the hexadecimal
+     * form of the blocks with two digits per byte and the most
+     * significant digit first, i.e., the format of the program of a
+     * {@link BinaryExecutable}. Nothing is allocated.
      *
      * @param p Destination address.
-     * @param hexString Hexadecimal string.
-     * @throws NICException If the input is not a hexadecimal string
-     * or if it is too long.
+     * @param in Source of packed nibbles.
+     * @param off Offset of first byte.
+     * @param len Number of bytes, which must correspond to a whole
+     * number of blocks.
      */
-    public void load(int p, String hexString) throws NICException {
-        final int[] values = hexToIntArray(hexString);
+    public void load(final int p, final byte[] in, final int off,
+                     final int len) {
+        if (2 * len % HEXSIZE != 0) {
 
-        // Verify that we can get complete blocks.
-        if (values.length % HEXSIZE == 0) {
+            // This will never happen if this function is used
+            // properly.
+            throw new Error("Input is not an even multiple of blocks!");
+        }
+        final int noBlocks = 2 * len / HEXSIZE;
+        int j = 2 * off;
+        for (int b = 0; b < noBlocks; b++) {
+            int block = 0;
+            for (int l = 0; l < HEXSIZE; l++) {
+                final int x = in[j >>> 1];
+                block <<= 4;
+                block |= (j & 1) == 0 ? (x >>> 4) & 0xf : x & 0xf;
+                j++;
+            }
+            set(p + b, block);
+        }
+    }
 
-            // Number of blocks to compile.
-            final int blocks = values.length / HEXSIZE;
+    /**
+     * Returns the number of bytes needed to hold the given number of
+     * blocks as packed nibbles, see {@link #load(int, byte[], int,
+     * int)}.
+     *
+     * @param noBlocks Number of blocks.
+     * @return Number of bytes.
+     */
+    public int packedSize(final int noBlocks) {
+        return BinaryExecutable.packedSize(BLOCKSIZE, noBlocks);
+    }
 
-            int j = 0;
-            for (int i = 0; i < blocks; i++) {
+    /**
+     * Writes the blocks between the start and end addresses as packed
+     * nibbles to the given buffer, see {@link #load(int, byte[], int,
+     * int)}. If the number of nibbles is odd, then the last byte is
+     * padded with a zero nibble. Addresses are reduced modulo the
+     * number of memory cells and memory is interpreted as a circular
+     * buffer. Nothing is allocated.
+     *
+     * @param p Inclusive start address.
+     * @param q Exclusive end address.
+     * @param out Destination of packed nibbles with room for all the
+     * blocks.
+     * @return Number of bytes written.
+     */
+    public int read(final int p, final int q, final ByteBuffer out) {
+        final int n = distance(p, q);
+        final int start = out.position();
+        int x = 0;
+        boolean high = true;
+        for (int i = 0; i < n; i++) {
+            final int block = get(p + i);
+            for (int l = HEXSIZE - 1; l >= 0; l--) {
+                final int nibble = (block >>> (4 * l)) & 0xf;
+                if (high) {
+                    x = nibble << 4;
+                } else {
+                    out.put((byte) (x | nibble));
+                }
+                high = !high;
+            }
+        }
+        if (!high) {
+            out.put((byte) x);
+        }
+        return out.position() - start;
+    }
 
-                // Compile and set a block.
-                int block = 0;
-                for (int l = 0; l < HEXSIZE; l++) {
+    /**
+     * Returns the number of blocks between the start and end
+     * addresses when memory is interpreted as a circular buffer.
+     *
+     * @param p Inclusive start address.
+     * @param q Exclusive end address.
+     * @return Number of blocks.
+     */
+    protected int distance(final int p, final int q) {
+        final int MEMORYCELLS = getMEMORYCELLS();
+        return ((q % MEMORYCELLS) - (p % MEMORYCELLS) + MEMORYCELLS)
+            % MEMORYCELLS;
+    }
 
-                    // Shift what we have so far to make room.
-                    block <<= 4;
+    /**
+     * Encodes the blocks between the start and end addresses in
+     * hexadecimal into the given array starting at the given
+     * offset. Addresses are reduced modulo the number of memory cells
+     * and memory is interpreted as a circular buffer. Nothing is
+     * allocated.
+     *
+     * @param p Inclusive start address.
+     * @param q Exclusive end address.
+     * @param buf Destination of digits with room for all the blocks.
+     * @param off Offset of first digit.
+     * @return Number of digits written.
+     */
+    public int read(final int p, final int q, final char[] buf,
+                    final int off) {
+        final int n = distance(p, q);
+        int j = off;
+        for (int i = 0; i < n; i++) {
+            j = HexCodec.encodeBlock(buf, j, get(p + i), HEXSIZE);
+        }
+        return j - off;
+    }
 
-                    // Insert next 4 bits.
-                    block |= values[j];
-                    j++;
-                }
-                set(p + i, block);
-            }
-        } else {
+    /**
+     * Encodes the blocks between the start and end addresses in
+     * hexadecimal as ASCII bytes into the given array, see {@link
+     * #read(int, int, char[], int)}.
+     *
+     * @param p Inclusive start address.
+     * @param q Exclusive end address.
+     * @param buf Destination of digits with room for all the blocks.
+     * @param off Offset of first digit.
+     * @return Number of digits written.
+     */
+    public int readHex(final int p, final int q, final byte[] buf,
+                       final int off) {
+        final int n = distance(p, q);
+        int j = off;
+        for (int i = 0; i < n; i++) {
+            j = HexCodec.encodeBlock(buf, j, get(p + i), HEXSIZE);
+        }
+        return j - off;
+    }
 
-            // This will never happen if this function is used
-            // properly.
-            throw new Error("Hex string is not an even multiple of blocks!");
+    /**
+     * Appends the blocks between the start and end addresses encoded
+     * in hexadecimal to the given destination, see {@link #read(int,
+     * int, char[], int)}.
+     *
+     * @param p Inclusive start address.
+     * @param q Exclusive end address.
+     * @param a Destination of digits.
+     * @throws IOException If the digits can not be appended.
+     */
+    public void read(final int p, final int q, final Appendable a)
+        throws IOException {
+        final int n = distance(p, q);
+        for (int i = 0; i < n; i++) {
+            HexCodec.appendBlock(a, get(p + i), HEXSIZE);
         }
     }
 
@@ -216,14 +538,8 @@ public class Memory {
      * @return Hexadecimal representation of the array.
      */
     public String read(final int p, final int q) {
-        final StringBuilder sb = new StringBuilder();
-
-        final int s = p % this.cells.length;
-        final int e = q % this.cells.length;
-
-        for (int i = s; i != e; i++) {
-            sb.append(String.format("%x", get(i)));
-        }
-        return sb.toString();
+        final char[] buf = new char[distance(p, q) * HEXSIZE];
+        read(p, q, buf, 0);
+        return new String(buf);
     }
 }
@@ -9,6 +9,10 @@ package se.kth.csc.nic;
 
 import java.awt.Dimension;
 import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import se.kth.csc.nic.gui.ComputerFrame;
 import se.kth.csc.nic.observable.ObservableComputer;
@@ -43,6 +47,16 @@ public class NIC {
         + "\n1997-2015 Stefan Nilsson <snilsson@nada.kth.se>"
         + "\n2015-2017 Douglas Wikstrom <dog@kth.se>";
 
+    /**
+     * Maximal number of source lines in a report of hot spots.
+     */
+    public final static int HOTSPOTS = 20;
+
+    /**
+     * Postfix of files containing collapsed stacks.
+     */
+    public final static String FOLDEDPOSTFIX = ".folded";
+
     /**
      * Print the message and exit with the exit code.
      *
@@ -58,7 +72,15 @@ public class NIC {
      * Prints usage information for the command and exits.
      */
     protected static void usage(final String commandName) {
-        printExit("Usage: " + commandName + "[-v|-h]", 0);
+        printExit("Usage: " + commandName + " [-v|-h|-profile "
+                  + "[-target <name>] <executable>]\n"
+                  + "-v       Print version.\n"
+                  + "-h       Print usage information.\n"
+                  + "-profile Execute the program on each line of standard\n"
+                  + "         input, print a report of hot spots, and\n"
+                  + "         write collapsed stacks for flame graphs.\n"
+                  + "-target  Machine of a hexadecimal executable, i.e.,\n"
+                  + "         one of " + MachineProfile.names() + ".", 0);
     }
 
     /**
@@ -77,6 +99,71 @@ public class NIC {
         printExit("ERROR: " + message, 1);
     }
 
+    /**
+     * Executes the program in the given file on each line of standard
+     * input with profiling enabled, writes the outputs on standard
+     * output, and prints a report of the hot spots on standard
+     * error. The profile is also written as collapsed stacks to a
+     * file with postfix {@link #FOLDEDPOSTFIX}. If there is a debug
+     * map written by the assembler next to the executable, then the
+     * profile is rolled up to source lines and labels. An executable
+     * in packed binary form describes its own machine, whereas an
+     * executable in hexadecimal text form is executed on the given
+     * machine.
+     *
+     * @param fileName Name of executable.
+     * @param target Machine of an executable in hexadecimal text
+     * form.
+     * @throws NICException If the program can not be loaded or
+     * executed.
+     * @throws IOException If the inputs can not be read or the
+     * profile can not be written.
+     */
+    protected static void profile(final String fileName,
+                                  final MachineProfile target)
+        throws NICException, IOException {
+        final File file = new File(fileName);
+        final MachineProfile machine;
+        final Computer computer;
+        if (fileName.endsWith(BinaryExecutable.POSTFIX)) {
+            final BinaryExecutable executable = BinaryExecutable.read(file);
+            machine = MachineProfile.valueOf("bin",
+                                             executable.getBLOCKSIZE(),
+                                             executable.getWORDBLOCKS(),
+                                             executable.getMEMORYCELLS(),
+                                             target.getNOREGISTERS());
+            computer = new Computer(machine, false);
+            computer.setProgram(executable);
+        } else {
+            machine = target;
+            computer = new Computer(machine, false);
+            computer.setProgram(Util.readString(file));
+        }
+
+        final String base =
+            fileName.replaceFirst("(\\.bi|" + BinaryExecutable.POSTFIX
+                                  + ")\\z", "");
+        final File debugFile = new File(base + DebugMap.POSTFIX);
+        DebugMap debugMap = null;
+        if (debugFile.exists()) {
+            debugMap = DebugMap.read(debugFile, machine.getMEMORYCELLS());
+        }
+
+        computer.setProfilingEnabled(true);
+        computer.executeStream();
+        System.out.flush();
+
+        final Profiler profile = computer.getProfile();
+        System.err.print(profile.report(debugMap, HOTSPOTS));
+
+        final String foldedFileName = base + FOLDEDPOSTFIX;
+        Files.write(new File(foldedFileName).toPath(),
+                    profile.collapsedStacks(debugMap)
+                    .getBytes(StandardCharsets.UTF_8));
+        System.err.println("\nCollapsed stacks written to "
+                           + foldedFileName + ".");
+    }
+
     /**
      * Command line interface.
      *
@@ -86,7 +173,22 @@ public class NIC {
 
         final String commandName = "nic";
 
-        if (args.length == 1) {
+        if (args.length == 4 && args[0].equals("-profile")
+            && args[1].equals("-target")) {
+            try {
+                profile(args[3], MachineProfile.forName(args[2]));
+            } catch (final NICException | IOException e) {
+                errorExit(e.getMessage());
+            }
+            return;
+        } else if (args.length == 2 && args[0].equals("-profile")) {
+            try {
+                profile(args[1], MachineProfile.NIC8);
+            } catch (final NICException | IOException e) {
+                errorExit(e.getMessage());
+            }
+            return;
+        } else if (args.length == 1) {
             if (args[0].equals("-v")) {
                 version();
             } else if (args[0].equals("-h")) {
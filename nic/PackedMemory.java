@@ -0,0 +1,132 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.util.Arrays;
+
+/**
+ * Random access memory that stores all blocks in a single array of
+ * primitive integers instead of individual memory cells. This is
+ * meant for non-interactive execution, where one thread owns the
+ * computer, so no locking is done on individual accesses.
+ *
+ * <p>
+ *
+ * If the number of memory cells is a power of two, then addresses
+ * are reduced using a bitmask instead of a division.
+ */
+public class PackedMemory extends Memory {
+
+    /**
+     * Underlying blocks.
+     */
+    protected final int[] blocks;
+
+    /**
+     * Block where all bits equal one.
+     */
+    protected final int BLOCKMASK;
+
+    /**
+     * Bitmask used to reduce addresses if the number of memory cells
+     * is a power of two, and -1 otherwise.
+     */
+    protected final int ADDRESSMASK;
+
+    /**
+     * Creates a memory with the given number of memory cells, where
+     * each memory cell is initialized to zero.
+     *
+     * @param MEMORYCELLS Number of memory cells.
+     * @param BLOCKSIZE Bit-size of a block.
+     */
+    public PackedMemory(final int MEMORYCELLS, final int BLOCKSIZE) {
+        super(BLOCKSIZE);
+        if (MEMORYCELLS <= 0) {
+            throw new Error("Invalid number of memory cells! ("
+                            + MEMORYCELLS + ")");
+        }
+        this.blocks = new int[MEMORYCELLS];
+        this.BLOCKMASK = (1 << BLOCKSIZE) - 1;
+        if ((MEMORYCELLS & (MEMORYCELLS - 1)) == 0) {
+            this.ADDRESSMASK = MEMORYCELLS - 1;
+        } else {
+            this.ADDRESSMASK = -1;
+        }
+    }
+
+    /**
+     * Reduces an address modulo the number of memory cells.
+     *
+     * @param p Address in memory.
+     * @return Index of the memory cell.
+     */
+    protected int index(final int p) {
+        if (ADDRESSMASK >= 0) {
+            return p & ADDRESSMASK;
+        } else {
+            return p % blocks.length;
+        }
+    }
+
+    @Override
+    public void set(final int p, final int block) {
+        final int i = index(p);
+        blocks[i] = block & BLOCKMASK;
+        invalidate(i);
+    }
+
+    @Override
+    public int get(final int p) {
+        return blocks[index(p)];
+    }
+
+    @Override
+    public int getMEMORYCELLS() {
+        return blocks.length;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(blocks, 0);
+        invalidateAll();
+    }
+
+    @Override
+    protected void restoreAll(final ProgramImage image) {
+        System.arraycopy(image.blocks, 0, blocks, 0, blocks.length);
+        invalidateAll();
+    }
+
+    @Override
+    public void load(final int p, final CharSequence hexString)
+        throws NICException {
+
+        // Verify that we can get complete blocks.
+        if (hexString.length() % HEXSIZE != 0) {
+
+            // This will never happen if this function is used
+            // properly.
+            throw new Error("Hex string is not an even multiple of blocks!");
+        }
+
+        // Decode directly into the underlying array without an
+        // intermediate array.
+        final int noBlocks = hexString.length() / HEXSIZE;
+        int i = index(p);
+        for (int b = 0; b < noBlocks; b++) {
+            blocks[i] = HexCodec.decodeBlock(hexString, b * HEXSIZE, HEXSIZE);
+            invalidate(i);
+
+            i++;
+            if (i == blocks.length) {
+                i = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Register that is not synchronized. This is used by processors that
+ * are confined to a single thread at a time, where other threads
+ * only see the state of the processor through snapshots, see {@link
+ * ComputerSnapshot}.
+ */
+public class PlainRegister implements Register {
+
+    /**
+     * Mask for this register.
+     */
+    protected final long REGMASK;
+
+    /**
+     * Value of this register.
+     */
+    protected long value;
+
+    /**
+     * Creates a register with the given bitsize initialized to zero.
+     *
+     * @param REGSIZE Bit size of contents of this register.
+     */
+    public PlainRegister(final int REGSIZE) {
+        this.REGMASK = REGSIZE >= 64 ? -1L : (1L << REGSIZE) - 1;
+    }
+
+    @Override
+    public void set(final long value) {
+        this.value = value & REGMASK;
+    }
+
+    @Override
+    public long get() {
+        return value;
+    }
+}
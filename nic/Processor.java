@@ -33,6 +33,9 @@ package se.kth.csc.nic;
  *
  * <li> BAD_ALIGNMENT: an attempt to read or write at an unaligned position.
  *
+ * <li> INTERRUPTED: the processor was interrupted from the outside,
+ *      e.g., since it had executed too many instructions.
+ *
  * </ul>
  */
 public class Processor {
@@ -57,6 +60,13 @@ public class Processor {
     final static int opXOR       = 0xe;
     final static int opJump      = 0xf;
 
+    /**
+     * Operation code given to decoded instructions that refer to a
+     * register that does not exist. It is larger than all operation
+     * codes, so such instructions are bad instructions.
+     */
+    final static int opInvalid   = Integer.MAX_VALUE;
+
     // Status codes. This corresponds to interrupts encountered by a
     // physical computer. Errors should never occur with a binary
     // executable that has been compiled from correct assembler code.
@@ -165,6 +175,43 @@ public class Processor {
      */
     protected Memory mem;
 
+    /**
+     * Cache of decoded instructions indexed by address, or null if
+     * instructions are always read from memory.
+     */
+    protected InstructionCache cache;
+
+    /**
+     * Decoded form of the instruction most recently fetched or
+     * executed, or null.
+     */
+    protected DecodedInstruction decoded;
+
+    /**
+     * Counters of fetched and executed instructions, or null if
+     * instructions are not counted.
+     */
+    protected InstructionCounters counters;
+
+    /**
+     * Profile of the cycles spent at each address, or null if the
+     * processor is not profiled.
+     */
+    protected Profiler profiler;
+
+    /**
+     * Recorder of executed instructions, or null if the processor is
+     * not traced.
+     */
+    protected TraceRecorder tracer;
+
+    /**
+     * Copies of the general purpose registers kept by {@link
+     * #run(long)} and the engines while they run, or null until they
+     * are needed. The array is reused, so running allocates nothing.
+     */
+    private int[] locals;
+
     /**
      * Creates a processor with the given memory, but without
      * registers.
@@ -185,17 +232,27 @@ public class Processor {
         this.WORDBLOCKS = WORDBLOCKS;
 
         // Derive "constants" from BLOCKSIZE, WORDBLOCKS, AND OPBLOCKS.
-        BLOCKMASK = (1 << BLOCKSIZE) - 1;
-
+        // Words are kept in integers, whereas instructions are kept
+        // in longs, so the masks are computed with long shifts.
         WORDSIZE = WORDBLOCKS * BLOCKSIZE;
-        WORDMASK = (1 << WORDSIZE) - 1;
-        WORDTOP = 1 << (WORDSIZE - 1);
-
         OPSIZE = OPBLOCKS * BLOCKSIZE;
-        OPMASK = (1 << OPSIZE) - 1;
         INSTRUCTIONBLOCKS = OPBLOCKS + 1 + WORDBLOCKS;
 
-        if (mem.getMEMORYCELLS() > 1 << WORDSIZE) {
+        if (WORDSIZE > MachineProfile.MAXWORDSIZE) {
+            throw new Error("Word size is too large! (" + WORDSIZE + ")");
+        }
+        if (INSTRUCTIONBLOCKS * BLOCKSIZE
+            > MachineProfile.MAXINSTRUCTIONSIZE) {
+            throw new Error("Instruction size is too large! ("
+                            + INSTRUCTIONBLOCKS * BLOCKSIZE + ")");
+        }
+
+        BLOCKMASK = (int) ((1L << BLOCKSIZE) - 1);
+        WORDMASK = (int) ((1L << WORDSIZE) - 1);
+        WORDTOP = (int) (1L << (WORDSIZE - 1));
+        OPMASK = (int) ((1L << OPSIZE) - 1);
+
+        if (mem.getMEMORYCELLS() > 1L << WORDSIZE) {
             throw new Error("All memory cells can not be addressed!");
         }
     }
@@ -211,21 +268,138 @@ public class Processor {
      */
     public Processor(final Memory mem, final int WORDBLOCKS,
                      final int NOREGISTERS) {
+        this(mem, WORDBLOCKS, NOREGISTERS, false);
+    }
+
+    /**
+     * Creates a processor with the given components, which is
+     * optionally confined to a single thread at a time.
+     *
+     * @param mem Underlying memory.
+     * @param WORDBLOCKS Number of blocks in a word stored in general
+     * purpose registers.
+     * @param NOREGISTERS Number of registers. This must be
+     * addressable by a block.
+     * @param confined Determines if the registers are plain
+     * unsynchronized fields, in which case the processor must only be
+     * used by one thread at a time.
+     */
+    public Processor(final Memory mem, final int WORDBLOCKS,
+                     final int NOREGISTERS, final boolean confined) {
         this(mem, WORDBLOCKS);
 
-        if (NOREGISTERS > 1 << BLOCKSIZE) {
+        if (NOREGISTERS > 1L << BLOCKSIZE) {
             throw new Error("All registers can not be addressed!");
         }
         this.NOREGISTERS = NOREGISTERS;
 
-        reg = new GenericRegister[NOREGISTERS];
+        reg = new Register[NOREGISTERS];
         for (int i = 0; i < NOREGISTERS; i++) {
-            reg[i] = new GenericRegister(WORDSIZE);
+            reg[i] = newRegister(WORDSIZE, confined);
+        }
+        pc = newRegister(WORDSIZE, confined);
+        ir = newRegister(INSTRUCTIONBLOCKS * BLOCKSIZE, confined);
+        nr = newRegister(WORDSIZE, confined);
+        sr = newRegister(WORDSIZE, confined);
+
+        // The memory invalidates decoded instructions when it is
+        // written.
+        cache = new InstructionCache(mem.getMEMORYCELLS(), INSTRUCTIONBLOCKS);
+        mem.setInstructionCache(cache);
+    }
+
+    /**
+     * Creates a register with the given bit size.
+     *
+     * @param REGSIZE Bit size of contents of register.
+     * @param confined Determines if the register is unsynchronized.
+     * @return Register.
+     */
+    private static Register newRegister(final int REGSIZE,
+                                        final boolean confined) {
+        if (confined) {
+            return new PlainRegister(REGSIZE);
+        } else {
+            return new GenericRegister(REGSIZE);
         }
-        pc = new GenericRegister(WORDSIZE);
-        ir = new GenericRegister(INSTRUCTIONBLOCKS * BLOCKSIZE);
-        nr = new GenericRegister(WORDSIZE);
-        sr = new GenericRegister(WORDSIZE);
+    }
+
+    /**
+     * Sets the counters of fetched and executed instructions. When
+     * counters are set, {@link #run(long)} steps the processor
+     * through each fetch and execute and counts them, so the fast
+     * path of an uninstrumented processor is left untouched.
+     *
+     * @param counters Counters, or null if instructions are not
+     * counted.
+     */
+    public void setCounters(final InstructionCounters counters) {
+        this.counters = counters;
+    }
+
+    /**
+     * Returns the counters of fetched and executed instructions.
+     *
+     * @return Counters, or null if instructions are not counted.
+     */
+    public InstructionCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Sets the profile of the cycles spent at each address. Like
+     * counters, see {@link #setCounters(InstructionCounters)}, this
+     * makes {@link #run(long)} step through each instruction.
+     *
+     * @param profiler Profile, or null if the processor is not
+     * profiled.
+     */
+    public void setProfiler(final Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Returns the profile of the cycles spent at each address.
+     *
+     * @return Profile, or null if the processor is not profiled.
+     */
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Sets the recorder of executed instructions. Unlike counters,
+     * see {@link #setCounters(InstructionCounters)}, this does not
+     * make {@link #run(long)} step through each instruction, since
+     * its loop records the instructions directly.
+     *
+     * @param tracer Recorder, or null if the processor is not traced.
+     */
+    public void setTracer(final TraceRecorder tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Returns the recorder of executed instructions.
+     *
+     * @return Recorder, or null if the processor is not traced.
+     */
+    public TraceRecorder getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Returns true if the processor is instrumented, i.e., if
+     * counters or a profile are set, in which case it must be stepped
+     * through each fetch and execute. A recorder does not count as
+     * instrumentation, since the fast loops record instructions
+     * directly.
+     *
+     * @return True if the processor is instrumented and false
+     * otherwise.
+     */
+    public boolean isInstrumented() {
+        return counters != null || profiler != null;
     }
 
     /**
@@ -270,7 +444,7 @@ public class Processor {
      * @return Next move of this processor.
      */
     public int getNext() {
-        return nr.get();
+        return (int) nr.get();
     }
 
     /**
@@ -279,11 +453,12 @@ public class Processor {
      * @return Status of this processor.
      */
     public int getStatus() {
-        return sr.get();
+        return (int) sr.get();
     }
 
     /**
-     * Reset this processor, i.e., set all registers to zero.
+     * Reset this processor, i.e., set all registers to zero. Any
+     * recorded instructions are forgotten.
      */
     public void reset() {
         pc.set(0);
@@ -292,6 +467,9 @@ public class Processor {
         for (int i = 0; i < reg.length; ++i) {
             reg[i].set(0);
         }
+        if (tracer != null) {
+            tracer.clear();
+        }
     }
 
     /**
@@ -302,15 +480,31 @@ public class Processor {
      * @param blocks Number of blocks to read.
      * @return Blocks as an integer.
      */
-    private int readInt(final int p, final int blocks) {
+    int readInt(final int p, final int blocks) {
 
         // Read blocks from memory and form an integer.
         int res = 0;
         for (int i = 0; i < blocks; i++) {
-            res |= mem.get(p + i);
-            res <<= BLOCKSIZE;
+            res = (res << BLOCKSIZE) | mem.get(p + i);
+        }
+        return res;
+    }
+
+    /**
+     * Read the given number of blocks from memory starting at the
+     * given pointer and return the result as a long. This is used for
+     * instructions, which may be wider than an integer.
+     *
+     * @param p Pointer in memory.
+     * @param blocks Number of blocks to read.
+     * @return Blocks as a long.
+     */
+    long readLong(final int p, final int blocks) {
+        long res = 0;
+        for (int i = 0; i < blocks; i++) {
+            res = (res << BLOCKSIZE) | mem.get(p + i);
         }
-        return res >> BLOCKSIZE;
+        return res;
     }
 
     /**
@@ -321,7 +515,7 @@ public class Processor {
      * @param value Integer.
      * @param blocks Number of blocks to write.
      */
-    private void writeInt(final int p, final int value, final int blocks) {
+    void writeInt(final int p, final int value, final int blocks) {
 
         for (int i = 0; i < blocks; i++) {
             int offset = (blocks - 1 - i) * BLOCKSIZE;
@@ -330,6 +524,37 @@ public class Processor {
         }
     }
 
+    /**
+     * Decodes the given instruction.
+     *
+     * @param instruction Bit pattern of instruction.
+     * @return Decoded instruction.
+     */
+    protected DecodedInstruction decode(final long instruction) {
+        return new DecodedInstruction(instruction, BLOCKSIZE, WORDBLOCKS,
+                                      OPMASK, WORDMASK, NOREGISTERS);
+    }
+
+    /**
+     * Returns the decoded instruction at the given aligned address,
+     * using the cache of decoded instructions if there is one.
+     *
+     * @param p Aligned address of instruction.
+     * @return Decoded instruction.
+     */
+    protected DecodedInstruction decodeAt(final int p) {
+        if (cache == null) {
+            return decode(readLong(p, INSTRUCTIONBLOCKS));
+        } else {
+            DecodedInstruction d = cache.get(p);
+            if (d == null) {
+                d = decode(readLong(p, INSTRUCTIONBLOCKS));
+                cache.put(p, d);
+            }
+            return d;
+        }
+    }
+
     /**
      * Retrieves the next operation from memory and then increments the
      * program counter.
@@ -337,14 +562,15 @@ public class Processor {
     public void fetch() {
 
         // Program counter as pointer.
-        int p = pc.get();
+        int p = (int) pc.get();
 
         // Check that the pointer is an even multiple of the
         // instruction size in blocks.
         if (p % INSTRUCTIONBLOCKS == 0) {
 
             // Read instruction into instruction register.
-            ir.set(readInt(p, INSTRUCTIONBLOCKS));
+            decoded = decodeAt(p);
+            ir.set(decoded.ir);
 
             // Update program counter.
             pc.set((p + INSTRUCTIONBLOCKS) % mem.getMEMORYCELLS());
@@ -356,42 +582,49 @@ public class Processor {
         }
     }
 
+    /**
+     * Returns the decoded form of the instruction register, which is
+     * decoded unless it was decoded when it was fetched.
+     *
+     * @return Decoded instruction.
+     */
+    protected DecodedInstruction current() {
+        final long instruction = ir.get();
+        DecodedInstruction d = decoded;
+        if (d == null || d.ir != instruction) {
+            d = decode(instruction);
+            decoded = d;
+        }
+        return d;
+    }
+
     /**
      * Decode the bit pattern in the instruction register and execute
      * the command.
      */
     public void execute() {
 
-        int instruction = ir.get();
-
-        // Extract operator code and three words from the
-        // instruction.
-        int field3 = instruction & BLOCKMASK;
-        instruction >>>= BLOCKSIZE;
-
-        int field2 = instruction & BLOCKMASK;
-        instruction >>>= BLOCKSIZE;
-
-        int field1 = instruction & BLOCKMASK;
-        instruction >>>= BLOCKSIZE;
+        final DecodedInstruction d = current();
 
-        int opCode = instruction & OPMASK;
+        final int field1 = d.field1;
+        final int field2 = d.field2;
+        final int field3 = d.field3;
 
-        switch (opCode) {
+        switch (d.opCode) {
         case opHalt:
             halt();
             break;
         case opLoadMem:
-            loadMem(field1, (field2 << BLOCKSIZE) + field3);
+            loadMem(field1, d.constant);
             break;
         case opLoadConst:
-            loadConst(field1, (field2 << BLOCKSIZE) + field3);
+            loadConst(field1, d.constant);
             break;
         case opLoadReg:
             loadReg(field2, field3);
             break;
         case opStore:
-            storeMem(field1, (field2 << BLOCKSIZE) + field3);
+            storeMem(field1, d.constant);
             break;
         case opStoreReg:
             storeReg(field2, field3);
@@ -403,7 +636,7 @@ public class Processor {
             addInt(field1, field2, field3);
             break;
         case opAddConst:
-            addConst(field1, (field2 << BLOCKSIZE) + field3);
+            addConst(field1, d.constant);
             break;
         case opMulInt:
             mulInt(field1, field2, field3);
@@ -424,7 +657,7 @@ public class Processor {
             XOR(field1, field2, field3);
             break;
         case opJump:
-            jump(field1, (field2 << BLOCKSIZE) + field3);
+            jump(field1, d.condition, d.target);
             break;
         default:
             sr.set(BAD_INSTRUCTION);
@@ -439,10 +672,230 @@ public class Processor {
         if (nr.get() == FETCH) {
             fetch();
             nr.set(EXEC);
+            if (counters != null) {
+                counters.fetched((int) sr.get());
+            }
         } else {
-            execute();
+
+            // The instruction was fetched just before the program
+            // counter.
+            final int MEMORYCELLS = mem.getMEMORYCELLS();
+            final int address = (int) ((pc.get() - INSTRUCTIONBLOCKS
+                                        + MEMORYCELLS) % MEMORYCELLS);
+            if (profiler != null) {
+                profiler.executed(address);
+            }
+            if (tracer != null) {
+                tracer.executing(this, address, current());
+                execute();
+                tracer.executed(this);
+            } else {
+                execute();
+            }
             nr.set(FETCH);
+            if (counters != null) {
+                counters.executed(decoded, (int) sr.get());
+            }
+        }
+    }
+
+    /**
+     * Returns an array holding the values of the general purpose
+     * registers, which is reused by every run of this processor. The
+     * registers must be written back from the array before it is
+     * returned again.
+     *
+     * @return Values of the general purpose registers.
+     */
+    int[] locals() {
+        if (locals == null) {
+            locals = new int[NOREGISTERS];
+        }
+        final int[] r = locals;
+        for (int i = 0; i < NOREGISTERS; i++) {
+            r[i] = (int) reg[i].get();
+        }
+        return r;
+    }
+
+    /**
+     * Runs the processor like {@link #run(long)}, but steps through
+     * each fetch and execute, so that they are counted, profiled, and
+     * traced.
+     *
+     * @param maxInstructions Maximal number of instructions to
+     * execute.
+     * @return Number of instructions executed.
+     */
+    protected long runInstrumented(final long maxInstructions) {
+        long n = 0;
+        while (sr.get() == SUCCESS) {
+            if (nr.get() == EXEC) {
+                n++;
+            } else if (n >= maxInstructions) {
+                break;
+            }
+            step();
+        }
+        return n;
+    }
+
+    /**
+     * Runs the processor until it halts, encounters an error, or has
+     * executed the given number of instructions. This is equivalent
+     * to stepping the processor until the status is no longer
+     * successful or the given number of executes have been carried
+     * out, but the program counter, the general purpose registers,
+     * and the status are kept in local variables and are only
+     * written back to the registers when the loop exits. Thus, this
+     * should only be used when nobody observes the registers during
+     * execution. If the processor is instrumented, then {@link
+     * #runInstrumented(long)} is used instead.
+     *
+     * @param maxInstructions Maximal number of instructions to
+     * execute.
+     * @return Number of instructions executed.
+     */
+    public long run(final long maxInstructions) {
+        long n = 0;
+
+        if (maxInstructions <= 0 || sr.get() != SUCCESS) {
+            return n;
+        }
+        if (isInstrumented()) {
+            return runInstrumented(maxInstructions);
         }
+
+        // Complete an instruction that has already been fetched.
+        if (nr.get() == EXEC) {
+            step();
+            n++;
+            if (sr.get() != SUCCESS) {
+                return n;
+            }
+        }
+
+        final int[] r = locals();
+        final int MEMORYCELLS = mem.getMEMORYCELLS();
+        final TraceRecorder tracer = this.tracer;
+
+        int p = (int) pc.get();
+        DecodedInstruction d = null;
+        int status = SUCCESS;
+        int next = FETCH;
+
+        while (n < maxInstructions) {
+
+            // Fetch.
+            if (p % INSTRUCTIONBLOCKS != 0) {
+                status = BAD_ALIGNMENT;
+                next = EXEC;
+                break;
+            }
+            d = decodeAt(p);
+            if (tracer != null) {
+                tracer.executing(this, r, p, d);
+            }
+            p = (p + INSTRUCTIONBLOCKS) % MEMORYCELLS;
+            n++;
+
+            // Execute.
+            final int field1 = d.field1;
+            final int field2 = d.field2;
+            final int field3 = d.field3;
+
+            switch (d.opCode) {
+            case opHalt:
+                status = HALT;
+                break;
+            case opLoadMem:
+                if (d.constant % WORDBLOCKS != 0) {
+                    status = BAD_ALIGNMENT;
+                } else {
+                    r[field1] = readInt(d.constant, WORDBLOCKS) & WORDMASK;
+                }
+                break;
+            case opLoadConst:
+                r[field1] = d.constant & WORDMASK;
+                break;
+            case opLoadReg:
+                if (r[field3] % WORDBLOCKS != 0) {
+                    status = BAD_ALIGNMENT;
+                } else {
+                    r[field2] = readInt(r[field3], WORDBLOCKS) & WORDMASK;
+                }
+                break;
+            case opStore:
+                if (d.constant % WORDBLOCKS != 0) {
+                    status = BAD_ALIGNMENT;
+                } else {
+                    writeInt(d.constant, r[field1], WORDBLOCKS);
+                }
+                break;
+            case opStoreReg:
+                if (r[field3] % WORDBLOCKS != 0) {
+                    status = BAD_ALIGNMENT;
+                } else {
+                    writeInt(r[field3], r[field2], WORDBLOCKS);
+                }
+                break;
+            case opMove:
+                r[field3] = r[field2];
+                break;
+            case opAddInt:
+                r[field1] = (r[field2] + r[field3]) & WORDMASK;
+                break;
+            case opAddConst:
+                r[field1] = (r[field1] + d.constant) & WORDMASK;
+                break;
+            case opMulInt:
+                r[field1] = (r[field2] * r[field3]) & WORDMASK;
+                break;
+            case opSubInt:
+                r[field1] = (r[field2] - r[field3]) & WORDMASK;
+                break;
+            case opRShift:
+                r[field1] = shifted(r[field2], r[field3]);
+                break;
+            case opAND:
+                r[field1] = r[field2] & r[field3];
+                break;
+            case opOR:
+                r[field1] = r[field2] | r[field3];
+                break;
+            case opXOR:
+                r[field1] = r[field2] ^ r[field3];
+                break;
+            case opJump:
+                if (jumps(d.condition, r[field1], r[0])) {
+                    p = d.target & WORDMASK;
+                }
+                break;
+            default:
+                status = BAD_INSTRUCTION;
+            }
+            if (tracer != null) {
+                tracer.executed(this, r);
+            }
+
+            if (status != SUCCESS) {
+                break;
+            }
+        }
+
+        // Write back the state kept in local variables.
+        for (int i = 0; i < NOREGISTERS; i++) {
+            reg[i].set(r[i]);
+        }
+        if (d != null) {
+            decoded = d;
+            ir.set(d.ir);
+        }
+        pc.set(p);
+        nr.set(next);
+        sr.set(status);
+
+        return n;
     }
 
     /**
@@ -480,7 +933,7 @@ public class Processor {
      * @param s Index of source pointer register.
      */
     void loadReg(final int d, final int s) {
-        int p = reg[s].get();
+        int p = (int) reg[s].get();
         loadMem(d, p);
     }
 
@@ -495,7 +948,7 @@ public class Processor {
         if (p % WORDBLOCKS != 0) {
             sr.set(BAD_ALIGNMENT);
         } else {
-            writeInt(p, reg[s].get(), WORDBLOCKS);
+            writeInt(p, (int) reg[s].get(), WORDBLOCKS);
             sr.set(SUCCESS);
         }
     }
@@ -508,7 +961,7 @@ public class Processor {
      * @param d Index of destination pointer register.
      */
     void storeReg(final int s, final int d) {
-        storeMem(s, reg[d].get());
+        storeMem(s, (int) reg[d].get());
     }
 
     /**
@@ -586,9 +1039,19 @@ public class Processor {
      * @param b Index of source register.
      */
     void shift(final int d, final int a, final int b) {
-        int rs = reg[a].get();
-        int rt = reg[b].get();
+        reg[d].set(shifted((int) reg[a].get(), (int) reg[b].get()));
+        sr.set(SUCCESS);
+    }
 
+    /**
+     * Shifts the first word by the amount specified by the second
+     * word as described in {@link #shift(int, int, int)}.
+     *
+     * @param rs Word to shift.
+     * @param rt Word specifying the shift.
+     * @return Shifted word.
+     */
+    int shifted(int rs, int rt) {
         rt = signExtended(rt);
         if (rt > 0) {
 
@@ -599,9 +1062,7 @@ public class Processor {
         } else {
             rs <<= rt;
         }
-        reg[d].set(rs & WORDMASK);
-
-        sr.set(SUCCESS);
+        return rs & WORDMASK;
     }
 
     /**
@@ -658,44 +1119,52 @@ public class Processor {
         }
     }
 
-    /* Jump to memory cell a if the bit pattern in register r
-     * eq/neq/le/leq the bit pattern in register 0.
+    /* Jump to memory cell adr if the bit pattern in register r
+     * eq/neq/le/leq the bit pattern in register 0. The condition b
+     * and the address are extracted from the two least significant
+     * bits and the remaining bits of the constant of the
+     * instruction, respectively, when it is decoded.
      */
-    void jump(final int r, final int a) {
-
-        // Extract two least significant bits that encode which jump
-        // instruction to use.
-        final int b = a % 4;
-
-        // Set the two least significant bits in address to zero.
-        final int adr = a & (WORDMASK << 2);
+    void jump(final int r, final int b, final int adr) {
+        if (jumps(b, (int) reg[r].get(), (int) reg[0].get())) {
+            pc.set(adr);
+        }
+        sr.set(SUCCESS);
+    }
 
-        final int rx = signExtended(reg[r].get());
-        final int r0 = signExtended(reg[0].get());
+    /**
+     * Returns true if a jump with the given condition is taken when
+     * the bit patterns of the compared registers are as given.
+     *
+     * @param b Condition of jump, i.e., eq/neq/le/leq.
+     * @param x Word in register compared with register 0.
+     * @param y Word in register 0.
+     * @return True if the jump is taken and false otherwise.
+     */
+    boolean jumps(final int b, final int x, final int y) {
+        final int rx = signExtended(x);
+        final int r0 = signExtended(y);
 
         switch (b) {
         case 0:
-            if (rx == r0) {
-                pc.set(adr);
-            }
-            break;
+            return rx == r0;
         case 1:
-            if (rx != r0) {
-                pc.set(adr);
-            }
-            break;
+            return rx != r0;
         case 2:
-            if (rx < r0) {
-                pc.set(adr);
-            }
-            break;
+            return rx < r0;
         case 3:
-            if (rx <= r0) {
-                pc.set(adr);
-            }
-            break;
+            return rx <= r0;
+        default:
+            return false;
         }
-        sr.set(SUCCESS);
+    }
+
+    /**
+     * Interrupts the processor, i.e., sets the status to
+     * INTERRUPTED. This is only done between instructions.
+     */
+    public void interrupt() {
+        sr.set(INTERRUPTED);
     }
 
     /**
@@ -0,0 +1,233 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Profile of the cycles spent at each address of memory. The profile
+ * is rolled up to source lines and labels using a {@link DebugMap},
+ * either as a ranked report of hot spots or as collapsed stacks with
+ * labels as frames, which is the input format of flame graph
+ * tools. Like {@link InstructionCounters}, a profile is updated
+ * without synchronization by the thread running the processor.
+ */
+public final class Profiler {
+
+    /**
+     * Number of executed instructions at each address.
+     */
+    final long[] cycles;
+
+    /**
+     * Creates an empty profile for a memory with the given number of
+     * cells.
+     *
+     * @param MEMORYCELLS Number of memory cells.
+     */
+    public Profiler(final int MEMORYCELLS) {
+        this.cycles = new long[MEMORYCELLS];
+    }
+
+    /**
+     * Records the execution of the instruction at the given address.
+     *
+     * @param address Address of instruction.
+     */
+    void executed(final int address) {
+        cycles[address]++;
+    }
+
+    /**
+     * Adds the given profile to this profile.
+     *
+     * @param profiler Profile to be added.
+     */
+    void add(final Profiler profiler) {
+        for (int i = 0; i < cycles.length; i++) {
+            cycles[i] += profiler.cycles[i];
+        }
+    }
+
+    /**
+     * Sets all counts to zero.
+     */
+    void clear() {
+        Arrays.fill(cycles, 0);
+    }
+
+    /**
+     * Returns a copy of this profile.
+     *
+     * @return Snapshot of this profile.
+     */
+    Profiler snapshot() {
+        final Profiler profiler = new Profiler(cycles.length);
+        profiler.add(this);
+        return profiler;
+    }
+
+    /**
+     * Returns the number of executed instructions at the given
+     * address.
+     *
+     * @param address Address of instruction.
+     * @return Number of executed instructions.
+     */
+    public long getCycles(final int address) {
+        return cycles[address];
+    }
+
+    /**
+     * Returns the total number of executed instructions.
+     *
+     * @return Number of executed instructions.
+     */
+    public long getTotal() {
+        long total = 0;
+        for (final long n : cycles) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the label of the given address, or a placeholder if
+     * there is none.
+     *
+     * @param debugMap Debug map, or null.
+     * @param address Address of instruction.
+     * @return Label.
+     */
+    private static String label(final DebugMap debugMap, final int address) {
+        if (debugMap == null || debugMap.getLabel(address) == null) {
+            return DebugMap.NOLABEL;
+        } else {
+            return debugMap.getLabel(address);
+        }
+    }
+
+    /**
+     * Returns a description of the source of the given address, i.e.,
+     * the source line and text if the address is mapped and the
+     * address otherwise.
+     *
+     * @param debugMap Debug map, or null.
+     * @param address Address of instruction.
+     * @return Description of source.
+     */
+    private static String source(final DebugMap debugMap,
+                                 final int address) {
+        if (debugMap == null || debugMap.getLine(address) == 0) {
+            return String.format("0x%02x", address);
+        } else {
+            return String.format("%d: %s", debugMap.getLine(address),
+                                 debugMap.getText(address));
+        }
+    }
+
+    /**
+     * Sums the cycles with the same key, where the keys are derived
+     * from addresses, and returns the sums in order of decreasing
+     * cycles.
+     *
+     * @param keys Key of each address.
+     * @return Sums in order of decreasing cycles.
+     */
+    private List<Map.Entry<String, Long>> rollUp(final String[] keys) {
+        final Map<String, Long> sums = new LinkedHashMap<String, Long>();
+        for (int address = 0; address < cycles.length; address++) {
+            if (cycles[address] > 0) {
+                final Long sum = sums.get(keys[address]);
+                sums.put(keys[address],
+                         (sum == null ? 0 : sum) + cycles[address]);
+            }
+        }
+        final List<Map.Entry<String, Long>> entries =
+            new ArrayList<Map.Entry<String, Long>>(sums.entrySet());
+        entries.sort((x, y) -> Long.compare(y.getValue(), x.getValue()));
+        return entries;
+    }
+
+    /**
+     * Returns a report of the hot spots of the program, i.e., the
+     * source lines and the labels ranked by the number of cycles
+     * spent on them.
+     *
+     * @param debugMap Debug map of the program, or null if there is
+     * none, in which case addresses are used instead of source lines.
+     * @param maxLines Maximal number of source lines reported.
+     * @return Report of hot spots.
+     */
+    public String report(final DebugMap debugMap, final int maxLines) {
+        final long total = getTotal();
+        final String[] sources = new String[cycles.length];
+        final String[] labels = new String[cycles.length];
+        for (int address = 0; address < cycles.length; address++) {
+            labels[address] = label(debugMap, address);
+            sources[address] = labels[address] + "\t"
+                + source(debugMap, address);
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Total: %d cycles%n%n", total));
+        sb.append(String.format("%4s %12s %7s  %-12s %s%n",
+                                "rank", "cycles", "%", "label", "source"));
+        int rank = 1;
+        for (final Map.Entry<String, Long> entry : rollUp(sources)) {
+            if (rank > maxLines) {
+                break;
+            }
+            final String[] parts = entry.getKey().split("\t", 2);
+            sb.append(String.format("%4d %12d %6.2f%%  %-12s %s%n",
+                                    rank, entry.getValue(),
+                                    100.0 * entry.getValue() / total,
+                                    parts[0], parts[1]));
+            rank++;
+        }
+
+        sb.append(String.format("%n%4s %12s %7s  %s%n",
+                                "rank", "cycles", "%", "label"));
+        rank = 1;
+        for (final Map.Entry<String, Long> entry : rollUp(labels)) {
+            sb.append(String.format("%4d %12d %6.2f%%  %s%n",
+                                    rank, entry.getValue(),
+                                    100.0 * entry.getValue() / total,
+                                    entry.getKey()));
+            rank++;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the profile as collapsed stacks, i.e., one line per
+     * source line of the form "label;source cycles", which is the
+     * input format of flame graph tools.
+     *
+     * @param debugMap Debug map of the program, or null if there is
+     * none, in which case addresses are used instead of source lines.
+     * @return Collapsed stacks.
+     */
+    public String collapsedStacks(final DebugMap debugMap) {
+        final String[] stacks = new String[cycles.length];
+        for (int address = 0; address < cycles.length; address++) {
+            stacks[address] = label(debugMap, address) + ";"
+                + source(debugMap, address).replace(';', ',');
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<String, Long> entry : rollUp(stacks)) {
+            sb.append(entry.getKey()).append(' ')
+                .append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,179 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.util.Arrays;
+
+/**
+ * Immutable image of the memory of a computer right after it has
+ * been reset, i.e., the decoded blocks of a program stored at
+ * address zero followed by zeros. The image is decoded once when the
+ * program is set, so that resetting the memory only copies blocks.
+ */
+public final class ProgramImage {
+
+    /**
+     * Program as hexadecimal string without header, or null if it has
+     * not been encoded yet.
+     */
+    private String program;
+
+    /**
+     * Bit-size of a block.
+     */
+    final int BLOCKSIZE;
+
+    /**
+     * Blocks of the image, one for each memory cell. This is never
+     * modified.
+     */
+    final int[] blocks;
+
+    /**
+     * Number of blocks of the program.
+     */
+    final int programBlocks;
+
+    /**
+     * Hash code of the blocks of the image.
+     */
+    final int hash;
+
+    /**
+     * Decodes the given program into an image of a memory with the
+     * given parameters.
+     *
+     * @param program Program as hexadecimal string without header.
+     * @param MEMORYCELLS Number of memory cells.
+     * @param BLOCKSIZE Bit-size of a block.
+     * @throws NICException If the program is not a hexadecimal
+     * string.
+     */
+    public ProgramImage(final String program, final int MEMORYCELLS,
+                        final int BLOCKSIZE) throws NICException {
+        final PackedMemory pm = new PackedMemory(MEMORYCELLS, BLOCKSIZE);
+        pm.load(0, program);
+
+        this.program = program;
+        this.BLOCKSIZE = BLOCKSIZE;
+        this.blocks = pm.blocks;
+        this.programBlocks = program.length() / pm.HEXSIZE;
+        this.hash = Arrays.hashCode(blocks);
+    }
+
+    /**
+     * Creates an image of a memory with the given parameters from the
+     * given blocks of a program without decoding any hexadecimal
+     * string.
+     *
+     * @param program Blocks of program.
+     * @param MEMORYCELLS Number of memory cells.
+     * @param BLOCKSIZE Bit-size of a block.
+     * @throws NICException If the program does not fit in memory or
+     * if a block does not fit in a memory cell.
+     */
+    public ProgramImage(final int[] program, final int MEMORYCELLS,
+                        final int BLOCKSIZE) throws NICException {
+        if (program.length > MEMORYCELLS) {
+            throw new NICException("Too large program! ("
+                                   + program.length + " > "
+                                   + MEMORYCELLS + ")");
+        }
+        final int BLOCKMASK = (1 << BLOCKSIZE) - 1;
+        for (int i = 0; i < program.length; i++) {
+            if ((program[i] & ~BLOCKMASK) != 0) {
+                throw new NICException("Block does not fit in a memory cell! ("
+                                       + program[i] + ")");
+            }
+        }
+
+        this.BLOCKSIZE = BLOCKSIZE;
+        this.blocks = new int[MEMORYCELLS];
+        System.arraycopy(program, 0, blocks, 0, program.length);
+        this.programBlocks = program.length;
+        this.hash = Arrays.hashCode(blocks);
+    }
+
+    /**
+     * Returns the program of this image. If the image was not created
+     * from a hexadecimal string, then the string is encoded the first
+     * time this is called.
+     *
+     * @return Program as hexadecimal string without header.
+     */
+    public String getProgram() {
+        if (program == null) {
+            final int HEXSIZE = BLOCKSIZE / 4;
+            final char[] buf = new char[programBlocks * HEXSIZE];
+            int j = 0;
+            for (int i = 0; i < programBlocks; i++) {
+                j = HexCodec.encodeBlock(buf, j, blocks[i], HEXSIZE);
+            }
+            program = new String(buf);
+        }
+        return program;
+    }
+
+    /**
+     * Returns the bit-size of a block of this image.
+     *
+     * @return Bit-size of a block.
+     */
+    public int getBLOCKSIZE() {
+        return BLOCKSIZE;
+    }
+
+    /**
+     * Returns the number of memory cells of this image.
+     *
+     * @return Number of memory cells.
+     */
+    public int getMEMORYCELLS() {
+        return blocks.length;
+    }
+
+    /**
+     * Returns the number of blocks of the program of this image.
+     *
+     * @return Number of blocks of the program.
+     */
+    public int getProgramBlocks() {
+        return programBlocks;
+    }
+
+    /**
+     * Returns the block at the given address of this image.
+     * Addresses are reduced modulo the number of memory cells.
+     *
+     * @param p Address in image.
+     * @return Block at the given address.
+     */
+    public int get(final int p) {
+        return blocks[p % blocks.length];
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof ProgramImage)) {
+            return false;
+        }
+        final ProgramImage image = (ProgramImage) obj;
+        return hash == image.hash
+            && BLOCKSIZE == image.BLOCKSIZE
+            && programBlocks == image.programBlocks
+            && Arrays.equals(blocks, image.blocks);
+    }
+}
@@ -21,12 +21,12 @@ public interface Register {
      *
      * @param value Value to be stored in the register.
      */
-    void set(final int value);
+    void set(final long value);
 
     /**
      * Returns the value stored in the register.
      *
      * @return Value stored in register.
      */
-    int get();
+    long get();
 }
@@ -0,0 +1,256 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of outputs of programs on given inputs. Executing a
+ * program on an input always starts from a reset computer, so the
+ * output only depends on the program, the input, and the parameters
+ * of the computer. The least recently used result is evicted when
+ * the cache is full. All methods are synchronized, so a cache may be
+ * shared by computers used by different threads.
+ */
+public class ResultCache {
+
+    /**
+     * Key of a result.
+     */
+    final static class Key {
+
+        /**
+         * Image of memory after a reset.
+         */
+        final ProgramImage image;
+
+        /**
+         * Number of blocks in a word.
+         */
+        final int WORDBLOCKS;
+
+        /**
+         * Number of registers.
+         */
+        final int NOREGISTERS;
+
+        /**
+         * Input to program.
+         */
+        final String input;
+
+        /**
+         * Creates a key.
+         *
+         * @param image Image of memory after a reset.
+         * @param WORDBLOCKS Number of blocks in a word.
+         * @param NOREGISTERS Number of registers.
+         * @param input Input to program.
+         */
+        Key(final ProgramImage image, final int WORDBLOCKS,
+            final int NOREGISTERS, final String input) {
+            this.image = image;
+            this.WORDBLOCKS = WORDBLOCKS;
+            this.NOREGISTERS = NOREGISTERS;
+            this.input = input;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((image.hashCode() * 31 + WORDBLOCKS) * 31
+                    + NOREGISTERS) * 31 + input.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) obj;
+            return WORDBLOCKS == key.WORDBLOCKS
+                && NOREGISTERS == key.NOREGISTERS
+                && input.equals(key.input)
+                && image.equals(key.image);
+        }
+    }
+
+    /**
+     * Output of a program together with the number of instructions
+     * executed to compute it.
+     */
+    final static class Result {
+
+        /**
+         * Output of program.
+         */
+        final String output;
+
+        /**
+         * Number of executed instructions.
+         */
+        final long cycles;
+
+        /**
+         * Creates a result.
+         *
+         * @param output Output of program.
+         * @param cycles Number of executed instructions.
+         */
+        Result(final String output, final long cycles) {
+            this.output = output;
+            this.cycles = cycles;
+        }
+    }
+
+    /**
+     * Maximal number of results stored.
+     */
+    protected final int capacity;
+
+    /**
+     * Results in order of access, with the least recently used
+     * result first.
+     */
+    protected final LinkedHashMap<Key, Result> results;
+
+    /**
+     * Number of lookups that found a result.
+     */
+    protected long hits;
+
+    /**
+     * Number of lookups that did not find a result.
+     */
+    protected long misses;
+
+    /**
+     * Number of results evicted due to the capacity.
+     */
+    protected long evictions;
+
+    /**
+     * Creates an empty cache with the given capacity.
+     *
+     * @param capacity Maximal number of results stored.
+     */
+    public ResultCache(final int capacity) {
+        if (capacity <= 0) {
+            throw new Error("Non-positive capacity! (" + capacity + ")");
+        }
+        this.capacity = capacity;
+        this.results = new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean
+                removeEldestEntry(final Map.Entry<Key, Result> eldest) {
+                if (size() > ResultCache.this.capacity) {
+                    evictions++;
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the result stored under the given key, or null if there
+     * is none.
+     *
+     * @param key Key of result.
+     * @return Result or null.
+     */
+    Result get(final Key key) {
+        synchronized (this) {
+            final Result result = results.get(key);
+            if (result == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Stores a result under the given key.
+     *
+     * @param key Key of result.
+     * @param result Result.
+     */
+    void put(final Key key, final Result result) {
+        synchronized (this) {
+            results.put(key, result);
+        }
+    }
+
+    /**
+     * Removes all results. The counters are not reset.
+     */
+    public void clear() {
+        synchronized (this) {
+            results.clear();
+        }
+    }
+
+    /**
+     * Returns the maximal number of results stored.
+     *
+     * @return Capacity of this cache.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of results currently stored.
+     *
+     * @return Number of results.
+     */
+    public int size() {
+        synchronized (this) {
+            return results.size();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found a result.
+     *
+     * @return Number of hits.
+     */
+    public long getHits() {
+        synchronized (this) {
+            return hits;
+        }
+    }
+
+    /**
+     * Returns the number of lookups that did not find a result.
+     *
+     * @return Number of misses.
+     */
+    public long getMisses() {
+        synchronized (this) {
+            return misses;
+        }
+    }
+
+    /**
+     * Returns the number of results evicted due to the capacity.
+     *
+     * @return Number of evictions.
+     */
+    public long getEvictions() {
+        synchronized (this) {
+            return evictions;
+        }
+    }
+}
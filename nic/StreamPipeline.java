@@ -0,0 +1,519 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Pipeline that executes a computer on each line of a stream of
+ * inputs in three stages: a reader thread that splits the input into
+ * batches of lines without any regular expressions, the calling
+ * thread that executes the lines, and a writer thread that writes the
+ * outputs of a batch in a single chunk. The stages pass a fixed
+ * number of reusable batches through bounded queues, so a slow stage
+ * blocks the others and the memory used is independent of the length
+ * of the stream.
+ *
+ * <p>
+ *
+ * Given several computers, the calling thread instead hands out the
+ * batches to a pool of workers, each executing a batch on a computer
+ * that no other worker uses, and passes on the executed batches in
+ * the order of the input.
+ *
+ * <p>
+ *
+ * Lines are separated by a line feed, optionally preceded by a
+ * carriage return, and the last line need not be terminated. Each
+ * output is terminated by a line feed.
+ */
+final class StreamPipeline {
+
+    /**
+     * Number of bytes read from the input channel at a time.
+     */
+    final static int READSIZE = 1 << 16;
+
+    /**
+     * Number of input bytes in a batch after which the batch is
+     * passed on.
+     */
+    final static int BATCHBYTES = 1 << 16;
+
+    /**
+     * Maximal number of lines in a batch.
+     */
+    final static int BATCHLINES = 1 << 12;
+
+    /**
+     * Number of batches in the pipeline per computer.
+     */
+    final static int BATCHES = 4;
+
+    /**
+     * Batch of lines of input and their outputs.
+     */
+    final static class Batch {
+
+        /**
+         * Bytes of the lines of input without separators.
+         */
+        byte[] input = new byte[BATCHBYTES + READSIZE];
+
+        /**
+         * Start of each line of input, followed by the end of the
+         * last line.
+         */
+        final int[] starts = new int[BATCHLINES + 1];
+
+        /**
+         * Number of complete lines of input.
+         */
+        int lines;
+
+        /**
+         * Number of bytes of input, including a trailing incomplete
+         * line.
+         */
+        int inputLength;
+
+        /**
+         * Outputs terminated by line feeds.
+         */
+        byte[] output = new byte[BATCHBYTES];
+
+        /**
+         * Number of bytes of output.
+         */
+        int outputLength;
+
+        /**
+         * Indicates that this is the last batch of the stream.
+         */
+        boolean last;
+
+        /**
+         * Failure of the execution on a line of this batch, or null.
+         */
+        Throwable failure;
+
+        /**
+         * Empties this batch.
+         */
+        void clear() {
+            lines = 0;
+            inputLength = 0;
+            outputLength = 0;
+            last = false;
+            failure = null;
+            starts[0] = 0;
+        }
+
+        /**
+         * Appends a byte of input to the current line.
+         *
+         * @param b Byte of input.
+         */
+        void append(final byte b) {
+            if (inputLength == input.length) {
+                final byte[] tmp = new byte[2 * input.length];
+                System.arraycopy(input, 0, tmp, 0, inputLength);
+                input = tmp;
+            }
+            input[inputLength++] = b;
+        }
+
+        /**
+         * Ends the current line of input. A trailing carriage return
+         * is dropped.
+         */
+        void endLine() {
+            if (inputLength > starts[lines]
+                && input[inputLength - 1] == '\r') {
+                inputLength--;
+            }
+            lines++;
+            starts[lines] = inputLength;
+        }
+
+        /**
+         * Makes sure that there is room for the given number of bytes
+         * of output.
+         *
+         * @param n Number of bytes.
+         */
+        void reserve(final int n) {
+            if (outputLength + n > output.length) {
+                final byte[] tmp =
+                    new byte[Math.max(2 * output.length, outputLength + n)];
+                System.arraycopy(output, 0, tmp, 0, outputLength);
+                output = tmp;
+            }
+        }
+    }
+
+    /**
+     * Executed computers, where each is used by one thread at a time.
+     */
+    final Computer[] computers;
+
+    /**
+     * Source of inputs.
+     */
+    final ReadableByteChannel in;
+
+    /**
+     * Destination of outputs.
+     */
+    final WritableByteChannel out;
+
+    /**
+     * Batches that are not used by any stage.
+     */
+    final BlockingQueue<Batch> free;
+
+    /**
+     * Batches of inputs waiting to be executed.
+     */
+    final BlockingQueue<Batch> read;
+
+    /**
+     * Batches of outputs waiting to be written.
+     */
+    final BlockingQueue<Batch> executed;
+
+    /**
+     * Failure of the reader, or null.
+     */
+    volatile IOException readFailure;
+
+    /**
+     * Failure of the writer, or null.
+     */
+    volatile IOException writeFailure;
+
+    /**
+     * Failure of the execution, or null.
+     */
+    Throwable executeFailure;
+
+    /**
+     * Creates a pipeline that executes the given computer on each
+     * line of input.
+     *
+     * @param computer Executed computer.
+     * @param in Source of inputs.
+     * @param out Destination of outputs.
+     */
+    StreamPipeline(final Computer computer, final ReadableByteChannel in,
+                   final WritableByteChannel out) {
+        this(new Computer[] {computer}, in, out);
+    }
+
+    /**
+     * Creates a pipeline that executes the given computers in
+     * parallel on the lines of input, with one worker thread per
+     * computer if there are several.
+     *
+     * @param computers Executed computers.
+     * @param in Source of inputs.
+     * @param out Destination of outputs.
+     */
+    StreamPipeline(final Computer[] computers, final ReadableByteChannel in,
+                   final WritableByteChannel out) {
+        this.computers = computers;
+        this.in = in;
+        this.out = out;
+        final int batches = BATCHES * computers.length;
+        this.free = new ArrayBlockingQueue<Batch>(batches);
+        this.read = new ArrayBlockingQueue<Batch>(batches);
+        this.executed = new ArrayBlockingQueue<Batch>(batches);
+        for (int i = 0; i < batches; i++) {
+            free.add(new Batch());
+        }
+    }
+
+    /**
+     * Reads the input and passes it on in batches of lines. The last
+     * batch is passed on even if reading fails.
+     *
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    void readStage() throws InterruptedException {
+        final ByteBuffer bb = ByteBuffer.allocate(READSIZE);
+        Batch batch = free.take();
+        batch.clear();
+        try {
+            while (in.read(bb) >= 0) {
+                bb.flip();
+                while (bb.hasRemaining()) {
+                    final byte b = bb.get();
+                    if (b == '\n') {
+                        batch.endLine();
+                        if (batch.lines == BATCHLINES
+                            || batch.inputLength >= BATCHBYTES) {
+                            read.put(batch);
+                            batch = free.take();
+                            batch.clear();
+                        }
+                    } else {
+                        batch.append(b);
+                    }
+                }
+                bb.clear();
+            }
+            if (batch.inputLength > batch.starts[batch.lines]) {
+                batch.endLine();
+            }
+        } catch (final IOException ioe) {
+            readFailure = ioe;
+        }
+        batch.last = true;
+        read.put(batch);
+    }
+
+    /**
+     * Writes the outputs of each batch. After a failure, the
+     * remaining batches are only recycled, so the other stages are
+     * never blocked.
+     *
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    void writeStage() throws InterruptedException {
+        boolean last;
+        do {
+            final Batch batch = executed.take();
+            if (writeFailure == null) {
+                try {
+                    final ByteBuffer bb =
+                        ByteBuffer.wrap(batch.output, 0, batch.outputLength);
+                    while (bb.hasRemaining()) {
+                        out.write(bb);
+                    }
+                } catch (final IOException ioe) {
+                    writeFailure = ioe;
+                }
+            }
+
+            // The batch may be reused as soon as it is passed on.
+            last = batch.last;
+            free.put(batch);
+        } while (!last);
+    }
+
+    /**
+     * Executes the lines of the given batch on the given computer. If
+     * the execution on a line fails, then the failure is recorded in
+     * the batch and the outputs of the preceding lines are kept.
+     *
+     * @param computer Executed computer.
+     * @param batch Batch of lines.
+     */
+    static void execute(final Computer computer, final Batch batch) {
+        final int max = computer.getMAXOUTPUTLENGTH() + 1;
+        try {
+            for (int i = 0; i < batch.lines; i++) {
+                batch.reserve(max);
+                final int start = batch.starts[i];
+                batch.outputLength +=
+                    computer.executeHex(batch.input, start,
+                                        batch.starts[i + 1] - start,
+                                        batch.output, batch.outputLength);
+                batch.output[batch.outputLength++] = '\n';
+            }
+        } catch (final NICException | RuntimeException | Error e) {
+            batch.failure = e;
+        }
+    }
+
+    /**
+     * Passes on an executed batch. If the execution failed, then the
+     * failure is recorded and the batch is passed on as the last
+     * batch.
+     *
+     * @param batch Executed batch.
+     * @return True if this was the last batch and false otherwise.
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    boolean passOn(final Batch batch) throws InterruptedException {
+        if (batch.failure != null) {
+            executeFailure = batch.failure;
+            batch.last = true;
+        }
+        final boolean last = batch.last;
+        executed.put(batch);
+        return last;
+    }
+
+    /**
+     * Executes the lines of each batch. If there are several
+     * computers, then the batches are executed in parallel, with at
+     * most two batches per computer in progress at any time.
+     *
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    void executeStage() throws InterruptedException {
+        if (computers.length == 1) {
+            Batch batch;
+            do {
+                batch = read.take();
+                execute(computers[0], batch);
+            } while (!passOn(batch));
+            return;
+        }
+
+        final BlockingQueue<Computer> idle =
+            new ArrayBlockingQueue<Computer>(computers.length);
+        for (final Computer computer : computers) {
+            idle.add(computer);
+        }
+        final ExecutorService executor =
+            Executors.newFixedThreadPool(computers.length);
+
+        // Batches in the order of the input that are submitted but
+        // not yet passed on.
+        final Deque<Future<Batch>> pending = new ArrayDeque<Future<Batch>>();
+        try {
+            boolean last;
+            do {
+                final Batch batch = read.take();
+                last = batch.last;
+                pending.add(executor.submit(() -> {
+                            final Computer computer = idle.take();
+                            try {
+                                execute(computer, batch);
+                            } finally {
+                                idle.add(computer);
+                            }
+                            return batch;
+                        }));
+
+                // Pass on the oldest batches that are done, and wait
+                // for the oldest when too many are in progress.
+                while (!pending.isEmpty()
+                       && (last || pending.peek().isDone()
+                           || pending.size() > 2 * computers.length)) {
+                    if (passOn(executed(pending.remove()))) {
+                        return;
+                    }
+                }
+            } while (!last);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for a batch executed by a worker.
+     *
+     * @param future Batch submitted to a worker.
+     * @return Executed batch.
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    private static Batch executed(final Future<Batch> future)
+        throws InterruptedException {
+        try {
+            return future.get();
+        } catch (final ExecutionException ee) {
+
+            // The task only fails if its worker is interrupted.
+            final InterruptedException ie =
+                new InterruptedException("Worker was interrupted!");
+            ie.initCause(ee.getCause());
+            throw ie;
+        }
+    }
+
+    /**
+     * Starts a daemon thread that runs the given stage.
+     *
+     * @param name Name of thread.
+     * @param stage Stage to run.
+     * @return Started thread.
+     */
+    private static Thread start(final String name, final Stage stage) {
+        final Thread thread = new Thread(() -> {
+                try {
+                    stage.run();
+                } catch (final InterruptedException ie) {
+                    // The pipeline is abandoned.
+                }
+            }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Stage of the pipeline run by a thread of its own.
+     */
+    private interface Stage {
+
+        /**
+         * Runs the stage.
+         *
+         * @throws InterruptedException If the thread is interrupted.
+         */
+        void run() throws InterruptedException;
+    }
+
+    /**
+     * Runs the pipeline until all input is executed and all output is
+     * written, or until a stage fails. The computer is executed by
+     * the calling thread. If the execution fails, then the outputs of
+     * the preceding lines are written and the reader is abandoned by
+     * interrupting it, which closes an interruptible input channel.
+     *
+     * @throws NICException If the execution on an input is
+     * interrupted or fails, or if the calling thread is interrupted.
+     * @throws IOException If the input can not be read or the output
+     * can not be written.
+     */
+    void run() throws NICException, IOException {
+        final Thread reader = start("StreamPipeline-reader", this::readStage);
+        final Thread writer = start("StreamPipeline-writer", this::writeStage);
+        try {
+            executeStage();
+            writer.join();
+        } catch (final InterruptedException ie) {
+            writer.interrupt();
+            Thread.currentThread().interrupt();
+            throw new NICException("Interrupted while executing stream!",
+                                   ie);
+        } finally {
+            if (reader.isAlive()) {
+                reader.interrupt();
+            }
+        }
+
+        if (executeFailure instanceof NICException) {
+            throw (NICException) executeFailure;
+        } else if (executeFailure instanceof RuntimeException) {
+            throw (RuntimeException) executeFailure;
+        } else if (executeFailure instanceof Error) {
+            throw (Error) executeFailure;
+        }
+        if (readFailure != null) {
+            throw readFailure;
+        }
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+    }
+}
@@ -0,0 +1,486 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Engine that executes threaded code. Each instruction is turned
+ * into a small operation object where the register indices, the
+ * constant, and the address of the next instruction are resolved
+ * once and for all, so executing the program is a matter of walking
+ * from one operation to the next. This requires much less
+ * preparation than translating the program to JVM bytecode, but is
+ * not as fast once the translated program has been optimized by the
+ * JVM.
+ *
+ * <p>
+ *
+ * The operations of the program are prepared when the program is
+ * set. Operations are indexed like the cache of decoded instructions
+ * of the processor, and an operation is only used if it was built
+ * from the decoded instruction currently in the cache. Since the
+ * memory invalidates the cache whenever it is written, this means
+ * that self-modifying programs are executed correctly.
+ */
+class ThreadedEngine implements Engine {
+
+    /**
+     * Operation of threaded code, i.e., a pre-bound instruction.
+     */
+    abstract static class Op {
+
+        /**
+         * Decoded instruction from which this operation was built.
+         */
+        final DecodedInstruction decoded;
+
+        /**
+         * Address of the following instruction.
+         */
+        final int next;
+
+        /**
+         * Creates an operation.
+         *
+         * @param decoded Decoded instruction.
+         * @param next Address of the following instruction.
+         */
+        Op(final DecodedInstruction decoded, final int next) {
+            this.decoded = decoded;
+            this.next = next;
+        }
+
+        /**
+         * Executes this operation on the given registers.
+         *
+         * @param r General purpose registers.
+         * @return Address of the next instruction, or the negated
+         * status code if the processor stops.
+         */
+        abstract int execute(final int[] r);
+    }
+
+    /**
+     * Executed processor.
+     */
+    protected final Processor processor;
+
+    /**
+     * Block-size of a complete instruction.
+     */
+    protected final int INSTRUCTIONBLOCKS;
+
+    /**
+     * Cache of decoded instructions of the processor, or null if the
+     * processor has none.
+     */
+    protected final InstructionCache cache;
+
+    /**
+     * Operations indexed like the cache of decoded instructions.
+     */
+    protected final Op[] ops;
+
+    /**
+     * Operations of the program indexed like the cache of decoded
+     * instructions, where slots outside the program are null.
+     */
+    protected Op[] prepared;
+
+    /**
+     * Creates an engine for the given processor.
+     *
+     * @param processor Executed processor.
+     */
+    ThreadedEngine(final Processor processor) {
+        this.processor = processor;
+        this.INSTRUCTIONBLOCKS = processor.INSTRUCTIONBLOCKS;
+        this.cache = processor.cache;
+        if (cache == null) {
+            this.ops = null;
+        } else {
+            this.ops = new Op[cache.slots.length];
+        }
+    }
+
+    @Override
+    public void setProgram(final ProgramImage image) {
+        if (cache == null) {
+            return;
+        }
+
+        final int BLOCKSIZE = processor.BLOCKSIZE;
+        final int programBlocks = image.programBlocks;
+
+        // Build the operations of all complete instructions of the
+        // program in the same way as the processor reads them.
+        prepared = new Op[ops.length];
+        for (int p = 0; p + INSTRUCTIONBLOCKS <= programBlocks;
+             p += INSTRUCTIONBLOCKS) {
+
+            long instruction = 0;
+            for (int i = 0; i < INSTRUCTIONBLOCKS; i++) {
+                instruction = (instruction << BLOCKSIZE) | image.get(p + i);
+            }
+
+            prepared[p / INSTRUCTIONBLOCKS] =
+                thread(p, processor.decode(instruction));
+        }
+    }
+
+    @Override
+    public void reset() {
+
+        // The memory contains the program, so the decoded
+        // instructions of the prepared operations are valid.
+        if (prepared != null) {
+            for (int i = 0; i < prepared.length; i++) {
+                final Op op = prepared[i];
+                if (op != null) {
+                    cache.put(i * INSTRUCTIONBLOCKS, op.decoded);
+                    ops[i] = op;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long run(final long maxInstructions) {
+        long n = 0;
+
+        if (maxInstructions <= 0 || processor.sr.get() != Processor.SUCCESS) {
+            return n;
+        }
+        if (cache == null) {
+            return processor.run(maxInstructions);
+        }
+
+        // Complete an instruction that has already been fetched.
+        if (processor.nr.get() == Processor.EXEC) {
+            n = processor.run(1);
+            if (processor.sr.get() != Processor.SUCCESS) {
+                return n;
+            }
+        }
+
+        final int NOREGISTERS = processor.NOREGISTERS;
+        final int[] r = processor.locals();
+        final TraceRecorder tracer = processor.tracer;
+
+        int p = (int) processor.pc.get();
+        Op op = null;
+        int status = Processor.SUCCESS;
+        int next = Processor.FETCH;
+
+        while (n < maxInstructions) {
+
+            // Fetch.
+            if (p % INSTRUCTIONBLOCKS != 0) {
+                status = Processor.BAD_ALIGNMENT;
+                next = Processor.EXEC;
+                break;
+            }
+            op = opAt(p);
+            n++;
+
+            // Execute.
+            if (tracer != null) {
+                tracer.executing(processor, r, p, op.decoded);
+            }
+            final int q = op.execute(r);
+            if (tracer != null) {
+                tracer.executed(processor, r);
+            }
+            if (q < 0) {
+                status = -q;
+                p = op.next;
+                break;
+            }
+            p = q;
+        }
+
+        // Write back the state kept in local variables.
+        for (int i = 0; i < NOREGISTERS; i++) {
+            processor.reg[i].set(r[i]);
+        }
+        if (op != null) {
+            processor.decoded = op.decoded;
+            processor.ir.set(op.decoded.ir);
+        }
+        processor.pc.set(p);
+        processor.nr.set(next);
+        processor.sr.set(status);
+
+        return n;
+    }
+
+    @Override
+    public Engine duplicate(final Processor processor) {
+        final ThreadedEngine engine = new ThreadedEngine(processor);
+
+        // Operations refer to their processor, so they are rebuilt
+        // from the shared decoded instructions.
+        if (prepared != null && engine.cache != null) {
+            engine.prepared = new Op[prepared.length];
+            for (int i = 0; i < prepared.length; i++) {
+                if (prepared[i] != null) {
+                    engine.prepared[i] =
+                        engine.thread(i * INSTRUCTIONBLOCKS,
+                                      prepared[i].decoded);
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Returns the operation of the instruction at the given aligned
+     * address, and builds it if the instruction has been written
+     * since the operation was built.
+     *
+     * @param p Aligned address of instruction.
+     * @return Operation.
+     */
+    protected Op opAt(final int p) {
+        final DecodedInstruction d = cache.get(p);
+        if (d != null) {
+            final Op op = ops[p / INSTRUCTIONBLOCKS];
+            if (op != null && op.decoded == d) {
+                return op;
+            }
+        }
+
+        final Op op = thread(p, processor.decodeAt(p));
+        if (p < cache.MEMORYCELLS) {
+            ops[p / INSTRUCTIONBLOCKS] = op;
+        }
+        return op;
+    }
+
+    /**
+     * Builds the operation of the given decoded instruction at the
+     * given address.
+     *
+     * @param p Address of instruction.
+     * @param d Decoded instruction.
+     * @return Operation.
+     */
+    protected Op thread(final int p, final DecodedInstruction d) {
+        final Processor cpu = processor;
+        final int WORDBLOCKS = cpu.WORDBLOCKS;
+        final int WORDMASK = cpu.WORDMASK;
+        final int next = (p + INSTRUCTIONBLOCKS) % cpu.mem.getMEMORYCELLS();
+
+        final int a = d.field1;
+        final int b = d.field2;
+        final int c = d.field3;
+        final int k = d.constant;
+
+        switch (d.opCode) {
+        case Processor.opHalt:
+            return stop(d, next, Processor.HALT);
+        case Processor.opLoadMem:
+            if (k % WORDBLOCKS != 0) {
+                return stop(d, next, Processor.BAD_ALIGNMENT);
+            }
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    r[a] = cpu.readInt(k, WORDBLOCKS) & WORDMASK;
+                    return next;
+                }
+            };
+        case Processor.opLoadConst:
+            final int word = k & WORDMASK;
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    r[a] = word;
+                    return next;
+                }
+            };
+        case Processor.opLoadReg:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    if (r[c] % WORDBLOCKS != 0) {
+                        return -Processor.BAD_ALIGNMENT;
+                    }
+                    r[b] = cpu.readInt(r[c], WORDBLOCKS) & WORDMASK;
+                    return next;
+                }
+            };
+        case Processor.opStore:
+            if (k % WORDBLOCKS != 0) {
+                return stop(d, next, Processor.BAD_ALIGNMENT);
+            }
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    cpu.writeInt(k, r[a], WORDBLOCKS);
+                    return next;
+                }
+            };
+        case Processor.opStoreReg:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    if (r[c] % WORDBLOCKS != 0) {
+                        return -Processor.BAD_ALIGNMENT;
+                    }
+                    cpu.writeInt(r[c], r[b], WORDBLOCKS);
+                    return next;
+                }
+            };
+        case Processor.opMove:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    r[c] = r[b];
+                    return next;
+                }
+            };
+        case Processor.opAddInt:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    r[a] = (r[b] + r[c]) & WORDMASK;
+                    return next;
+                }
+            };
+        case Processor.opAddConst:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    r[a] = (r[a] + k) & WORDMASK;
+                    return next;
+                }
+            };
+        case Processor.opMulInt:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    r[a] = (r[b] * r[c]) & WORDMASK;
+                    return next;
+                }
+            };
+        case Processor.opSubInt:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    r[a] = (r[b] - r[c]) & WORDMASK;
+                    return next;
+                }
+            };
+        case Processor.opRShift:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    r[a] = cpu.shifted(r[b], r[c]);
+                    return next;
+                }
+            };
+        case Processor.opAND:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    r[a] = r[b] & r[c];
+                    return next;
+                }
+            };
+        case Processor.opOR:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    r[a] = r[b] | r[c];
+                    return next;
+                }
+            };
+        case Processor.opXOR:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    r[a] = r[b] ^ r[c];
+                    return next;
+                }
+            };
+        case Processor.opJump:
+            return jump(d, next);
+        default:
+            return stop(d, next, Processor.BAD_INSTRUCTION);
+        }
+    }
+
+    /**
+     * Builds an operation that always stops the processor with the
+     * given status.
+     *
+     * @param d Decoded instruction.
+     * @param next Address of the following instruction.
+     * @param status Status code.
+     * @return Operation.
+     */
+    protected Op stop(final DecodedInstruction d, final int next,
+                      final int status) {
+        return new Op(d, next) {
+            int execute(final int[] r) {
+                return -status;
+            }
+        };
+    }
+
+    /**
+     * Builds the operation of a jump instruction, where the condition
+     * is resolved when the operation is built.
+     *
+     * @param d Decoded jump instruction.
+     * @param next Address of the following instruction.
+     * @return Operation.
+     */
+    protected Op jump(final DecodedInstruction d, final int next) {
+        final int a = d.field1;
+        final int target = d.target & processor.WORDMASK;
+        final int WORDTOP = processor.WORDTOP;
+
+        // Comparing a register with itself always gives the same
+        // result.
+        if (a == 0) {
+            final boolean jumps = processor.jumps(d.condition, 0, 0);
+            final int q = jumps ? target : next;
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    return q;
+                }
+            };
+        }
+
+        // Words are sign extended before they are compared, which
+        // only matters for the strict and non-strict inequalities.
+        switch (d.condition) {
+        case 0:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    return r[a] == r[0] ? target : next;
+                }
+            };
+        case 1:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    return r[a] != r[0] ? target : next;
+                }
+            };
+        case 2:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    return ((r[a] ^ WORDTOP) - WORDTOP)
+                        < ((r[0] ^ WORDTOP) - WORDTOP) ? target : next;
+                }
+            };
+        case 3:
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    return ((r[a] ^ WORDTOP) - WORDTOP)
+                        <= ((r[0] ^ WORDTOP) - WORDTOP) ? target : next;
+                }
+            };
+        default:
+
+            // Remaining conditions are never taken.
+            return new Op(d, next) {
+                int execute(final int[] r) {
+                    return next;
+                }
+            };
+        }
+    }
+}
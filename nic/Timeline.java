@@ -0,0 +1,347 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timeline of the execution of a computer since its most recent
+ * reset, which lets the computer move back to any earlier step, see
+ * {@link Computer#seek(long)}. The position of the computer is the
+ * number of steps, i.e., fetches and executes, since the reset.
+ *
+ * <p>
+ *
+ * Checkpoints of the complete state are taken periodically while the
+ * computer steps. Seeking restores the closest checkpoint at or
+ * before the target and replays the remaining steps, which is
+ * possible since execution is deterministic. Whole instructions are
+ * replayed by the fast loop of the processor and only a final fetch
+ * is stepped. To bound the memory used, every other checkpoint is
+ * dropped and the interval is doubled when there are too many
+ * checkpoints. Thus, the number of replayed steps is bounded by the
+ * interval, which grows linearly with the length of the execution
+ * divided by the maximal number of checkpoints.
+ *
+ * <p>
+ *
+ * When the computer resumes from a stopped position, the user may
+ * have edited its memory or registers, so the steps after the
+ * position are forgotten and a checkpoint of the current state is
+ * taken. Thus, the timeline is meant for interactive use and not
+ * for computers that are stepped through non-interactively.
+ */
+public final class Timeline {
+
+    /**
+     * Initial number of steps between two checkpoints.
+     */
+    final static long INTERVAL = 1 << 12;
+
+    /**
+     * Maximal number of checkpoints.
+     */
+    final static int MAXCHECKPOINTS = 1 << 10;
+
+    /**
+     * Maximal total number of memory cells of all checkpoints.
+     */
+    final static long MAXCHECKPOINTCELLS = 1 << 24;
+
+    /**
+     * Complete state of a computer at a given position.
+     */
+    final static class Checkpoint {
+
+        /**
+         * Position of the checkpoint.
+         */
+        final long position;
+
+        /**
+         * Number of executed instructions.
+         */
+        final long cycles;
+
+        /**
+         * Values of the general purpose registers.
+         */
+        final int[] registers;
+
+        /**
+         * Value of the program counter.
+         */
+        final int pc;
+
+        /**
+         * Value of the instruction register.
+         */
+        final long ir;
+
+        /**
+         * Next move of the processor.
+         */
+        final int next;
+
+        /**
+         * Status of the processor.
+         */
+        final int status;
+
+        /**
+         * Blocks of memory.
+         */
+        final int[] memory;
+
+        /**
+         * Takes a checkpoint of the given computer. This must be
+         * called by the thread executing the computer.
+         *
+         * @param position Position of the computer.
+         * @param computer Computer.
+         */
+        Checkpoint(final long position, final Computer computer) {
+            final Processor processor = computer.processor;
+            this.position = position;
+            this.cycles = computer.cycles;
+            this.registers = new int[processor.NOREGISTERS];
+            for (int i = 0; i < registers.length; i++) {
+                registers[i] = (int) processor.reg[i].get();
+            }
+            this.pc = (int) processor.pc.get();
+            this.ir = processor.ir.get();
+            this.next = processor.getNext();
+            this.status = processor.getStatus();
+            final Memory mem = computer.mem;
+            this.memory = new int[mem.getMEMORYCELLS()];
+            synchronized (mem) {
+                for (int p = 0; p < memory.length; p++) {
+                    memory[p] = mem.get(p);
+                }
+            }
+        }
+
+        /**
+         * Restores the state of the given computer to this
+         * checkpoint. Only the memory cells that differ are written,
+         * so observers are only notified of actual changes.
+         *
+         * @param computer Computer.
+         */
+        void restore(final Computer computer) {
+            final Processor processor = computer.processor;
+            for (int i = 0; i < registers.length; i++) {
+                processor.reg[i].set(registers[i]);
+            }
+            processor.pc.set(pc);
+            processor.ir.set(ir);
+            processor.nr.set(next);
+            processor.sr.set(status);
+            processor.decoded = null;
+            final Memory mem = computer.mem;
+            synchronized (mem) {
+                for (int p = 0; p < memory.length; p++) {
+                    if (mem.get(p) != memory[p]) {
+                        mem.set(p, memory[p]);
+                    }
+                }
+            }
+            computer.cycles = cycles;
+        }
+    }
+
+    /**
+     * Checkpoints in order of increasing positions, where the first
+     * is at the start of the timeline.
+     */
+    private final List<Checkpoint> checkpoints;
+
+    /**
+     * Maximal number of checkpoints of this timeline.
+     */
+    private final int maxCheckpoints;
+
+    /**
+     * Current number of steps between two checkpoints.
+     */
+    private long interval;
+
+    /**
+     * Furthest position reached since the steps after a position were
+     * last forgotten.
+     */
+    private volatile long end;
+
+    /**
+     * Creates a timeline of the given computer that starts at its
+     * current state.
+     *
+     * @param computer Computer.
+     */
+    Timeline(final Computer computer) {
+        this.checkpoints = new ArrayList<Checkpoint>();
+        final long cells = computer.mem.getMEMORYCELLS();
+        this.maxCheckpoints =
+            (int) Math.max(4, Math.min(MAXCHECKPOINTS,
+                                       MAXCHECKPOINTCELLS / cells));
+        clear(computer);
+    }
+
+    /**
+     * Returns the furthest position reached. Positions up to this
+     * position are replayed from checkpoints, whereas seeking beyond
+     * it executes the program further. This may be called by any
+     * thread.
+     *
+     * @return Furthest position.
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the number of checkpoints.
+     *
+     * @return Number of checkpoints.
+     */
+    public int getCheckpoints() {
+        synchronized (checkpoints) {
+            return checkpoints.size();
+        }
+    }
+
+    /**
+     * Forgets all steps and starts over at the current state of the
+     * given computer.
+     *
+     * @param computer Computer.
+     */
+    void clear(final Computer computer) {
+        synchronized (checkpoints) {
+            checkpoints.clear();
+            interval = INTERVAL;
+            end = computer.getPosition();
+            checkpoints.add(new Checkpoint(end, computer));
+        }
+    }
+
+    /**
+     * Adds a checkpoint after the last one and thins out the
+     * checkpoints if there are too many.
+     *
+     * @param checkpoint Checkpoint.
+     */
+    private void add(final Checkpoint checkpoint) {
+        checkpoints.add(checkpoint);
+        if (checkpoints.size() > maxCheckpoints) {
+            int j = 0;
+            for (int i = 0; i < checkpoints.size(); i += 2) {
+                checkpoints.set(j++, checkpoints.get(i));
+            }
+            checkpoints.subList(j, checkpoints.size()).clear();
+            interval *= 2;
+        }
+    }
+
+    /**
+     * Records that the given computer resumes from its current
+     * position, i.e., forgets the steps after the position and takes
+     * a checkpoint of the current state, which may have been edited.
+     * This must be called while the computer is not running.
+     *
+     * @param computer Computer.
+     */
+    void resumed(final Computer computer) {
+        final long position = computer.getPosition();
+        synchronized (checkpoints) {
+            int n = checkpoints.size();
+            while (n > 1 && checkpoints.get(n - 1).position >= position) {
+                checkpoints.remove(--n);
+            }
+            if (checkpoints.get(0).position >= position) {
+                checkpoints.set(0, new Checkpoint(position, computer));
+            } else {
+                add(new Checkpoint(position, computer));
+            }
+            end = position;
+        }
+    }
+
+    /**
+     * Records that the given computer has moved to a new position. A
+     * checkpoint is taken if the position is beyond the end and far
+     * enough from the last checkpoint. This must be called by the
+     * thread executing the computer.
+     *
+     * @param computer Computer.
+     */
+    void moved(final Computer computer) {
+        final long position = computer.getPosition();
+        if (position > end) {
+            synchronized (checkpoints) {
+                end = position;
+                final Checkpoint last =
+                    checkpoints.get(checkpoints.size() - 1);
+                if (position - last.position >= interval) {
+                    add(new Checkpoint(position, computer));
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the given computer to the given position, or to the
+     * position where the processor stops if it stops before. A
+     * position before the start of the timeline is taken to be its
+     * start. This must be called while the computer is not running.
+     *
+     * @param computer Computer.
+     * @param target Position.
+     */
+    void seek(final Computer computer, final long target) {
+        final long position = computer.getPosition();
+
+        // Restore the closest checkpoint unless it is faster to
+        // continue from the current position.
+        Checkpoint checkpoint;
+        final long chunk;
+        synchronized (checkpoints) {
+            chunk = Math.max(1, interval / 2);
+            checkpoint = checkpoints.get(0);
+            for (final Checkpoint c : checkpoints) {
+                if (c.position > target) {
+                    break;
+                }
+                checkpoint = c;
+            }
+        }
+        if (target < position || checkpoint.position > position) {
+            checkpoint.restore(computer);
+        }
+
+        // Replay whole instructions in chunks of at most an interval,
+        // so that checkpoints are still taken beyond the end.
+        long instructions = target / 2 - computer.cycles;
+        while (instructions > 0
+               && computer.getStatus() == Processor.SUCCESS) {
+            final long n =
+                computer.processor.run(Math.min(instructions, chunk));
+            computer.cycles += n;
+            instructions -= n;
+            moved(computer);
+        }
+
+        // Step the final fetch, if any.
+        if (computer.getPosition() < target
+            && computer.getStatus() == Processor.SUCCESS) {
+            computer.move();
+            moved(computer);
+        }
+    }
+}
@@ -0,0 +1,439 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Immutable trace of the most recently executed instructions of a
+ * computer together with its state when the trace was taken, see
+ * {@link Computer#getTrace()}. Steps are numbered by the number of
+ * instructions executed since the most recent reset, and the trace
+ * holds the instructions executed in the steps from {@link
+ * #getFirstStep()} up to {@link #getLastStep()}. The state at any of
+ * these steps is reconstructed by a {@link TraceReplayer} without
+ * executing the program.
+ *
+ * <p>
+ *
+ * A trace is written to a file in a compact binary form, so a failure
+ * can be inspected after the fact. All integers are big-endian.
+ *
+ * <pre>
+ * magic        4 bytes  "NICT"
+ * version      1 byte
+ * BLOCKSIZE    1 byte   bit-size of a block
+ * WORDBLOCKS   1 byte   number of blocks in a word
+ * reserved     1 byte   zero
+ * NOREGISTERS  4 bytes  number of registers
+ * MEMORYCELLS  4 bytes  number of memory cells
+ * records      4 bytes  number of records
+ * first step   8 bytes
+ * first ir     8 bytes  instruction register at the first step
+ * pc, ir, nr, sr       final state of the processor, 4+8+4+4 bytes
+ * registers            final registers, 4 bytes each
+ * memory               final memory, 4 bytes per memory cell
+ * records              each of the form ir (8 bytes), address,
+ *                      destination, old value, new value (4 bytes each)
+ * </pre>
+ */
+public final class Trace {
+
+    /**
+     * Magic number identifying traces in this format.
+     */
+    public final static int MAGIC = 0x4e494354;
+
+    /**
+     * Version of the format.
+     */
+    public final static int VERSION = 1;
+
+    /**
+     * Postfix of files containing traces.
+     */
+    public final static String POSTFIX = ".trace";
+
+    /**
+     * Bit-size of a block.
+     */
+    final int BLOCKSIZE;
+
+    /**
+     * Number of blocks in a word.
+     */
+    final int WORDBLOCKS;
+
+    /**
+     * Step of the oldest record.
+     */
+    final long firstStep;
+
+    /**
+     * Value of the instruction register at the first step.
+     */
+    final long firstIR;
+
+    /**
+     * Instructions of the records, from the oldest.
+     */
+    final long[] irs;
+
+    /**
+     * Remaining parts of the records, from the oldest, see {@link
+     * TraceRecorder}.
+     */
+    final int[] records;
+
+    /**
+     * Registers at the last step.
+     */
+    final int[] registers;
+
+    /**
+     * Program counter at the last step.
+     */
+    final int pc;
+
+    /**
+     * Instruction register at the last step.
+     */
+    final long ir;
+
+    /**
+     * Next move of the processor at the last step.
+     */
+    final int next;
+
+    /**
+     * Status of the processor at the last step.
+     */
+    final int status;
+
+    /**
+     * Memory at the last step.
+     */
+    final int[] memory;
+
+    /**
+     * Creates a trace from the given parts, which are not copied.
+     *
+     * @param BLOCKSIZE Bit-size of a block.
+     * @param WORDBLOCKS Number of blocks in a word.
+     * @param firstStep Step of the oldest record.
+     * @param firstIR Instruction register at the first step.
+     * @param irs Instructions of the records.
+     * @param records Remaining parts of the records.
+     * @param registers Registers at the last step.
+     * @param pc Program counter at the last step.
+     * @param ir Instruction register at the last step.
+     * @param next Next move at the last step.
+     * @param status Status at the last step.
+     * @param memory Memory at the last step.
+     */
+    Trace(final int BLOCKSIZE, final int WORDBLOCKS, final long firstStep,
+          final long firstIR, final long[] irs, final int[] records,
+          final int[] registers, final int pc, final long ir,
+          final int next, final int status, final int[] memory) {
+        this.BLOCKSIZE = BLOCKSIZE;
+        this.WORDBLOCKS = WORDBLOCKS;
+        this.firstStep = firstStep;
+        this.firstIR = firstIR;
+        this.irs = irs;
+        this.records = records;
+        this.registers = registers;
+        this.pc = pc;
+        this.ir = ir;
+        this.next = next;
+        this.status = status;
+        this.memory = memory;
+    }
+
+    /**
+     * Returns the step of the oldest instruction of this trace, i.e.,
+     * the number of instructions executed since the most recent reset
+     * that were not recorded or have been overwritten.
+     *
+     * @return First step.
+     */
+    public long getFirstStep() {
+        return firstStep;
+    }
+
+    /**
+     * Returns the step at which this trace was taken, i.e., the number
+     * of instructions executed since the most recent reset.
+     *
+     * @return Last step.
+     */
+    public long getLastStep() {
+        return firstStep + irs.length;
+    }
+
+    /**
+     * Returns the index of the record of the instruction executed in
+     * the given step.
+     *
+     * @param step Step in this trace.
+     * @return Index of record.
+     */
+    private int index(final long step) {
+        if (step < firstStep || step >= getLastStep()) {
+            throw new IndexOutOfBoundsException("Step is not traced! ("
+                                                + step + ")");
+        }
+        return (int) (step - firstStep);
+    }
+
+    /**
+     * Returns the address of the instruction executed in the given
+     * step.
+     *
+     * @param step Step in this trace.
+     * @return Address of instruction.
+     */
+    public int getAddress(final long step) {
+        return records[TraceRecorder.STRIDE * index(step)
+                       + TraceRecorder.ADDRESS];
+    }
+
+    /**
+     * Returns the instruction executed in the given step.
+     *
+     * @param step Step in this trace.
+     * @return Bit pattern of instruction.
+     */
+    public long getIR(final long step) {
+        return irs[index(step)];
+    }
+
+    /**
+     * Returns the destination of the instruction executed in the
+     * given step, i.e., the index i of the register it writes encoded
+     * as -1 - i, the address of the memory word it writes, or {@link
+     * TraceRecorder#NOWHERE}.
+     *
+     * @param step Step in this trace.
+     * @return Destination of instruction.
+     */
+    public int getDestination(final long step) {
+        return records[TraceRecorder.STRIDE * index(step)
+                       + TraceRecorder.DESTINATION];
+    }
+
+    /**
+     * Returns the value of the destination before the instruction
+     * executed in the given step.
+     *
+     * @param step Step in this trace.
+     * @return Value before the instruction.
+     */
+    public int getOldValue(final long step) {
+        return records[TraceRecorder.STRIDE * index(step)
+                       + TraceRecorder.OLD];
+    }
+
+    /**
+     * Returns the value of the destination after the instruction
+     * executed in the given step.
+     *
+     * @param step Step in this trace.
+     * @return Value after the instruction.
+     */
+    public int getNewValue(final long step) {
+        return records[TraceRecorder.STRIDE * index(step)
+                       + TraceRecorder.NEW];
+    }
+
+    /**
+     * Returns the bit-size of a block.
+     *
+     * @return Bit-size of a block.
+     */
+    public int getBLOCKSIZE() {
+        return BLOCKSIZE;
+    }
+
+    /**
+     * Returns the number of blocks in a word.
+     *
+     * @return Number of blocks in a word.
+     */
+    public int getWORDBLOCKS() {
+        return WORDBLOCKS;
+    }
+
+    /**
+     * Returns the number of general purpose registers.
+     *
+     * @return Number of registers.
+     */
+    public int getNOREGISTERS() {
+        return registers.length;
+    }
+
+    /**
+     * Returns the number of memory cells.
+     *
+     * @return Number of memory cells.
+     */
+    public int getMEMORYCELLS() {
+        return memory.length;
+    }
+
+    /**
+     * Writes this trace to the given file.
+     *
+     * @param file Destination file.
+     * @throws NICException If the file can not be written.
+     */
+    public void write(final File file) throws NICException {
+        try (DataOutputStream dos =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(file)))) {
+
+            dos.writeInt(MAGIC);
+            dos.writeByte(VERSION);
+            dos.writeByte(BLOCKSIZE);
+            dos.writeByte(WORDBLOCKS);
+            dos.writeByte(0);
+            dos.writeInt(registers.length);
+            dos.writeInt(memory.length);
+            dos.writeInt(irs.length);
+            dos.writeLong(firstStep);
+            dos.writeLong(firstIR);
+
+            dos.writeInt(pc);
+            dos.writeLong(ir);
+            dos.writeInt(next);
+            dos.writeInt(status);
+            for (final int value : registers) {
+                dos.writeInt(value);
+            }
+            for (final int block : memory) {
+                dos.writeInt(block);
+            }
+
+            for (int k = 0; k < irs.length; k++) {
+                dos.writeLong(irs[k]);
+                for (int l = 0; l < TraceRecorder.STRIDE; l++) {
+                    dos.writeInt(records[TraceRecorder.STRIDE * k + l]);
+                }
+            }
+        } catch (final IOException ioe) {
+            throw new NICException("Cannot write " + file.getName() + "!",
+                                   ioe);
+        }
+    }
+
+    /**
+     * Number of bytes of the header and of the final state of the
+     * processor, i.e., everything but the registers, the memory, and
+     * the records.
+     */
+    final static int FIXEDBYTES = 56;
+
+    /**
+     * Number of bytes of a record.
+     */
+    final static int RECORDBYTES = 8 + 4 * TraceRecorder.STRIDE;
+
+    /**
+     * Reads a trace from the given file. The header is checked
+     * against the length of the file before anything is allocated,
+     * and each record is checked to write a register that exists, so
+     * a corrupt file is rejected instead of replayed.
+     *
+     * @param file Source file.
+     * @return Trace.
+     * @throws NICException If the file can not be read or the trace is
+     * malformed.
+     */
+    public static Trace read(final File file) throws NICException {
+        final String fname = file.getName();
+        try (DataInputStream dis =
+             new DataInputStream(new BufferedInputStream(
+                 new FileInputStream(file)))) {
+
+            if (dis.readInt() != MAGIC) {
+                throw new NICException("Wrong trace format! (" + fname + ")");
+            }
+            final int version = dis.readUnsignedByte();
+            if (version != VERSION) {
+                throw new NICException("Unsupported version of trace "
+                                       + "format! (" + version + ")");
+            }
+            final int BLOCKSIZE = dis.readUnsignedByte();
+            final int WORDBLOCKS = dis.readUnsignedByte();
+            dis.readUnsignedByte();
+            final int NOREGISTERS = dis.readInt();
+            final int MEMORYCELLS = dis.readInt();
+            final int length = dis.readInt();
+            final long firstStep = dis.readLong();
+            final long firstIR = dis.readLong();
+            if (BLOCKSIZE == 0 || BLOCKSIZE % 4 != 0 || WORDBLOCKS == 0
+                || BLOCKSIZE * WORDBLOCKS > MachineProfile.MAXWORDSIZE
+                || NOREGISTERS <= 0 || NOREGISTERS > 1L << BLOCKSIZE
+                || MEMORYCELLS <= 0
+                || MEMORYCELLS > MachineProfile.MAXMEMORYCELLS
+                || length < 0 || firstStep < 0) {
+                throw new NICException("Malformed trace header! ("
+                                       + fname + ")");
+            }
+            final long size = FIXEDBYTES + 4L * NOREGISTERS
+                + 4L * MEMORYCELLS + (long) RECORDBYTES * length;
+            if (size != file.length()) {
+                throw new NICException("Trace has wrong length! ("
+                                       + fname + ", " + file.length()
+                                       + " != " + size + ")");
+            }
+
+            final int pc = dis.readInt();
+            final long ir = dis.readLong();
+            final int next = dis.readInt();
+            final int status = dis.readInt();
+            final int[] registers = new int[NOREGISTERS];
+            for (int i = 0; i < NOREGISTERS; i++) {
+                registers[i] = dis.readInt();
+            }
+            final int[] memory = new int[MEMORYCELLS];
+            for (int p = 0; p < MEMORYCELLS; p++) {
+                memory[p] = dis.readInt();
+            }
+
+            final long[] irs = new long[length];
+            final int[] records = new int[TraceRecorder.STRIDE * length];
+            for (int k = 0; k < length; k++) {
+                irs[k] = dis.readLong();
+                for (int l = 0; l < TraceRecorder.STRIDE; l++) {
+                    records[TraceRecorder.STRIDE * k + l] = dis.readInt();
+                }
+                final int destination = records[TraceRecorder.STRIDE * k
+                                                + TraceRecorder.DESTINATION];
+                if (destination != TraceRecorder.NOWHERE
+                    && destination < -NOREGISTERS) {
+                    throw new NICException("Malformed trace record! ("
+                                           + fname + ", " + k + ")");
+                }
+            }
+            return new Trace(BLOCKSIZE, WORDBLOCKS, firstStep, firstIR,
+                             irs, records, registers, pc, ir, next, status,
+                             memory);
+
+        } catch (final IOException ioe) {
+            throw new NICException("Cannot read " + fname + "!", ioe);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Recorder of the most recently executed instructions of a processor
+ * in a preallocated ring buffer. Each record holds the address and
+ * the bit pattern of an instruction and the register or memory word
+ * it writes, with the value before and after the instruction, so
+ * nothing is allocated while recording. A recorder is cleared when
+ * the processor is reset and, like {@link Profiler}, it is updated
+ * without synchronization by the thread running the processor. The
+ * records are inspected through a {@link Trace}.
+ *
+ * <p>
+ *
+ * Unlike counters and profiles, a recorder does not force the
+ * processor to step. The fast loops of {@link Processor#run(long)}
+ * and the threaded engine record each instruction directly, reading
+ * the registers from the local copies they keep.
+ */
+public final class TraceRecorder {
+
+    /**
+     * Number of integers of a record besides the instruction.
+     */
+    final static int STRIDE = 4;
+
+    /**
+     * Offset of the address of the instruction within a record.
+     */
+    final static int ADDRESS = 0;
+
+    /**
+     * Offset of the destination of the instruction within a record,
+     * see {@link Trace#getDestination(long)}.
+     */
+    final static int DESTINATION = 1;
+
+    /**
+     * Offset of the value of the destination before the instruction
+     * within a record.
+     */
+    final static int OLD = 2;
+
+    /**
+     * Offset of the value of the destination after the instruction
+     * within a record.
+     */
+    final static int NEW = 3;
+
+    /**
+     * Destination of an instruction that writes neither a register
+     * nor memory.
+     */
+    public final static int NOWHERE = Integer.MIN_VALUE;
+
+    /**
+     * Instructions of the records.
+     */
+    final long[] irs;
+
+    /**
+     * Remaining parts of the records.
+     */
+    final int[] records;
+
+    /**
+     * Index of the next record.
+     */
+    int next;
+
+    /**
+     * Number of instructions recorded since the recorder was
+     * cleared.
+     */
+    long steps;
+
+    /**
+     * Instruction of the most recently overwritten record, i.e., the
+     * instruction register before the oldest record.
+     */
+    long droppedIR;
+
+    /**
+     * Creates a recorder that holds the given number of records.
+     *
+     * @param capacity Number of records.
+     */
+    public TraceRecorder(final int capacity) {
+        if (capacity <= 0) {
+            throw new Error("Invalid capacity! (" + capacity + ")");
+        }
+        this.irs = new long[capacity];
+        this.records = new int[STRIDE * capacity];
+    }
+
+    /**
+     * Returns the number of records held by this recorder.
+     *
+     * @return Number of records.
+     */
+    public int getCapacity() {
+        return irs.length;
+    }
+
+    /**
+     * Returns the number of instructions recorded since the recorder
+     * was cleared, including those that have been overwritten.
+     *
+     * @return Number of recorded instructions.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Forgets all records. This is constant time.
+     */
+    void clear() {
+        next = 0;
+        steps = 0;
+        droppedIR = 0;
+    }
+
+    /**
+     * Returns the destination of the given instruction, i.e., the
+     * index i of the register it writes encoded as -1 - i, the
+     * address of the memory word it writes, or {@link #NOWHERE}.
+     *
+     * @param d Decoded instruction.
+     * @param pointer Value of the register of the third field, which
+     * is only used if the instruction stores a register at the
+     * address in a register.
+     * @return Destination of instruction.
+     */
+    static int destination(final DecodedInstruction d, final int pointer) {
+        final int r;
+        switch (d.opCode) {
+        case Processor.opLoadMem:
+        case Processor.opLoadConst:
+        case Processor.opAddInt:
+        case Processor.opAddConst:
+        case Processor.opMulInt:
+        case Processor.opSubInt:
+        case Processor.opRShift:
+        case Processor.opAND:
+        case Processor.opOR:
+        case Processor.opXOR:
+            r = d.field1;
+            break;
+        case Processor.opLoadReg:
+            r = d.field2;
+            break;
+        case Processor.opMove:
+            r = d.field3;
+            break;
+        case Processor.opStore:
+            return d.constant;
+        case Processor.opStoreReg:
+            return pointer;
+        default:
+            return NOWHERE;
+        }
+        return -1 - r;
+    }
+
+    /**
+     * Returns the value of the given destination.
+     *
+     * @param processor Processor.
+     * @param destination Destination of an instruction.
+     * @return Value of destination, or zero if there is none.
+     */
+    static int value(final Processor processor, final int destination) {
+        if (destination == NOWHERE) {
+            return 0;
+        } else if (destination < 0) {
+            return (int) processor.reg[-1 - destination].get();
+        } else {
+            return processor.readInt(destination, processor.WORDBLOCKS);
+        }
+    }
+
+    /**
+     * Returns the value of the given destination when the general
+     * purpose registers are kept in the given array.
+     *
+     * @param processor Processor.
+     * @param r Values of the general purpose registers.
+     * @param destination Destination of an instruction.
+     * @return Value of destination, or zero if there is none.
+     */
+    static int value(final Processor processor, final int[] r,
+                     final int destination) {
+        if (destination == NOWHERE) {
+            return 0;
+        } else if (destination < 0) {
+            return r[-1 - destination];
+        } else {
+            return processor.readInt(destination, processor.WORDBLOCKS);
+        }
+    }
+
+    /**
+     * Starts the next record.
+     *
+     * @param address Address of instruction.
+     * @param d Decoded instruction.
+     * @param destination Destination of instruction.
+     * @param old Value of destination before the instruction.
+     */
+    private void start(final int address, final DecodedInstruction d,
+                       final int destination, final int old) {
+        if (steps >= irs.length) {
+            droppedIR = irs[next];
+        }
+        irs[next] = d.ir;
+        final int j = STRIDE * next;
+        records[j + ADDRESS] = address;
+        records[j + DESTINATION] = destination;
+        records[j + OLD] = old;
+    }
+
+    /**
+     * Completes the current record.
+     *
+     * @param value Value of destination after the instruction.
+     */
+    private void complete(final int value) {
+        records[STRIDE * next + NEW] = value;
+        next++;
+        if (next == irs.length) {
+            next = 0;
+        }
+        steps++;
+    }
+
+    /**
+     * Starts a record of the given instruction. This must be followed
+     * by {@link #executed(Processor)} once the instruction has been
+     * executed.
+     *
+     * @param processor Processor about to execute the instruction.
+     * @param address Address of instruction.
+     * @param d Decoded instruction.
+     */
+    void executing(final Processor processor, final int address,
+                   final DecodedInstruction d) {
+        final int pointer = d.opCode == Processor.opStoreReg
+            ? (int) processor.reg[d.field3].get() : 0;
+        final int destination = destination(d, pointer);
+        start(address, d, destination, value(processor, destination));
+    }
+
+    /**
+     * Completes the record of the instruction started by {@link
+     * #executing(Processor, int, DecodedInstruction)}.
+     *
+     * @param processor Processor that executed the instruction.
+     */
+    void executed(final Processor processor) {
+        complete(value(processor, records[STRIDE * next + DESTINATION]));
+    }
+
+    /**
+     * Starts a record of the given instruction when the general
+     * purpose registers are kept in the given array. This must be
+     * followed by {@link #executed(Processor, int[])} once the
+     * instruction has been executed.
+     *
+     * @param processor Processor about to execute the instruction.
+     * @param r Values of the general purpose registers.
+     * @param address Address of instruction.
+     * @param d Decoded instruction.
+     */
+    void executing(final Processor processor, final int[] r,
+                   final int address, final DecodedInstruction d) {
+        final int pointer =
+            d.opCode == Processor.opStoreReg ? r[d.field3] : 0;
+        final int destination = destination(d, pointer);
+        start(address, d, destination, value(processor, r, destination));
+    }
+
+    /**
+     * Completes the record of the instruction started by {@link
+     * #executing(Processor, int[], int, DecodedInstruction)}.
+     *
+     * @param processor Processor that executed the instruction.
+     * @param r Values of the general purpose registers.
+     */
+    void executed(final Processor processor, final int[] r) {
+        complete(value(processor, r, records[STRIDE * next + DESTINATION]));
+    }
+
+    /**
+     * Returns a trace consisting of the records of this recorder and
+     * the current state of the given processor. This must be called
+     * when the processor is not running.
+     *
+     * @param processor Processor of this recorder.
+     * @return Trace.
+     */
+    Trace snapshot(final Processor processor) {
+        final int length = (int) Math.min(steps, irs.length);
+        final long[] tirs = new long[length];
+        final int[] trecords = new int[STRIDE * length];
+
+        // Copy the records in order from the oldest.
+        final int oldest = length < irs.length ? 0 : next;
+        final int head = length - oldest;
+        System.arraycopy(irs, oldest, tirs, 0, head);
+        System.arraycopy(irs, 0, tirs, head, oldest);
+        System.arraycopy(records, STRIDE * oldest, trecords, 0,
+                         STRIDE * head);
+        System.arraycopy(records, 0, trecords, STRIDE * head,
+                         STRIDE * oldest);
+
+        final int[] registers = new int[processor.NOREGISTERS];
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (int) processor.reg[i].get();
+        }
+        final Memory mem = processor.mem;
+        final int[] memory = new int[mem.getMEMORYCELLS()];
+        for (int p = 0; p < memory.length; p++) {
+            memory[p] = mem.get(p);
+        }
+        return new Trace(processor.BLOCKSIZE, processor.WORDBLOCKS,
+                         steps - length, droppedIR, tirs, trecords,
+                         registers, (int) processor.pc.get(),
+                         processor.ir.get(), processor.getNext(),
+                         processor.getStatus(), memory);
+    }
+}
@@ -0,0 +1,222 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic;
+
+/**
+ * Reconstructs the state of a computer at any step of a {@link
+ * Trace} without executing the program. The replayer starts at the
+ * last step of the trace, where the state is known, and moves to
+ * other steps by undoing or redoing the writes of the recorded
+ * instructions, so moving between two steps costs time proportional
+ * to their distance.
+ *
+ * <p>
+ *
+ * Between two instructions the processor is about to fetch and its
+ * status is successful, so the next move and the status only differ
+ * from this at the last step.
+ */
+public final class TraceReplayer {
+
+    /**
+     * Replayed trace.
+     */
+    private final Trace trace;
+
+    /**
+     * Registers at the current step.
+     */
+    private final int[] registers;
+
+    /**
+     * Memory at the current step.
+     */
+    private final int[] memory;
+
+    /**
+     * Bitmask of a block.
+     */
+    private final int BLOCKMASK;
+
+    /**
+     * Current step.
+     */
+    private long step;
+
+    /**
+     * Creates a replayer of the given trace positioned at its last
+     * step.
+     *
+     * @param trace Trace.
+     */
+    public TraceReplayer(final Trace trace) {
+        this.trace = trace;
+        this.registers = trace.registers.clone();
+        this.memory = trace.memory.clone();
+        this.BLOCKMASK = (int) ((1L << trace.BLOCKSIZE) - 1);
+        this.step = trace.getLastStep();
+    }
+
+    /**
+     * Returns the replayed trace.
+     *
+     * @return Trace.
+     */
+    public Trace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Returns the current step.
+     *
+     * @return Current step.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Writes the given value to the given destination.
+     *
+     * @param destination Destination of an instruction, see {@link
+     * Trace#getDestination(long)}.
+     * @param value Value to write.
+     */
+    private void write(final int destination, final int value) {
+        if (destination == TraceRecorder.NOWHERE) {
+            return;
+        } else if (destination < 0) {
+            registers[-1 - destination] = value;
+        } else {
+            final int WORDBLOCKS = trace.WORDBLOCKS;
+            for (int i = 0; i < WORDBLOCKS; i++) {
+                final int offset = (WORDBLOCKS - 1 - i) * trace.BLOCKSIZE;
+                memory[(int) (((long) destination + i) % memory.length)] =
+                    (value >> offset) & BLOCKMASK;
+            }
+        }
+    }
+
+    /**
+     * Moves to the given step.
+     *
+     * @param target Step between the first and last step of the trace.
+     * @throws NICException If the step is not in the trace.
+     */
+    public void seek(final long target) throws NICException {
+        if (target < trace.getFirstStep() || target > trace.getLastStep()) {
+            throw new NICException("Step is not traced! (" + target
+                                   + " not in [" + trace.getFirstStep()
+                                   + ", " + trace.getLastStep() + "])");
+        }
+        while (step > target) {
+            step--;
+            write(trace.getDestination(step), trace.getOldValue(step));
+        }
+        while (step < target) {
+            write(trace.getDestination(step), trace.getNewValue(step));
+            step++;
+        }
+    }
+
+    /**
+     * Moves one step back unless at the first step.
+     *
+     * @return True if the step was taken and false otherwise.
+     */
+    public boolean stepBack() {
+        if (step == trace.getFirstStep()) {
+            return false;
+        }
+        step--;
+        write(trace.getDestination(step), trace.getOldValue(step));
+        return true;
+    }
+
+    /**
+     * Moves one step forward unless at the last step.
+     *
+     * @return True if the step was taken and false otherwise.
+     */
+    public boolean stepForward() {
+        if (step == trace.getLastStep()) {
+            return false;
+        }
+        write(trace.getDestination(step), trace.getNewValue(step));
+        step++;
+        return true;
+    }
+
+    /**
+     * Returns the value of the given register at the current step.
+     *
+     * @param i Index of register.
+     * @return Value of register.
+     */
+    public int getRegister(final int i) {
+        return registers[i];
+    }
+
+    /**
+     * Returns the block at the given address of memory at the current
+     * step. Addresses are reduced modulo the number of memory cells.
+     *
+     * @param p Address in memory.
+     * @return Block at the given address.
+     */
+    public int get(final int p) {
+        return memory[p % memory.length];
+    }
+
+    /**
+     * Returns the value of the program counter at the current step.
+     *
+     * @return Value of program counter.
+     */
+    public int getPC() {
+        if (step == trace.getLastStep()) {
+            return trace.pc;
+        } else {
+            return trace.getAddress(step);
+        }
+    }
+
+    /**
+     * Returns the value of the instruction register at the current
+     * step, i.e., the most recently executed instruction.
+     *
+     * @return Value of instruction register.
+     */
+    public long getIR() {
+        if (step == trace.getLastStep()) {
+            return trace.ir;
+        } else if (step == trace.getFirstStep()) {
+            return trace.firstIR;
+        } else {
+            return trace.getIR(step - 1);
+        }
+    }
+
+    /**
+     * Returns the next move of the processor at the current step.
+     *
+     * @return Next move of the processor.
+     */
+    public int getNext() {
+        return step == trace.getLastStep() ? trace.next : Processor.FETCH;
+    }
+
+    /**
+     * Returns the status of the processor at the current step.
+     *
+     * @return Status of the processor.
+     */
+    public int getStatus() {
+        return step == trace.getLastStep() ? trace.status : Processor.SUCCESS;
+    }
+}
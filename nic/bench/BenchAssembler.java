@@ -0,0 +1,64 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic.bench;
+
+import se.kth.csc.nas.NAS;
+
+/**
+ * Benchmarks of assembling small and very large sources.
+ */
+public final class BenchAssembler {
+
+    /**
+     * Number of comment lines between the instructions of the large
+     * source.
+     */
+    final static int PADDING = 400;
+
+    /**
+     * Returns a large source consisting of the copy program of {@link
+     * BenchComputer} with the given number of comment lines and blank
+     * lines after each line.
+     *
+     * @param padding Number of padding lines after each line.
+     * @return Source.
+     */
+    static String large(final int padding) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String line : BenchComputer.COPY.split("\n")) {
+            sb.append(line).append("  // copy\n");
+            for (int i = 0; i < padding; i++) {
+                sb.append(i % 2 == 0 ? "// padding comment\n" : "\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    static void benchAll() throws Exception {
+        final String small = BenchComputer.COPY;
+        Harness.bench("assembler.small", () -> {
+                return NAS.assemble("small", small, 10, System.err).length();
+            });
+
+        final String large = large(PADDING);
+        final int lines = large.split("\n").length;
+        Harness.bench("assembler.large." + lines, () -> {
+                return NAS.assemble("large", large, 10, System.err).length();
+            });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Harness.header();
+        benchAll();
+    }
+}
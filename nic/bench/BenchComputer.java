@@ -0,0 +1,194 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic.bench;
+
+import java.nio.ByteBuffer;
+
+import se.kth.csc.nas.NAS;
+import se.kth.csc.nic.Computer;
+import se.kth.csc.nic.EngineType;
+
+/**
+ * Benchmarks of executing complete programs on inputs with each type
+ * of execution engine.
+ */
+public final class BenchComputer {
+
+    /**
+     * Program consisting of two nested loops that each count through
+     * all words.
+     */
+    final static String LOOP =
+        "        loadc  r0 0\n"
+        + "        loadc  r1 0\n"
+        + "        loadc  r2 1\n"
+        + "outer:  loadc  r3 0\n"
+        + "inner:  add    r3 r3 r2\n"
+        + "        jumpn  r3 inner\n"
+        + "        add    r1 r1 r2\n"
+        + "        jumpn  r1 outer\n"
+        + "        halt\n";
+
+    /**
+     * Program that multiplies the two words of the input by repeated
+     * addition and writes the product in place of the first word.
+     */
+    final static String MULTIPLY =
+        "        load   r1 0xfe\n"
+        + "        loadr  r2 r1\n"
+        + "        addc   r1 2\n"
+        + "        loadr  r3 r1\n"
+        + "        loadc  r4 0\n"
+        + "        loadc  r5 1\n"
+        + "        loadc  r0 0\n"
+        + "loop:   jumpe  r3 done\n"
+        + "        add    r4 r4 r2\n"
+        + "        sub    r3 r3 r5\n"
+        + "        jump   loop\n"
+        + "done:   load   r1 0xfe\n"
+        + "        storer r4 r1\n"
+        + "        halt\n";
+
+    /**
+     * Program that copies the input word by word to the middle of
+     * memory and then back again.
+     */
+    final static String COPY =
+        "        load   r1 0xfe\n"
+        + "        loadc  r2 0x60\n"
+        + "        loadc  r3 2\n"
+        + "        loadc  r0 0xfe\n"
+        + "there:  loadr  r4 r1\n"
+        + "        storer r4 r2\n"
+        + "        add    r1 r1 r3\n"
+        + "        add    r2 r2 r3\n"
+        + "        jumpn  r1 there\n"
+        + "        move   r2 r0\n"
+        + "        loadc  r1 0x60\n"
+        + "        load   r2 0xfe\n"
+        + "back:   loadr  r4 r1\n"
+        + "        storer r4 r2\n"
+        + "        add    r1 r1 r3\n"
+        + "        add    r2 r2 r3\n"
+        + "        jumpn  r1 back\n"
+        + "        halt\n";
+
+    /**
+     * Input of the multiplication program.
+     */
+    final static String MULTIPLYINPUT = "17ff";
+
+    /**
+     * Input of the copy program consisting of 32 words.
+     */
+    final static String COPYINPUT =
+        "000102030405060708090a0b0c0d0e0f"
+        + "101112131415161718191a1b1c1d1e1f";
+
+    /**
+     * Assembles the given program. The result is trimmed like when an
+     * executable is read from file.
+     *
+     * @param name Name of program.
+     * @param source Assembly source of program.
+     * @return Executable.
+     * @throws Exception If the program can not be assembled.
+     */
+    static String assemble(final String name, final String source)
+        throws Exception {
+        final String executable = NAS.assemble(name, source, 10, System.err);
+        if (executable == null) {
+            throw new Error("Failed to assemble " + name + "!");
+        }
+        return executable.trim();
+    }
+
+    /**
+     * Runs the benchmark of executing the given program on the given
+     * input with each type of execution engine.
+     *
+     * @param name Name of program.
+     * @param source Assembly source of program.
+     * @param input Input to program.
+     * @throws Exception If a benchmark fails.
+     */
+    static void bench(final String name, final String source,
+                      final String input) throws Exception {
+        final String executable = assemble(name, source);
+        for (final EngineType engineType : EngineType.values()) {
+            final Computer computer = new Computer(executable);
+            computer.setEngine(engineType);
+            Harness.bench("computer." + name + "."
+                          + engineType.name().toLowerCase(),
+                          () -> computer.execute(input).length()
+                          + computer.getCycles());
+        }
+    }
+
+    /**
+     * Packs a hexadecimal string as nibbles, two per byte with the
+     * most significant digit first.
+     *
+     * @param hex Hexadecimal string of even length.
+     * @return Packed nibbles.
+     */
+    static byte[] pack(final String hex) {
+        final byte[] packed = new byte[hex.length() / 2];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] =
+                (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return packed;
+    }
+
+    /**
+     * Runs the benchmark of executing the given program on the given
+     * input with each type of execution engine, where the input and
+     * output are packed nibbles instead of hexadecimal text.
+     *
+     * @param name Name of program.
+     * @param source Assembly source of program.
+     * @param input Input to program.
+     * @throws Exception If a benchmark fails.
+     */
+    static void benchBinary(final String name, final String source,
+                            final String input) throws Exception {
+        final String executable = assemble(name, source);
+        final byte[] in = pack(input);
+        final ByteBuffer out = ByteBuffer.allocate(256);
+        for (final EngineType engineType : EngineType.values()) {
+            final Computer computer = new Computer(executable);
+            computer.setEngine(engineType);
+            Harness.bench("computer." + name + ".binary."
+                          + engineType.name().toLowerCase(),
+                          () -> {
+                              out.clear();
+                              return computer.execute(in, 0, in.length, out)
+                                  + computer.getCycles();
+                          });
+        }
+    }
+
+    /**
+     * Runs the benchmarks of all programs.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    static void benchAll() throws Exception {
+        bench("loop", LOOP, "");
+        bench("multiply", MULTIPLY, MULTIPLYINPUT);
+        bench("copy", COPY, COPYINPUT);
+        benchBinary("multiply", MULTIPLY, MULTIPLYINPUT);
+        benchBinary("copy", COPY, COPYINPUT);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Harness.header();
+        benchAll();
+    }
+}
@@ -0,0 +1,117 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic.bench;
+
+import se.kth.csc.nic.Memory;
+import se.kth.csc.nic.PackedMemory;
+import se.kth.csc.nic.Processor;
+
+/**
+ * Benchmarks of the memory backends, both of individual accesses and
+ * of stepping a processor through a small loop.
+ */
+public final class BenchMemory {
+
+    /**
+     * Program that increments a register until it wraps around to
+     * zero, and stores the register in memory in each iteration.
+     *
+     * <pre>
+     *        loadc r1 0
+     *        loadc r2 1
+     *        loadc r0 0
+     * loop:  add   r1 r1 r2
+     *        store r1 0x80
+     *        jumpn r1 loop
+     *        halt
+     * </pre>
+     */
+    final static String PROGRAM = "21002201200071124180f10d0000";
+
+    /**
+     * Input of the size used by typical tests.
+     */
+    final static String INPUT = "0123456789abcdef0123456789abcdef";
+
+    /**
+     * Address where the input is loaded, i.e., just before the word
+     * pointing to the input as the computer does.
+     */
+    final static int INPUTSTART = 0xfe - INPUT.length();
+
+    /**
+     * Steps the processor through the program once and returns the
+     * number of steps taken.
+     *
+     * @param processor Processor connected to a memory containing
+     * the program.
+     * @return Number of steps taken.
+     */
+    static long run(final Processor processor) {
+        long steps = 0;
+        processor.reset();
+        while (processor.getStatus() == Processor.SUCCESS) {
+            processor.step();
+            steps++;
+        }
+        return steps;
+    }
+
+    /**
+     * Runs the benchmarks of the given memory.
+     *
+     * @param name Name of the memory backend.
+     * @param mem Memory.
+     * @throws Exception If a benchmark fails.
+     */
+    static void bench(final String name, final Memory mem)
+        throws Exception {
+        final int MEMORYCELLS = mem.getMEMORYCELLS();
+
+        Harness.bench("memory." + name + ".get", () -> {
+                long acc = 0;
+                for (int p = 0; p < MEMORYCELLS; p++) {
+                    acc += mem.get(p);
+                }
+                return acc;
+            });
+        Harness.bench("memory." + name + ".set", () -> {
+                for (int p = 0; p < MEMORYCELLS; p++) {
+                    mem.set(p, p);
+                }
+                return mem.get(1);
+            });
+        Harness.bench("memory." + name + ".load", () -> {
+                mem.load(INPUTSTART, INPUT);
+                return mem.get(INPUTSTART);
+            });
+        Harness.bench("memory." + name + ".read", () -> {
+                return mem.read(INPUTSTART, 0xfe).length();
+            });
+
+        mem.clear();
+        mem.load(0, PROGRAM);
+        final Processor processor = new Processor(mem, 2, 16);
+        Harness.bench("memory." + name + ".loop", () -> run(processor));
+    }
+
+    /**
+     * Runs the benchmarks of all memory backends.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    static void benchAll() throws Exception {
+        bench("cells", new Memory(256, 4));
+        bench("packed", new PackedMemory(256, 4));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Harness.header();
+        benchAll();
+    }
+}
@@ -0,0 +1,128 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic.bench;
+
+import se.kth.csc.nic.PackedMemory;
+import se.kth.csc.nic.Processor;
+
+/**
+ * Benchmarks of fetching and executing individual instructions. For
+ * each operation code the lower half of memory is filled with copies
+ * of a single instruction between an instruction that points a
+ * register to the upper half of memory and a jump back to the
+ * start. Thus the processor executes mostly the same instruction
+ * over and over, and all memory writes end up in the upper half of
+ * memory. Stepping works regardless of the status of the processor,
+ * so this works even for halt.
+ */
+public final class BenchProcessor {
+
+    /**
+     * Names and representative instructions of the operation codes.
+     * Memory operations use aligned addresses in the upper half of
+     * memory, and register r3 holds such an address.
+     */
+    final static String[][] INSTRUCTIONS = {
+        {"halt",   "0000"},
+        {"load",   "1180"},
+        {"loadc",  "2112"},
+        {"loadr",  "3013"},
+        {"store",  "4180"},
+        {"storer", "5013"},
+        {"move",   "6012"},
+        {"add",    "7123"},
+        {"addc",   "8102"},
+        {"mul",    "9123"},
+        {"sub",    "a123"},
+        {"shift",  "b123"},
+        {"and",    "c123"},
+        {"or",     "d123"},
+        {"xor",    "e123"},
+        {"jumpn",  "f101"}
+    };
+
+    /**
+     * Instruction that points register r3 to the upper half of
+     * memory.
+     */
+    final static String PROLOGUE = "2380";
+
+    /**
+     * Instruction that jumps back to the start of memory.
+     */
+    final static String EPILOGUE = "f000";
+
+    /**
+     * Number of instructions executed per operation.
+     */
+    final static int REPEAT = 64;
+
+    /**
+     * Creates a processor with the lower half of memory filled with
+     * copies of the given instruction, see the class comment.
+     *
+     * @param instruction Instruction in hexadecimal.
+     * @return Processor.
+     * @throws Exception If the instruction can not be loaded.
+     */
+    static Processor processor(final String instruction) throws Exception {
+        final PackedMemory mem = new PackedMemory(256, 4);
+        final int size = instruction.length();
+        final int half = mem.getMEMORYCELLS() / 2;
+        mem.load(0, PROLOGUE);
+        for (int p = size; p < half - size; p += size) {
+            mem.load(p, instruction);
+        }
+        mem.load(half - size, EPILOGUE);
+        final Processor processor = new Processor(mem, 2, 16);
+        processor.reset();
+        return processor;
+    }
+
+    /**
+     * Runs the benchmarks of all operation codes.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    static void benchAll() throws Exception {
+        final Processor fetcher = processor("0000");
+        Harness.bench("processor.fetch", () -> {
+                for (int i = 0; i < REPEAT; i++) {
+                    fetcher.fetch();
+                }
+                return fetcher.getStatus();
+            });
+
+        for (final String[] instruction : INSTRUCTIONS) {
+            final Processor processor = processor(instruction[1]);
+            Harness.bench("processor.step." + instruction[0], () -> {
+                    for (int i = 0; i < REPEAT; i++) {
+                        processor.step();
+                        processor.step();
+                    }
+                    return processor.getStatus();
+                });
+        }
+
+        for (final String[] instruction : INSTRUCTIONS) {
+            final Processor processor = processor(instruction[1]);
+            processor.fetch();
+            Harness.bench("processor.execute." + instruction[0], () -> {
+                    for (int i = 0; i < REPEAT; i++) {
+                        processor.execute();
+                    }
+                    return processor.getStatus();
+                });
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Harness.header();
+        benchAll();
+    }
+}
@@ -0,0 +1,87 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import se.kth.csc.nic.Computer;
+
+/**
+ * Benchmarks of executing a program on a large stream of inputs,
+ * both sequentially and in parallel.
+ */
+public final class BenchStream {
+
+    /**
+     * Number of lines of input.
+     */
+    final static int LINES = Integer.getInteger("bench.lines", 100000);
+
+    /**
+     * Returns the given number of lines of random inputs to the
+     * multiplication program of {@link BenchComputer}.
+     *
+     * @param lines Number of lines.
+     * @return Inputs.
+     */
+    static byte[] inputs(final int lines) {
+        final Random random = new Random(1);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append(String.format("%02x%02x%n",
+                                    random.nextInt(0x100),
+                                    random.nextInt(0x100)));
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @throws Exception If a benchmark fails.
+     */
+    static void benchAll() throws Exception {
+        final Computer computer =
+            new Computer(BenchComputer.assemble("multiply",
+                                                BenchComputer.MULTIPLY));
+        final byte[] inputs = inputs(LINES);
+
+        // Count the output without storing it.
+        final long[] written = new long[1];
+        final PrintStream ps = new PrintStream(new OutputStream() {
+                public void write(final int b) {
+                    written[0]++;
+                }
+                public void write(final byte[] b, final int off,
+                                  final int len) {
+                    written[0] += len;
+                }
+            });
+
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final int[] workers = processors > 1
+            ? new int[] {1, processors} : new int[] {1};
+        for (final int w : workers) {
+            Harness.bench("stream.multiply." + LINES + ".workers" + w, () -> {
+                    computer.executeStream(new ByteArrayInputStream(inputs),
+                                           ps, w);
+                    ps.flush();
+                    return written[0];
+                });
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Harness.header();
+        benchAll();
+    }
+}
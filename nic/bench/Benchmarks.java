@@ -0,0 +1,30 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic.bench;
+
+/**
+ * Runs all benchmarks of the emulator and the assembler, e.g.,
+ *
+ * <pre>
+ * java -Dbench.filter=computer se.kth.csc.nic.bench.Benchmarks
+ * </pre>
+ *
+ * See {@link Harness} for the system properties that control the
+ * benchmarks.
+ */
+public final class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        Harness.header();
+        BenchMemory.benchAll();
+        BenchProcessor.benchAll();
+        BenchComputer.benchAll();
+        BenchStream.benchAll();
+        BenchAssembler.benchAll();
+    }
+}
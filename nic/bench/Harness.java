@@ -0,0 +1,147 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic.bench;
+
+import java.util.Arrays;
+
+/**
+ * Minimal harness for micro benchmarks. Each benchmark is warmed up
+ * for a fixed time, then the number of operations per batch is
+ * calibrated so that a batch takes about {@link #BATCHMILLIS}
+ * milliseconds, and finally a number of batches are timed. The
+ * median and the minimum time per operation are reported.
+ *
+ * <p>
+ *
+ * The times can be changed with the system properties
+ * <code>bench.warmup</code> and <code>bench.batches</code>, and the
+ * benchmarks can be restricted to those whose names contain the
+ * system property <code>bench.filter</code>.
+ */
+public final class Harness {
+
+    /**
+     * Operation that is measured. The result of each operation is
+     * accumulated, so that the JVM can not eliminate the work.
+     */
+    public interface Operation {
+
+        /**
+         * Performs the operation once.
+         *
+         * @return Any value depending on the work done.
+         * @throws Exception If the operation fails.
+         */
+        long run() throws Exception;
+    }
+
+    /**
+     * Milliseconds spent warming up each benchmark.
+     */
+    final static long WARMUPMILLIS = Long.getLong("bench.warmup", 1000);
+
+    /**
+     * Number of timed batches of each benchmark.
+     */
+    final static int BATCHES = Integer.getInteger("bench.batches", 10);
+
+    /**
+     * Approximate milliseconds spent in each timed batch.
+     */
+    final static long BATCHMILLIS = 100;
+
+    /**
+     * Only benchmarks whose names contain this string are executed.
+     */
+    final static String FILTER = System.getProperty("bench.filter", "");
+
+    /**
+     * Accumulated results of all operations.
+     */
+    static long sink;
+
+    /**
+     * Prevents instantiation.
+     */
+    private Harness() {
+    }
+
+    /**
+     * Prints a description of the environment and the settings of
+     * the harness.
+     */
+    public static void header() {
+        System.out.println(String.format("# %s %s, %d processors",
+                                         System.getProperty("java.vm.name"),
+                                         System.getProperty("java.version"),
+                                         Runtime.getRuntime()
+                                         .availableProcessors()));
+        System.out.println(String.format("# warm-up %d ms, %d batches of "
+                                         + "about %d ms", WARMUPMILLIS,
+                                         BATCHES, BATCHMILLIS));
+        System.out.println(String.format("%-40s %12s %12s",
+                                         "# benchmark", "median", "min"));
+    }
+
+    /**
+     * Runs the operation the given number of times and returns the
+     * elapsed time in nanoseconds.
+     *
+     * @param op Operation.
+     * @param n Number of times the operation is performed.
+     * @return Elapsed time in nanoseconds.
+     * @throws Exception If the operation fails.
+     */
+    static long time(final Operation op, final long n) throws Exception {
+        long acc = 0;
+        final long start = System.nanoTime();
+        for (long i = 0; i < n; i++) {
+            acc += op.run();
+        }
+        final long elapsed = System.nanoTime() - start;
+        sink += acc;
+        return elapsed;
+    }
+
+    /**
+     * Measures the time per operation and prints the result, unless
+     * the name is excluded by the filter.
+     *
+     * @param name Name of benchmark.
+     * @param op Operation.
+     * @throws Exception If the operation fails.
+     */
+    public static void bench(final String name, final Operation op)
+        throws Exception {
+        if (!name.contains(FILTER)) {
+            return;
+        }
+
+        // Warm up and calibrate the size of a batch at the same time.
+        long n = 1;
+        final long warmupEnd = System.nanoTime() + WARMUPMILLIS * 1000000L;
+        long elapsed = time(op, n);
+        while (System.nanoTime() < warmupEnd) {
+            if (elapsed < BATCHMILLIS * 1000000L / 2) {
+                n *= 2;
+            }
+            elapsed = time(op, n);
+        }
+        n = Math.max(1, n * BATCHMILLIS * 1000000L / Math.max(1, elapsed));
+
+        final double[] perOp = new double[BATCHES];
+        for (int i = 0; i < BATCHES; i++) {
+            perOp[i] = (double) time(op, n) / n;
+        }
+        Arrays.sort(perOp);
+
+        System.out.println(String.format("%-40s %9.1f ns %9.1f ns",
+                                         name, perOp[BATCHES / 2],
+                                         perOp[0]));
+    }
+}
@@ -21,6 +21,7 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JSeparator;
 
+import se.kth.csc.nic.BinaryExecutable;
 import se.kth.csc.nic.NIC;
 import se.kth.csc.nic.observable.ObservableComputer;
 
@@ -37,7 +38,7 @@ public class ComputerFrame extends JFrame {
     private ComputerPanel computerPanel;
 
     /**
-     * Filter for choosing files with the .bi prefix.
+     * Filter for choosing files with the .bi or .bin prefix.
      *
      * @param directory Directory.
      */
@@ -49,12 +50,13 @@ public class ComputerFrame extends JFrame {
                 return true;
             }
             final String name = dir.getName();
-            return name.endsWith(".bi");
+            return name.endsWith(".bi")
+                || name.endsWith(BinaryExecutable.POSTFIX);
         }
 
         @Override
         public String getDescription() {
-            return "*.bi";
+            return "*.bi, *" + BinaryExecutable.POSTFIX;
         }
     }
 
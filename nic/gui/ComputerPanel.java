@@ -20,14 +20,18 @@ import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
+import javax.swing.JTextField;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
+import se.kth.csc.nic.BinaryExecutable;
 import se.kth.csc.nic.Computer;
 import se.kth.csc.nic.NIC;
 import se.kth.csc.nic.NICException;
 import se.kth.csc.nic.Processor;
 import se.kth.csc.nic.Util;
+import se.kth.csc.nic.observable.ChangeTracker;
 import se.kth.csc.nic.observable.ObservableComputer;
 
 /**
@@ -63,6 +67,11 @@ public class ComputerPanel extends JPanel implements Observer {
      */
     final JButton fetchExecuteButton;
 
+    /**
+     * Button to move the computer one step back in its timeline.
+     */
+    final JButton backButton;
+
     /**
      * Button to stop and reset the computer.
      */
@@ -73,6 +82,33 @@ public class ComputerPanel extends JPanel implements Observer {
      */
     final JSlider speedSlider;
 
+    /**
+     * Label to report the frequency achieved by the computer.
+     */
+    final JLabel frequencyLabel;
+
+    /**
+     * Slider to move the computer to any step reached since the most
+     * recent reset.
+     */
+    final JSlider timelineSlider;
+
+    /**
+     * Label to report the current step and the furthest step reached.
+     */
+    final JLabel positionLabel;
+
+    /**
+     * Field to move the computer to a given step.
+     */
+    final JTextField positionField;
+
+    /**
+     * Indicates that the timeline slider is moved by this panel and
+     * not by the user.
+     */
+    boolean updatingTimeline;
+
     protected String currentFileName;
 
     /**
@@ -82,6 +118,7 @@ public class ComputerPanel extends JPanel implements Observer {
      */
     public ComputerPanel(final ObservableComputer observableComputer) {
         this.computer = observableComputer;
+        computer.setTimelineEnabled(true);
 
         // Create messaging label.
         userMessage = new JLabel();
@@ -114,6 +151,22 @@ public class ComputerPanel extends JPanel implements Observer {
                 }
             });
 
+        // Create back button.
+        backButton = new JButton("Back");
+        backButton.setEnabled(false);
+        backButton.setBackground(Constants.backgroundColor);
+        backButton.addActionListener(new ActionListener() {
+                public void actionPerformed(final ActionEvent evt) {
+                    try {
+                        computer.stepBack();
+                        updateVisualState();
+                        updateTimeline();
+                    } catch (final NICException nice) {
+                        setMessage(nice.getMessage());
+                    }
+                }
+            });
+
         // Create reset button.
         resetButton = new JButton("Reset");
         resetButton.setEnabled(false);
@@ -133,20 +186,23 @@ public class ComputerPanel extends JPanel implements Observer {
         d.width = 120;
         speedSlider.setPreferredSize(d);
         speedSlider.setBackground(Constants.backgroundColor);
+        speedSlider.setValue(sliderValue(computer.getFrequency()));
         speedSlider.addChangeListener(new ChangeListener() {
                 public void stateChanged(final ChangeEvent evt) {
-                    // Qubic response, 1-1000 Hz
-                    int n = 100 - speedSlider.getValue();
-                    int t = 1 + n*n*n/1000;
-                    computer.setClockTick(t);
+                    computer.setFrequency(frequency(speedSlider.getValue()));
                 }
             });
 
+        // Create label that reports the frequency.
+        frequencyLabel = new JLabel();
+        frequencyLabel.setBackground(Constants.backgroundColor);
+
         // Combine buttons in a panel.
         final JPanel buttons =
             new JPanel(new FlowLayout(FlowLayout.LEFT, 12, 5));
         buttons.setBackground(Constants.backgroundColor);
         buttons.add(startStopButton);
+        buttons.add(backButton);
         buttons.add(fetchExecuteButton);
         buttons.add(resetButton);
 
@@ -154,8 +210,60 @@ public class ComputerPanel extends JPanel implements Observer {
         final JPanel bottomPanel = new JPanel(new BorderLayout());
         bottomPanel.setBackground(Constants.backgroundColor);
         bottomPanel.add("West", buttons);
+        bottomPanel.add("Center", frequencyLabel);
         bottomPanel.add("East", speedSlider);
 
+        // Create slider to move through the timeline of the
+        // computer. Dragging the slider stops the computer.
+        timelineSlider = new JSlider(0, Constants.timelineResolution, 0);
+        timelineSlider.setEnabled(false);
+        timelineSlider.setBackground(Constants.backgroundColor);
+        timelineSlider.addChangeListener(new ChangeListener() {
+                public void stateChanged(final ChangeEvent evt) {
+                    if (!updatingTimeline) {
+                        final long end = computer.getTimeline().getEnd();
+                        seek(end * timelineSlider.getValue()
+                             / Constants.timelineResolution);
+                    }
+                }
+            });
+
+        // Create label that reports the position.
+        positionLabel = new JLabel();
+        positionLabel.setBackground(Constants.backgroundColor);
+
+        // Create field to jump to a given step.
+        positionField = new JTextField(8);
+        positionField.setEnabled(false);
+        positionField.addActionListener(new ActionListener() {
+                public void actionPerformed(final ActionEvent evt) {
+                    final String text = positionField.getText().trim();
+                    try {
+                        seek(Long.parseLong(text));
+                    } catch (final NumberFormatException nfe) {
+                        setMessage("Invalid step! (" + text + ")");
+                    }
+                }
+            });
+
+        // Combine label, field, and slider of the timeline.
+        final JPanel jump =
+            new JPanel(new FlowLayout(FlowLayout.LEFT, 12, 5));
+        jump.setBackground(Constants.backgroundColor);
+        jump.add(new JLabel("Go to step"));
+        jump.add(positionField);
+
+        final JPanel timelinePanel = new JPanel(new BorderLayout(12, 0));
+        timelinePanel.setBackground(Constants.backgroundColor);
+        timelinePanel.add("West", positionLabel);
+        timelinePanel.add("Center", timelineSlider);
+        timelinePanel.add("East", jump);
+
+        final JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.setBackground(Constants.backgroundColor);
+        southPanel.add("North", timelinePanel);
+        southPanel.add("South", bottomPanel);
+
         // Add processor panel, memory panel, and buttons panel to
         // this computer panel.
         setBackground(Constants.backgroundColor);
@@ -164,9 +272,22 @@ public class ComputerPanel extends JPanel implements Observer {
         add("North", userMessage);
         add("West", new ProcessorPanel(computer.getProcessor()));
         add("Center", new MemoryPanel(computer.getMemory()));
-        add("South", bottomPanel);
+        add("South", southPanel);
 
         computer.getRunning().addObserver(this);
+
+        // Changes of memory and registers are collected and the
+        // labels are updated in batches once per frame, so a fast
+        // computer does not flood the user interface with repaints.
+        final ChangeTracker tracker = new ChangeTracker();
+        computer.setChangeTracker(tracker);
+        new Timer(Constants.frameDelay, new ActionListener() {
+                public void actionPerformed(final ActionEvent evt) {
+                    tracker.flush();
+                    updateFrequency();
+                    updateTimeline();
+                }
+            }).start();
     }
 
     // This method is called by the register of this panel when its
@@ -194,12 +315,121 @@ public class ComputerPanel extends JPanel implements Observer {
         userMessage.setText(message);
     }
 
+    /**
+     * Returns the frequency corresponding to the given value of the
+     * speed slider. The response is logarithmic from one instruction
+     * per second up to {@link Constants#maxSliderFrequency}, and the
+     * maximal value means unthrottled.
+     *
+     * @param value Value of slider.
+     * @return Number of instructions per second.
+     */
+    static long frequency(final int value) {
+        if (value >= 100) {
+            return Computer.UNTHROTTLED;
+        } else {
+            final double exponent = value / 99.0
+                * Math.log10(Constants.maxSliderFrequency);
+            return Math.max(1, Math.round(Math.pow(10, exponent)));
+        }
+    }
+
+    /**
+     * Returns the value of the speed slider that is closest to the
+     * given frequency.
+     *
+     * @param frequency Number of instructions per second.
+     * @return Value of slider.
+     */
+    static int sliderValue(final long frequency) {
+        if (frequency == Computer.UNTHROTTLED) {
+            return 100;
+        } else {
+            final double value = 99.0 * Math.log10(frequency)
+                / Math.log10(Constants.maxSliderFrequency);
+            return (int) Math.min(99, Math.round(value));
+        }
+    }
+
+    /**
+     * Formats a frequency with a unit prefix.
+     *
+     * @param frequency Number of instructions per second.
+     * @return Formatted frequency.
+     */
+    static String formatFrequency(final double frequency) {
+        if (frequency >= 1e6) {
+            return String.format("%.2f MHz", frequency / 1e6);
+        } else if (frequency >= 1e3) {
+            return String.format("%.2f kHz", frequency / 1e3);
+        } else {
+            return String.format("%.2f Hz", frequency);
+        }
+    }
+
+    /**
+     * Updates the label that reports the frequency achieved by the
+     * computer, or the frequency it is set to if it is not running.
+     */
+    private void updateFrequency() {
+        final long frequency = computer.getFrequency();
+        final String target = frequency == Computer.UNTHROTTLED
+            ? "unthrottled" : formatFrequency(frequency);
+        if (computer.isRunning()) {
+            final double achieved = computer.getAchievedFrequency();
+            frequencyLabel.setText(achieved == 0 ? target
+                                   : formatFrequency(achieved)
+                                   + " (" + target + ")");
+        } else {
+            frequencyLabel.setText(target);
+        }
+    }
+
+    /**
+     * Moves the computer to the given step of its timeline, but not
+     * beyond the furthest step reached, since executing further steps
+     * would block the user interface.
+     *
+     * @param position Number of steps since the most recent reset.
+     */
+    private void seek(final long position) {
+        try {
+            computer.seek(Math.min(position,
+                                   computer.getTimeline().getEnd()));
+            updateVisualState();
+            updateTimeline();
+        } catch (final NICException nice) {
+            setMessage(nice.getMessage());
+        }
+    }
+
+    /**
+     * Updates the timeline slider and the label that reports the
+     * position of the computer. A running computer is only read
+     * through its published snapshot, and the slider is left alone
+     * while the user drags it.
+     */
+    private void updateTimeline() {
+        final long position = computer.isRunning()
+            ? computer.getSnapshot().getPosition() : computer.getPosition();
+        final long end = Math.max(position, computer.getTimeline().getEnd());
+        positionLabel.setText("Step " + position + " of " + end);
+        if (!timelineSlider.getValueIsAdjusting()) {
+            updatingTimeline = true;
+            timelineSlider.setValue(end == 0 ? 0 : (int)
+                                    (Constants.timelineResolution
+                                     * (double) position / end));
+            updatingTimeline = false;
+        }
+    }
+
     /**
      * Sets the visual state of this panel.
      */
     private void updateVisualState() {
         if (computer.isRunning()) {
             fetchExecuteButton.setEnabled(false);
+            backButton.setEnabled(false);
             startStopButton.setText(STOP);
             resetButton.setEnabled(false);
         } else {
@@ -209,6 +439,7 @@ public class ComputerPanel extends JPanel implements Observer {
                 fetchExecuteButton.setText(EXECUTE);
             }
             fetchExecuteButton.setEnabled(true);
+            backButton.setEnabled(true);
             startStopButton.setText(START);
             resetButton.setEnabled(true);
         }
@@ -222,6 +453,10 @@ public class ComputerPanel extends JPanel implements Observer {
         case Processor.BAD_ALIGNMENT:
             setMessage("Bad alignment!");
             break;
+        case Processor.INTERRUPTED:
+            setMessage("Interrupted after " + computer.getCycles()
+                       + " cycles!");
+            break;
         default:
             if (computer.isRunning()) {
                 setMessage("Executing " + currentFileName);
@@ -240,12 +475,39 @@ public class ComputerPanel extends JPanel implements Observer {
     public void setProgram(final String fileName, final String program)
         throws NICException {
         computer.setProgram(program);
+        programSet(fileName);
+    }
+
+    /**
+     * Sets the program of an executable in binary form and displays
+     * status information.
+     *
+     * @param fileName Origin of program.
+     * @param executable Executable in binary form.
+     */
+    public void setProgram(final String fileName,
+                           final BinaryExecutable executable)
+        throws NICException {
+        computer.setProgram(executable);
+        programSet(fileName);
+    }
+
+    /**
+     * Resets the computer after its program has been set and displays
+     * status information.
+     *
+     * @param fileName Origin of program.
+     */
+    private void programSet(final String fileName) {
         computer.reset();
         setMessage("Loaded " + fileName);
         fetchExecuteButton.setText(FETCH);
         startStopButton.setEnabled(true);
         fetchExecuteButton.setEnabled(true);
+        backButton.setEnabled(true);
         resetButton.setEnabled(true);
+        timelineSlider.setEnabled(true);
+        positionField.setEnabled(true);
         currentFileName = fileName;
     }
 
@@ -256,8 +518,12 @@ public class ComputerPanel extends JPanel implements Observer {
      */
     public void setProgram(final File file) {
         try {
-            final String program = Util.readString(file);
-            setProgram(file.getName(), program);
+            if (file.getName().endsWith(BinaryExecutable.POSTFIX)) {
+                setProgram(file.getName(), BinaryExecutable.read(file));
+            } else {
+                final String program = Util.readString(file);
+                setProgram(file.getName(), program);
+            }
         } catch (NICException nice) {
             setMessage(nice.getMessage());
         }
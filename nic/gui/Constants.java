@@ -50,4 +50,23 @@ class Constants {
      * Generic text color for values.
      */
     final static Color numberColor = Color.black;
+
+    /**
+     * Delay in milliseconds between two frames, i.e., between two
+     * batches of updates of memory cells and registers.
+     */
+    final static int frameDelay = 16;
+
+    /**
+     * Frequency in instructions per second at the fastest throttled
+     * position of the speed slider. The slowest position is one
+     * instruction per second and the last position is unthrottled.
+     */
+    final static long maxSliderFrequency = 50000000L;
+
+    /**
+     * Number of positions of the timeline slider, which are spread
+     * evenly over the steps reached by the computer.
+     */
+    final static int timelineResolution = 10000;
 }
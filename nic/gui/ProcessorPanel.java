@@ -105,12 +105,12 @@ class StatusLabel extends JLabel implements Observer {
     StatusLabel(final ObservableRegister register) {
         this.register = register;
         this.setBackground(Constants.backgroundColor);
-        this.setText(statusString[register.get()]);
+        this.setText(statusString[(int) register.get()]);
     }
 
     @Override
     public void update(final Observable o, final Object x) {
-        final int status = ((ObservableRegister) o).get();
+        final int status = (int) ((ObservableRegister) o).get();
         this.setText(statusString[status]);
     }
 }
@@ -168,7 +168,7 @@ class RegisterPanel extends JPanel implements Observer {
     // value changes.
     @Override
     public void update(Observable o, Object x) {
-        set(((ObservableRegister) o).get());
+        set((int) ((ObservableRegister) o).get());
     }
 
     /**
@@ -220,7 +220,7 @@ class PCRegisterPanel extends JPanel implements Observer {
     // when its value changes.
     @Override
     public void update(Observable o, Object x) {
-        set(((ObservablePCRegister) o).get());
+        set((int) ((ObservablePCRegister) o).get());
     }
 
     /**
@@ -284,7 +284,7 @@ class IRRegisterPanel extends JPanel implements Observer {
     // observing when its value changes.
     @Override
     public void update(Observable o, Object x) {
-        set(((ObservableRegister) o).get());
+        set((int) ((ObservableRegister) o).get());
     }
 
     /**
@@ -338,7 +338,7 @@ class SRRegisterPanel extends JPanel implements Observer {
     // observing when its value changes.
     @Override
     public void update(Observable o, Object x) {
-        set(((ObservableRegister) o).get());
+        set((int) ((ObservableRegister) o).get());
     }
 
     /**
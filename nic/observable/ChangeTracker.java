@@ -0,0 +1,107 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic.observable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Tracker of changes of observable memory cells and registers. When
+ * a tracker is installed, see {@link
+ * ObservableComputer#setChangeTracker(ChangeTracker)}, a change only
+ * sets a bit in a dirty set instead of notifying the observers on
+ * the executing thread. The observers of all changed components are
+ * then notified in a batch by {@link #flush()}, which a user
+ * interface calls once per frame. Thus, each component is updated at
+ * most once per frame regardless of the speed of execution.
+ */
+public class ChangeTracker {
+
+    /**
+     * Component whose changes are tracked.
+     */
+    interface Tracked {
+
+        /**
+         * Notifies the observers of this component that it has
+         * changed.
+         */
+        void fireChanged();
+    }
+
+    /**
+     * Tracked components indexed by their identifiers.
+     */
+    protected final List<Tracked> components;
+
+    /**
+     * Identifiers of components that changed since the most recent
+     * flush.
+     */
+    protected BitSet dirty;
+
+    /**
+     * Creates a tracker without any components.
+     */
+    public ChangeTracker() {
+        this.components = new ArrayList<Tracked>();
+        this.dirty = new BitSet();
+    }
+
+    /**
+     * Adds a component and returns its identifier.
+     *
+     * @param component Component to be tracked.
+     * @return Identifier of component.
+     */
+    int add(final Tracked component) {
+        synchronized (this) {
+            components.add(component);
+            return components.size() - 1;
+        }
+    }
+
+    /**
+     * Records that the component with the given identifier has
+     * changed.
+     *
+     * @param id Identifier of component.
+     */
+    void changed(final int id) {
+        synchronized (this) {
+            dirty.set(id);
+        }
+    }
+
+    /**
+     * Notifies the observers of each component that has changed since
+     * the most recent flush, once per component. This should be
+     * called by the thread of the user interface.
+     */
+    public void flush() {
+        final BitSet changed;
+        final Tracked[] tracked;
+        synchronized (this) {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            changed = dirty;
+            dirty = new BitSet(components.size());
+            tracked = components.toArray(new Tracked[components.size()]);
+        }
+
+        // Observers are notified without holding the lock, so that
+        // the executing thread is never blocked by the user
+        // interface.
+        for (int id = changed.nextSetBit(0); id >= 0;
+             id = changed.nextSetBit(id + 1)) {
+            tracked[id].fireChanged();
+        }
+    }
+}
@@ -33,6 +33,25 @@ public class ObservableComputer extends Computer {
                                                  WORDBLOCKS,
                                                  NOREGISTERS);
         this.running = new ObservableRunning(false);
+        publish();
+    }
+
+    /**
+     * Lets the given tracker collect the changes of memory and
+     * registers, so that observers are notified in batches when the
+     * tracker is flushed instead of on every write, see {@link
+     * ChangeTracker}.
+     *
+     * @param tracker Tracker of changes.
+     */
+    public void setChangeTracker(final ChangeTracker tracker) {
+        getMemory().setChangeTracker(tracker);
+        getProcessor().setChangeTracker(tracker);
+    }
+
+    @Override
+    protected boolean hasObservers() {
+        return getMemory().hasObservers() || getProcessor().hasObservers();
     }
 
     /**
@@ -30,6 +30,10 @@ public class ObservableMemory extends Memory {
         for (int i = 0; i < this.cells.length; i++) {
             cells[i] = new ObservableMemoryCell(BLOCKSIZE);
         }
+
+        // Memory cells are edited directly by the user interface, so
+        // writes can not be tracked.
+        this.tracking = false;
     }
 
     /**
@@ -42,6 +46,33 @@ public class ObservableMemory extends Memory {
         return (ObservableMemoryCell) cells[p];
     }
 
+    /**
+     * Lets the given tracker collect the changes of all memory cells,
+     * see {@link ChangeTracker}.
+     *
+     * @param tracker Tracker of changes.
+     */
+    public void setChangeTracker(final ChangeTracker tracker) {
+        for (int p = 0; p < cells.length; p++) {
+            ((ObservableMemoryCell) cells[p]).track(tracker);
+        }
+    }
+
+    /**
+     * Returns true if any memory cell of this memory has an observer.
+     *
+     * @return True if any memory cell is observed and false
+     * otherwise.
+     */
+    public boolean hasObservers() {
+        for (int p = 0; p < cells.length; p++) {
+            if (((ObservableMemoryCell) cells[p]).countObservers() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Activates/deactivates the memory cells within the given address
      * interval. This is non-functional method that only provides a
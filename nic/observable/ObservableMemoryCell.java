@@ -18,7 +18,8 @@ import se.kth.csc.nic.MemoryCell;
  * every time the contents of the cell is changed. This makes it easy
  * to implement a user interface.
  */
-public class ObservableMemoryCell extends Observable implements MemoryCell {
+public class ObservableMemoryCell extends Observable
+    implements MemoryCell, ChangeTracker.Tracked {
 
     /**
      * Underlying memory cell.
@@ -32,6 +33,17 @@ public class ObservableMemoryCell extends Observable implements MemoryCell {
      */
     protected boolean active;
 
+    /**
+     * Tracker of changes, or null if observers are notified
+     * immediately.
+     */
+    protected ChangeTracker tracker;
+
+    /**
+     * Identifier of this memory cell in the tracker of changes.
+     */
+    protected int id;
+
     /**
      * Creates an observable memory cell initialized to the zero
      * block.
@@ -53,8 +65,7 @@ public class ObservableMemoryCell extends Observable implements MemoryCell {
             memoryCell.set(block);
 
             // Tell the observer that the value has changed.
-            setChanged();
-            notifyObservers();
+            changed();
         }
     }
 
@@ -69,11 +80,40 @@ public class ObservableMemoryCell extends Observable implements MemoryCell {
 
             // Tell the observer that the non-functional state has
             // changed.
-            setChanged();
-            notifyObservers();
+            changed();
+        }
+    }
+
+    /**
+     * Notifies the observers that this memory cell has changed,
+     * either immediately or when the tracker is flushed.
+     */
+    private void changed() {
+        if (tracker == null) {
+            fireChanged();
+        } else {
+            tracker.changed(id);
         }
     }
 
+    /**
+     * Lets the given tracker collect the changes of this memory cell.
+     *
+     * @param tracker Tracker of changes.
+     */
+    void track(final ChangeTracker tracker) {
+        synchronized (this) {
+            this.id = tracker.add(this);
+            this.tracker = tracker;
+        }
+    }
+
+    @Override
+    public void fireChanged() {
+        setChanged();
+        notifyObservers();
+    }
+
     /**
      * Returns the state of this instance.
      *
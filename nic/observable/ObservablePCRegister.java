@@ -41,16 +41,17 @@ public class ObservablePCRegister extends ObservableRegister {
     }
 
     @Override
-    public synchronized void set(final int value) {
+    public synchronized void set(final long value) {
         synchronized (this) {
 
             // Deactivate memory we currently point to.
-            int oldvalue = get();
+            int oldvalue = (int) get();
             mem.setActive(oldvalue, oldvalue + INSTRUCTIONBLOCKS, false);
 
             // Activate memory we now point to.
             super.set(value);
-            mem.setActive(value, value + INSTRUCTIONBLOCKS, true);
+            final int newvalue = (int) get();
+            mem.setActive(newvalue, newvalue + INSTRUCTIONBLOCKS, true);
         }
     }
 }
@@ -47,6 +47,39 @@ public class ObservableProcessor extends Processor {
         sr = new ObservableRegister(WORDSIZE);
     }
 
+    /**
+     * Lets the given tracker collect the changes of all registers,
+     * see {@link ChangeTracker}.
+     *
+     * @param tracker Tracker of changes.
+     */
+    public void setChangeTracker(final ChangeTracker tracker) {
+        for (int i = 0; i < NOREGISTERS; i++) {
+            getreg(i).track(tracker);
+        }
+        getpc().track(tracker);
+        getir().track(tracker);
+        getnr().track(tracker);
+        getsr().track(tracker);
+    }
+
+    /**
+     * Returns true if any register of this processor has an observer.
+     *
+     * @return True if any register is observed and false otherwise.
+     */
+    public boolean hasObservers() {
+        for (int i = 0; i < NOREGISTERS; i++) {
+            if (getreg(i).countObservers() > 0) {
+                return true;
+            }
+        }
+        return getpc().countObservers() > 0
+            || getir().countObservers() > 0
+            || getnr().countObservers() > 0
+            || getsr().countObservers() > 0;
+    }
+
     /**
      * Return the given register.
      *
@@ -18,13 +18,25 @@ import se.kth.csc.nic.Register;
  * time the value of the register is updated. This makes it easier to
  * write a user interface.
  */
-public class ObservableRegister extends Observable implements Register {
+public class ObservableRegister extends Observable
+    implements Register, ChangeTracker.Tracked {
 
     /**
      * Underlying register.
      */
     protected final Register register;
 
+    /**
+     * Tracker of changes, or null if observers are notified
+     * immediately.
+     */
+    protected ChangeTracker tracker;
+
+    /**
+     * Identifier of this register in the tracker of changes.
+     */
+    protected int id;
+
     /**
      * Creates an observable register.
      */
@@ -33,18 +45,40 @@ public class ObservableRegister extends Observable implements Register {
     }
 
     @Override
-    public void set(final int value) {
+    public void set(final long value) {
         synchronized (this) {
             register.set(value);
 
-            // Tell the observer that the value has changed.
-            setChanged();
-            notifyObservers();
+            // Tell the observer that the value has changed, either
+            // immediately or when the tracker is flushed.
+            if (tracker == null) {
+                fireChanged();
+            } else {
+                tracker.changed(id);
+            }
         }
     }
 
+    /**
+     * Lets the given tracker collect the changes of this register.
+     *
+     * @param tracker Tracker of changes.
+     */
+    void track(final ChangeTracker tracker) {
+        synchronized (this) {
+            this.id = tracker.add(this);
+            this.tracker = tracker;
+        }
+    }
+
+    @Override
+    public void fireChanged() {
+        setChanged();
+        notifyObservers();
+    }
+
     @Override
-    public int get() {
+    public long get() {
         return register.get();
     }
 }
@@ -0,0 +1,472 @@
+
+/**
+ * Copyright 1997-2015 Stefan Nilsson, 2015-2017 Douglas Wikstrom.
+ * This file is part of the NIC/NAS software licensed under BSD
+ * License 2.0. See LICENSE file.
+ */
+
+package se.kth.csc.nic.test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import se.kth.csc.nas.NAS;
+import se.kth.csc.nic.*;
+
+/**
+ * Unit tests for NIC on the machine profiles with blocks of more than
+ * four bits, executed by each engine, and tests that the engines
+ * agree with the interpreter.
+ */
+public final class TestNIC {
+
+    /**
+     * Profiles with the generalized datapath.
+     */
+    final static MachineProfile[] PROFILES = {
+        MachineProfile.NIC16, MachineProfile.NIC24
+    };
+
+    /**
+     * Program that replaces the word of the input by its square.
+     */
+    final static String SQUARE =
+        "load   r1 end\n"
+        + "loadr  r2 r1\n"
+        + "mul    r3 r2 r2\n"
+        + "storer r3 r1\n"
+        + "halt\n";
+
+    /**
+     * Program that replaces the word n of the input by the sum of 1,
+     * 2, ..., n.
+     */
+    final static String SUM =
+        "        load   r1 end\n"
+        + "        loadr  r2 r1\n"
+        + "        loadc  r3 0\n"
+        + "        loadc  r5 1\n"
+        + "loop:   add    r3 r3 r2\n"
+        + "        sub    r2 r2 r5\n"
+        + "        jumpn  r2 loop\n"
+        + "        storer r3 r1\n"
+        + "        halt\n";
+
+    /**
+     * Program that replaces the two words of the input by the first
+     * word and the first word shifted by the second word.
+     */
+    final static String SHIFT =
+        "load   r1 end\n"
+        + "loadr  r2 r1\n"
+        + "addc   r1 2\n"
+        + "loadr  r3 r1\n"
+        + "shift  r4 r2 r3\n"
+        + "storer r4 r1\n"
+        + "halt\n";
+
+    /**
+     * Program that overwrites the first word of an instruction ahead
+     * of it with the word of the input, and then with other words.
+     */
+    final static String PATCH =
+        "        load   r1 end\n"
+        + "        loadr  r2 r1\n"
+        + "        loadc  r5 1\n"
+        + "        loadc  r6 3\n"
+        + "loop:   store  r2 patch\n"
+        + "patch:  loadc  r4 0x55\n"
+        + "        sub    r6 r6 r5\n"
+        + "        addc   r2 0x11\n"
+        + "        jumpn  r6 loop\n"
+        + "        storer r4 r1\n"
+        + "        halt\n";
+
+    /**
+     * Program that jumps to the input, which is not part of the
+     * program, on the default machine.
+     */
+    final static String ESCAPE =
+        "load   r1 end\n"
+        + "loadc  r2 1\n"
+        + "jump   0xf8\n";
+
+    /**
+     * Assembles the given program for the given profile, where "end"
+     * denotes the address of the last word of memory.
+     *
+     * @param program Program in assembler.
+     * @param profile Machine profile.
+     * @return Executable.
+     */
+    public static String assemble(final String program,
+                                  final MachineProfile profile) {
+        final int MEMORYCELLS = profile.getMEMORYCELLS();
+        final int WORDBLOCKS = profile.getWORDBLOCKS();
+
+        // The last word of memory points to the input.
+        final String source = program.replace(
+            "end", "0x" + Integer.toHexString(MEMORYCELLS - WORDBLOCKS));
+        String executable = null;
+        try {
+            executable = NAS.assemble("", source, Integer.MAX_VALUE,
+                                      System.err, profile);
+        } catch (final IOException ioe) {
+            throw new Error("Failure in NAS!", ioe);
+        }
+        if (executable == null) {
+            error("Failed to assemble program! (" + profile.getName() + ")");
+        }
+        return executable.trim();
+    }
+
+    /**
+     * Returns the given value as a word in hexadecimal.
+     *
+     * @param value Value of word.
+     * @param profile Machine profile.
+     * @return Word in hexadecimal.
+     */
+    public static String word(final long value,
+                              final MachineProfile profile) {
+        final int digits =
+            profile.getWORDBLOCKS() * profile.getBLOCKSIZE() / 4;
+        final long mask = (1L << (4 * digits)) - 1;
+        return String.format("%0" + digits + "x", value & mask);
+    }
+
+    /**
+     * Returns a computer of the given profile with the given engine
+     * and program.
+     *
+     * @param profile Machine profile.
+     * @param engineType Type of engine.
+     * @param executable Program with header.
+     * @return Computer.
+     */
+    public static Computer computer(final MachineProfile profile,
+                                    final EngineType engineType,
+                                    final String executable) {
+        try {
+            final Computer computer = new Computer(profile, true);
+            computer.setProgram(executable);
+            computer.setEngine(engineType);
+            return computer;
+        } catch (final NICException nice) {
+            throw new Error("Failed to set up computer!", nice);
+        }
+    }
+
+    /**
+     * Executes the given program on the given input and checks the
+     * output and the status.
+     *
+     * @param profile Machine profile.
+     * @param engineType Type of engine.
+     * @param executable Program with header.
+     * @param input Input in hexadecimal.
+     * @param output Expected output in hexadecimal, or null if it is
+     * not checked.
+     * @param status Expected status.
+     */
+    public static void check(final MachineProfile profile,
+                             final EngineType engineType,
+                             final String executable, final String input,
+                             final String output, final int status) {
+        final Computer computer =
+            computer(profile, engineType, executable);
+        final String result;
+        try {
+            result = computer.execute(input);
+        } catch (final NICException nice) {
+            throw new Error("Execution failed! (" + profile.getName()
+                            + ", " + engineType + ")", nice);
+        }
+        if (output != null && !result.equals(output)) {
+            error(String.format("Wrong output! (%s, %s, %s --> %s != %s)",
+                                profile.getName(), engineType, input,
+                                result, output));
+        }
+        if (computer.getStatus() != status) {
+            error(String.format("Wrong status! (%s, %s, %d != %d)",
+                                profile.getName(), engineType,
+                                computer.getStatus(), status));
+        }
+    }
+
+    public static void programs() {
+        System.out.print("Testing programs... ");
+        for (final MachineProfile profile : PROFILES) {
+            System.out.print(profile.getName() + " ");
+            final String square = assemble(SQUARE, profile);
+            final String sum = assemble(SUM, profile);
+            for (final EngineType engineType : EngineType.values()) {
+                for (long x = 0; x < 300; x += 7) {
+                    check(profile, engineType, square, word(x, profile),
+                          word(x * x, profile), Processor.HALT);
+                    check(profile, engineType, sum, word(x + 1, profile),
+                          word((x + 1) * (x + 2) / 2, profile),
+                          Processor.HALT);
+                }
+            }
+        }
+        System.out.println("done.");
+    }
+
+    /**
+     * Returns an executable consisting of the given instruction
+     * followed by halt.
+     *
+     * @param instruction Instruction in hexadecimal.
+     * @return Executable.
+     */
+    public static String single(final String instruction) {
+        final StringBuilder sb = new StringBuilder(Computer.MAGICAL_HEADER);
+        sb.append(instruction);
+        for (int i = 0; i < instruction.length(); i++) {
+            sb.append('0');
+        }
+        return sb.toString();
+    }
+
+    public static void missingRegisters() {
+        System.out.print("Testing missing registers... ");
+
+        // Operation codes followed by the fields that name registers.
+        final int[][] uses = {
+            {0x1, 1}, {0x2, 1}, {0x4, 1}, {0x8, 1}, {0xf, 1},
+            {0x3, 2, 3}, {0x5, 2, 3}, {0x6, 2, 3},
+            {0x7, 1, 2, 3}, {0x9, 1, 2, 3}, {0xa, 1, 2, 3},
+            {0xb, 1, 2, 3}, {0xc, 1, 2, 3}, {0xd, 1, 2, 3},
+            {0xe, 1, 2, 3}
+        };
+        for (final MachineProfile profile : PROFILES) {
+            System.out.print(profile.getName() + " ");
+            final int NOREGISTERS = profile.getNOREGISTERS();
+            final int WORDBLOCKS = profile.getWORDBLOCKS();
+            for (final int[] use : uses) {
+                for (int j = 1; j < use.length; j++) {
+                    for (final int r : new int[] {NOREGISTERS, 0x20, 0xff}) {
+
+                        // Blocks of the instruction, where the fields
+                        // are the blocks at 1, WORDBLOCKS, and
+                        // WORDBLOCKS + 1.
+                        final int[] blocks = new int[WORDBLOCKS + 2];
+                        blocks[0] = use[0];
+                        final int field = use[j];
+                        blocks[field == 1 ? 1 : WORDBLOCKS + field - 2] = r;
+
+                        final StringBuilder sb = new StringBuilder();
+                        for (final int block : blocks) {
+                            sb.append(String.format("%02x", block));
+                        }
+                        final String executable = single(sb.toString());
+                        for (final EngineType engineType
+                                 : EngineType.values()) {
+                            check(profile, engineType, executable, "",
+                                  null, Processor.BAD_INSTRUCTION);
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println("done.");
+    }
+
+    /**
+     * Executes the program of the given computer on the given input
+     * and returns a description of the output, the status, the
+     * number of cycles, and the registers.
+     *
+     * @param computer Computer.
+     * @param input Input in hexadecimal.
+     * @return Description of the result.
+     */
+    public static String outcome(final Computer computer,
+                                 final String input) {
+        final StringBuilder sb = new StringBuilder();
+        try {
+            sb.append(computer.execute(input));
+        } catch (final NICException nice) {
+            sb.append(nice.getMessage());
+        }
+        final ComputerSnapshot snapshot = computer.getSnapshot();
+        sb.append(" status ").append(snapshot.getStatus());
+        sb.append(" cycles ").append(snapshot.getCycles());
+        sb.append(" pc ").append(snapshot.getPC());
+        for (int i = 0; i < snapshot.getNOREGISTERS(); i++) {
+            sb.append(" ").append(snapshot.getRegister(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Executes the given program on each of the given inputs with
+     * each of the given engines and checks that they agree with the
+     * interpreter.
+     *
+     * @param profile Machine profile.
+     * @param engineTypes Types of engines.
+     * @param executable Program with header.
+     * @param inputs Inputs in hexadecimal.
+     * @param limit Instruction limit, or zero if there is no limit.
+     * @return Descriptions of the results of the interpreter.
+     */
+    public static String[] agree(final MachineProfile profile,
+                                 final EngineType[] engineTypes,
+                                 final String executable,
+                                 final String[] inputs,
+                                 final long limit) {
+        final Computer interpreter =
+            computer(profile, EngineType.INTERPRETER, executable);
+        interpreter.setInstructionLimit(limit);
+        final String[] expected = new String[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            expected[i] = outcome(interpreter, inputs[i]);
+        }
+        for (final EngineType engineType : engineTypes) {
+            final Computer computer =
+                computer(profile, engineType, executable);
+            computer.setInstructionLimit(limit);
+            for (int i = 0; i < inputs.length; i++) {
+                final String result = outcome(computer, inputs[i]);
+                if (!result.equals(expected[i])) {
+                    error(String.format("Engines disagree! "
+                                        + "(%s, %s, %s, %s, %d)%n%s%n%s",
+                                        profile.getName(), engineType,
+                                        executable, inputs[i], limit,
+                                        result, expected[i]));
+                }
+            }
+        }
+        return expected;
+    }
+
+    public static void invalidConditions() {
+        System.out.print("Testing invalid conditions of jumps... ");
+
+        // With words of three blocks, an instruction has five blocks,
+        // so the remainder 4 of the constant of a jump is a condition
+        // that is never taken.
+        final String bad = "02ff000000";
+        for (final String value : new String[] {"000000", "000001",
+                                                "ffffff"}) {
+            for (final String register : new String[] {"00", "01"}) {
+                final String executable = Computer.MAGICAL_HEADER
+                    + "0201" + value
+                    + "0f" + register + "000013"
+                    + "0000000000"
+                    + bad;
+                final String result =
+                    agree(MachineProfile.NIC24, EngineType.values(),
+                          executable, new String[] {""}, 0)[0];
+                if (!result.contains(" status " + Processor.HALT + " ")) {
+                    error("Jump with invalid condition taken! ("
+                          + executable + ")");
+                }
+            }
+        }
+        System.out.println("done.");
+    }
+
+    public static void engines() {
+        System.out.print("Testing agreement of engines... ");
+        final MachineProfile profile = MachineProfile.NIC8;
+        final EngineType[] engineTypes = EngineType.values();
+
+        // Shifts of words with the sign bit set and by negative
+        // amounts.
+        final String shift = assemble(SHIFT, profile);
+        final int[] words = {0x00, 0x01, 0x40, 0x7f, 0x80, 0xc3, 0xff};
+        final String[] shifts = new String[words.length * 256];
+        for (int i = 0; i < shifts.length; i++) {
+            shifts[i] = String.format("%02x%02x", words[i / 256], i % 256);
+        }
+        agree(profile, engineTypes, shift, shifts, 0);
+
+        // Stores that overwrite instructions with every word.
+        final String patch = assemble(PATCH, profile);
+        final String[] patches = new String[256];
+        for (int i = 0; i < patches.length; i++) {
+            patches[i] = String.format("%02x", i);
+        }
+        agree(profile, engineTypes, patch, patches, 200);
+
+        // Jumps to instructions of the input, which are interpreted.
+        final String escape = assemble(ESCAPE, profile);
+        final Random random = new Random(1);
+        final String[] escapes = new String[500];
+        for (int i = 0; i < escapes.length; i++) {
+            escapes[i] = String.format("%06x", random.nextInt(1 << 24));
+        }
+        agree(profile, engineTypes, escape, escapes, 200);
+
+        // Instruction limits that interrupt the processor anywhere.
+        final String sum = assemble(SUM, profile);
+        final String[] sums = {word(0x10, profile), word(0xf0, profile)};
+        for (long limit = 1; limit < 200; limit += 1 + limit / 4) {
+            agree(profile, engineTypes, sum, sums, limit);
+        }
+        System.out.println("done.");
+    }
+
+    /**
+     * Returns a random program for the default machine.
+     *
+     * @param random Source of randomness.
+     * @return Executable.
+     */
+    public static String randomProgram(final Random random) {
+        final StringBuilder sb = new StringBuilder(Computer.MAGICAL_HEADER);
+        final int instructions = 1 + random.nextInt(24);
+        for (int i = 0; i < instructions; i++) {
+            final int op = random.nextInt(16) == 0 ? 0 : 1 + random.nextInt(15);
+            final int field1 = random.nextInt(16);
+            int word = random.nextInt(256);
+
+            // Most addresses of load and store are aligned, so that
+            // programs do not stop at once.
+            if ((op == 0x1 || op == 0x4) && random.nextInt(4) != 0) {
+                word &= ~1;
+            }
+            sb.append(String.format("%x%x%02x", op, field1, word));
+        }
+        return sb.toString();
+    }
+
+    public static void randomPrograms() {
+        System.out.print("Testing random programs... ");
+        final MachineProfile profile = MachineProfile.NIC8;
+        final EngineType[] threaded = {EngineType.THREADED};
+        final Random random = new Random(1);
+
+        // Translating a program takes a long time, so only some are
+        // compiled.
+        for (int i = 0; i < 1000; i++) {
+            final String executable = randomProgram(random);
+            final String[] inputs = new String[4];
+            for (int j = 0; j < inputs.length; j++) {
+                final StringBuilder sb = new StringBuilder();
+                for (int k = random.nextInt(4); k > 0; k--) {
+                    sb.append(word(random.nextInt(256), profile));
+                }
+                inputs[j] = sb.toString();
+            }
+            agree(profile, i % 10 == 0 ? EngineType.values() : threaded,
+                  executable, inputs, 500);
+        }
+        System.out.println("done.");
+    }
+
+    public static void error(final String message) {
+        throw new Error(message);
+    }
+
+    public static void main(String[] args) {
+        programs();
+        missingRegisters();
+        invalidConditions();
+        engines();
+        randomPrograms();
+    }
+}
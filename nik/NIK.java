@@ -9,6 +9,7 @@ package se.kth.csc.nik;
 
 import java.io.IOException;
 import se.kth.csc.nic.Computer;
+import se.kth.csc.nic.ResultCache;
 
 /**
  * Wrapper of Nilsson Instructional Computer (NIC) for use with the
@@ -35,11 +36,56 @@ public class NIK {
         computer.setProgram(executable);
      }
 
+    /**
+     * Sets the maximal number of instructions executed on an input
+     * before the execution is interrupted.
+     *
+     * @param instructionLimit Maximal number of instructions, or zero
+     * if there is no limit.
+     */
+    public void setInstructionLimit(final long instructionLimit) {
+        computer.setInstructionLimit(instructionLimit);
+    }
+
+    /**
+     * Sets the maximal time spent executing the program on an input
+     * before the execution is interrupted.
+     *
+     * @param timeLimit Maximal time in milliseconds, or zero if there
+     * is no limit.
+     */
+    public void setTimeLimit(final long timeLimit) {
+        computer.setTimeLimit(timeLimit);
+    }
+
+    /**
+     * Sets the cache of results used when executing the program. The
+     * cache may be shared with other wrappers.
+     *
+     * @param resultCache Cache of results, or null if results are not
+     * cached.
+     */
+    public void setResultCache(final ResultCache resultCache) {
+        computer.setResultCache(resultCache);
+    }
+
+    /**
+     * Returns the number of instructions executed on the most recent
+     * input.
+     *
+     * @return Number of executed instructions.
+     */
+    public long getCycles() {
+        return computer.getCycles();
+    }
+
     /**
      * Executes the program on the given input.
      *
      * @param input Input given as a hexadecimal string.
      * @return Output of program on the given input.
+     * @throws NICException If the execution is interrupted due to the
+     * instruction limit or the time limit.
      */
     public String execute(final String input)
         throws NICException {